@@ -0,0 +1,46 @@
+package com.acme.ecommerce.benchmark;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds detached carts of a given size for the benchmarks.
+ */
+final class CartFixtures {
+
+	private CartFixtures() {
+	}
+
+	static Purchase purchaseWithLines(int lines) {
+		List<ProductPurchase> productPurchases = new ArrayList<ProductPurchase>(lines);
+		Purchase purchase = new Purchase();
+		purchase.setId(1L);
+		for (int i = 1; i <= lines; i++) {
+			ProductPurchase pp = new ProductPurchase();
+			pp.setProductPurchaseId((long) i);
+			pp.setProduct(product(i));
+			pp.setQuantity(1 + i % 5);
+			pp.setPurchase(purchase);
+			productPurchases.add(pp);
+		}
+		purchase.setProductPurchases(productPurchases);
+		return purchase;
+	}
+
+	static Product product(long id) {
+		Product product = new Product();
+		product.setId(id);
+		product.setName("Product " + id);
+		product.setDesc("Description of product " + id);
+		product.setFullImageName("product" + id + ".jpg");
+		product.setThumbImageName("product" + id + ".jpg");
+		product.setPrice(new BigDecimal("19.99").add(BigDecimal.valueOf(id % 100)));
+		product.setQuantity(100);
+		return product;
+	}
+}
@@ -0,0 +1,52 @@
+package com.acme.ecommerce.benchmark;
+
+import com.acme.ecommerce.domain.PriceCalculator;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the cart line for a product, as done by every cart
+ * add/update/remove request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartLineLookupBenchmark {
+
+	@Param({"1", "10", "100", "1000", "10000"})
+	int lines;
+
+	Purchase purchase;
+	Long firstProductId;
+	Long lastProductId;
+	Long missingProductId;
+
+	@Setup
+	public void setUp() {
+		purchase = CartFixtures.purchaseWithLines(lines);
+		firstProductId = 1L;
+		lastProductId = (long) lines;
+		missingProductId = (long) lines + 1;
+	}
+
+	@Benchmark
+	public ProductPurchase findFirstLine() {
+		return PriceCalculator.findLine(purchase, firstProductId);
+	}
+
+	@Benchmark
+	public ProductPurchase findLastLine() {
+		return PriceCalculator.findLine(purchase, lastProductId);
+	}
+
+	@Benchmark
+	public ProductPurchase findMissingLine() {
+		return PriceCalculator.findLine(purchase, missingProductId);
+	}
+}
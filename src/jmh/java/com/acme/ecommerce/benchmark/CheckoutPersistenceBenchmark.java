@@ -0,0 +1,110 @@
+package com.acme.ecommerce.benchmark;
+
+import com.acme.ecommerce.config.PersistenceConfig;
+import com.acme.ecommerce.domain.Address;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.repository.PurchaseRepository;
+import com.acme.ecommerce.service.OrderNumberGenerator;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists a complete checkout (purchase, its lines and both addresses) the way
+ * the cart and checkout controllers do, against an in-memory H2 database.
+ * Besides the time per checkout, the JDBC statements prepared per checkout are
+ * printed at the end of each trial; compare {@code batchSize=0} (one statement
+ * per row) with the default batch size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckoutPersistenceBenchmark {
+
+	@Param({"0", "25"})
+	String batchSize;
+
+	@Param({"1", "5", "20"})
+	int lines;
+
+	AnnotationConfigApplicationContext context;
+	PurchaseRepository purchases;
+	OrderNumberGenerator orderNumbers = new OrderNumberGenerator(1);
+	Statistics statistics;
+	List<Product> products = new ArrayList<Product>();
+
+	@Setup
+	public void setUp() {
+		System.setProperty("dataSource.url", "jdbc:h2:mem:checkoutBenchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE");
+		System.setProperty("hibernate.show_sql", "false");
+		System.setProperty("hibernate.generate_statistics", "true");
+		System.setProperty("hibernate.jdbc.batch_size", batchSize);
+		context = new AnnotationConfigApplicationContext(PersistenceConfig.class);
+		purchases = context.getBean(PurchaseRepository.class);
+		statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+		ProductRepository productRepository = context.getBean(ProductRepository.class);
+		for (int i = 1; i <= lines; i++) {
+			Product product = CartFixtures.product(i);
+			product.setId(null);
+			products.add(productRepository.save(product));
+		}
+		statistics.clear();
+	}
+
+	@TearDown
+	public void tearDown() {
+		long checkouts = statistics.getEntityInsertCount() / (lines + 3);
+		if (checkouts > 0) {
+			System.out.printf("%nbatchSize=%s lines=%d: %.2f statements per checkout (%d checkouts)%n",
+					batchSize, lines, statistics.getPrepareStatementCount() / (double) checkouts, checkouts);
+		}
+		context.close();
+	}
+
+	@Benchmark
+	public Purchase checkout() {
+		Purchase purchase = new Purchase();
+		List<ProductPurchase> productPurchases = new ArrayList<ProductPurchase>(lines);
+		for (Product product : products) {
+			ProductPurchase pp = new ProductPurchase();
+			pp.setProduct(product);
+			pp.setQuantity(1);
+			pp.setPurchase(purchase);
+			productPurchases.add(pp);
+		}
+		purchase.setProductPurchases(productPurchases);
+		purchase.setShippingAddress(address());
+		purchase.setBillingAddress(address());
+		purchase.setBillingAddressSame(false);
+		purchase.setCreditCardNumber("4111111111111111");
+		purchase.setOrderNumber(orderNumbers.next());
+		return purchases.save(purchase);
+	}
+
+	private static Address address() {
+		Address address = new Address();
+		address.setFirstName("First");
+		address.setLastName("Last");
+		address.setStreetAddress("1 Street");
+		address.setCity("City");
+		address.setState("ST");
+		address.setZipCode("12345");
+		address.setCountry("Country");
+		address.setPhoneNumber("5555555555");
+		address.setEmail("first@example.com");
+		return address;
+	}
+}
@@ -0,0 +1,95 @@
+package com.acme.ecommerce.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.acme.ecommerce.logging.SamplingFilter;
+import com.acme.ecommerce.logging.SamplingRule;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a debug statement on a hot path when debug is off, and when it is
+ * on but the event is dropped by a sampling rule. Run with {@code gradle jmh}
+ * to see from {@code -prof gc} that parameterized statements allocate nothing
+ * when disabled while concatenated ones still build their message; primitive
+ * arguments are still boxed unless the statement is guarded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+
+	Logger disabled;
+	Logger sampled;
+	long kept;
+
+	long primitiveId = 123456L;
+	Long id = 123456L;
+	String name = "Fork";
+
+	@Setup
+	public void setUp() {
+		LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+		disabled = context.getLogger("com.acme.ecommerce.benchmark.disabled");
+		disabled.setLevel(Level.INFO);
+
+		// Enabled, with an appender that only counts what the sampling filter lets through
+		sampled = context.getLogger("com.acme.ecommerce.benchmark.sampled");
+		sampled.setLevel(Level.DEBUG);
+		sampled.setAdditive(false);
+
+		SamplingRule rule = new SamplingRule();
+		rule.setLogger("com.acme.ecommerce.benchmark.sampled");
+		rule.setLevel(Level.DEBUG);
+		rule.setSampleEvery(1000);
+		SamplingFilter filter = new SamplingFilter();
+		filter.addRule(rule);
+		filter.start();
+		AppenderBase<ILoggingEvent> counter = new AppenderBase<ILoggingEvent>() {
+			@Override
+			protected void append(ILoggingEvent event) {
+				kept++;
+			}
+		};
+		counter.setContext(context);
+		counter.addFilter(filter);
+		counter.start();
+		sampled.addAppender(counter);
+	}
+
+	@Benchmark
+	public void disabledConcatenated() {
+		disabled.debug("Added " + id + " of " + name + " to cart");
+	}
+
+	@Benchmark
+	public void disabledParameterized() {
+		disabled.debug("Added {} of {} to cart", id, name);
+	}
+
+	@Benchmark
+	public void disabledParameterizedPrimitive() {
+		disabled.debug("Details for Product {}", primitiveId);
+	}
+
+	@Benchmark
+	public void disabledGuardedPrimitive() {
+		if (disabled.isDebugEnabled()) {
+			disabled.debug("Details for Product {}", primitiveId);
+		}
+	}
+
+	@Benchmark
+	public void sampledOut() {
+		sampled.debug("Added {} of {} to cart", id, name);
+	}
+}
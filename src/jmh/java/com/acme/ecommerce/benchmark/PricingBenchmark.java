@@ -0,0 +1,57 @@
+package com.acme.ecommerce.benchmark;
+
+import com.acme.ecommerce.domain.CouponCode;
+import com.acme.ecommerce.domain.PriceCalculator;
+import com.acme.ecommerce.domain.Purchase;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of pricing a cart as done on every product, cart and checkout page.
+ * Run with {@code gradle jmh} to also get allocation rates from {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricingBenchmark {
+
+	@Param({"1", "10", "100", "1000", "10000"})
+	int lines;
+
+	Purchase purchase;
+	BigDecimal subTotal;
+	CouponCode couponCode;
+
+	@Setup
+	public void setUp() {
+		purchase = CartFixtures.purchaseWithLines(lines);
+		subTotal = PriceCalculator.computeSubtotal(purchase);
+		couponCode = new CouponCode();
+		couponCode.setCode("SPRING");
+	}
+
+	@Benchmark
+	public BigDecimal subtotal() {
+		return PriceCalculator.computeSubtotal(purchase);
+	}
+
+	@Benchmark
+	public BigDecimal shippingCost() {
+		return PriceCalculator.computeShippingCost(purchase);
+	}
+
+	@Benchmark
+	public BigDecimal applyCoupon() {
+		return PriceCalculator.applyCoupon(subTotal, couponCode);
+	}
+
+	@Benchmark
+	public BigDecimal subtotalWithCoupon() {
+		return PriceCalculator.computeSubtotal(purchase, couponCode);
+	}
+}
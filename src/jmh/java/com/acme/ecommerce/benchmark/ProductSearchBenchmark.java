@@ -0,0 +1,106 @@
+package com.acme.ecommerce.benchmark;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.search.ProductSearchIndex;
+import com.acme.ecommerce.search.SearchHit;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of the in-memory search index over a synthetic catalog of one
+ * million products. Words are drawn from a 20,000 word vocabulary with a
+ * Zipf-like skew, so "common" terms match a large share of the catalog and
+ * "rare" ones only a handful of products.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ProductSearchBenchmark {
+
+	static final int VOCABULARY = 20000;
+
+	@Param({"1000000"})
+	int products;
+
+	ProductSearchIndex index;
+	String rareTerm;
+	String commonTerm;
+	String prefix;
+	String twoTerms;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		index = new ProductSearchIndex();
+		index.rebuild(new AbstractList<Product>() {
+			@Override
+			public Product get(int i) {
+				Product product = new Product();
+				product.setId((long) i + 1);
+				product.setName(words(random, 3));
+				product.setDesc(words(random, 12));
+				product.setPrice(BigDecimal.valueOf(100 + i % 10000, 2));
+				return product;
+			}
+
+			@Override
+			public int size() {
+				return products;
+			}
+		});
+		rareTerm = word(VOCABULARY - 7);
+		commonTerm = word(3);
+		prefix = word(1234).substring(0, 3);
+		twoTerms = word(50) + " " + word(5000);
+	}
+
+	@Benchmark
+	public List<SearchHit> rareTerm() {
+		return index.search(rareTerm, 10);
+	}
+
+	@Benchmark
+	public List<SearchHit> commonTerm() {
+		return index.search(commonTerm, 10);
+	}
+
+	@Benchmark
+	public List<SearchHit> prefix() {
+		return index.search(prefix, 10);
+	}
+
+	@Benchmark
+	public List<SearchHit> twoTerms() {
+		return index.search(twoTerms, 10);
+	}
+
+	private static String words(Random random, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			// Cubing a uniform value skews picks towards the low, "common" word numbers
+			double u = random.nextDouble();
+			sb.append(i == 0 ? "" : " ").append(word((int) (u * u * u * VOCABULARY)));
+		}
+		return sb.toString();
+	}
+
+	/** Pronounceable, distinct word for every number below VOCABULARY. */
+	static String word(int n) {
+		String consonants = "bcdfghklmnprstvz";
+		String vowels = "aeiou";
+		StringBuilder sb = new StringBuilder();
+		do {
+			sb.append(consonants.charAt(n % 16)).append(vowels.charAt((n / 16) % 5));
+			n /= 80;
+		} while (n > 0);
+		return sb.toString();
+	}
+}
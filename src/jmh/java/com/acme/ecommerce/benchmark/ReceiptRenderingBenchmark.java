@@ -0,0 +1,106 @@
+package com.acme.ecommerce.benchmark;
+
+import com.acme.ecommerce.domain.Address;
+import com.acme.ecommerce.domain.CartTotals;
+import com.acme.ecommerce.domain.Purchase;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileCopyUtils;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring4.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the email receipt the old way (String, byte[] copy, stream copy) and
+ * straight into a response-like Writer. Run with {@code gradle jmh
+ * -PjmhInclude=ReceiptRendering} and compare {@code gc.alloc.rate.norm}, the
+ * bytes allocated per receipt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceiptRenderingBenchmark {
+
+	@Param({"1", "20", "200"})
+	int lines;
+
+	SpringTemplateEngine templateEngine;
+	Context ctx;
+	DiscardingOutputStream sink = new DiscardingOutputStream();
+	// Like the servlet response writer: character buffered, and recycled between requests
+	Writer writer = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8));
+
+	@Setup
+	public void setUp() {
+		ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+		resolver.setPrefix("templates/");
+		resolver.setSuffix(".html");
+		resolver.setTemplateMode("HTML5");
+		resolver.setCharacterEncoding("UTF-8");
+		templateEngine = new SpringTemplateEngine();
+		templateEngine.setTemplateResolver(resolver);
+
+		Purchase purchase = CartFixtures.purchaseWithLines(lines);
+		purchase.setOrderNumber("123456");
+		Address address = new Address();
+		address.setFirstName("First");
+		address.setLastName("Last");
+		purchase.setShippingAddress(address);
+		CartTotals totals = CartTotals.of(purchase);
+
+		ctx = new Context();
+		ctx.setVariable("purchase", purchase);
+		ctx.setVariable("subTotal", totals.getSubtotal());
+		ctx.setVariable("shippingCost", totals.getShippingCost());
+		ctx.setVariable("orderTotal", totals.getOrderTotal(null));
+		ctx.setVariable("orderNumber", purchase.getOrderNumber());
+		ctx.setVariable("shippingAddress", purchase.getShippingAddress());
+	}
+
+	@Benchmark
+	public long renderToString() throws IOException {
+		String htmlContent = templateEngine.process("email_confirmation", ctx);
+		FileCopyUtils.copy(new BufferedInputStream(new ByteArrayInputStream(htmlContent.getBytes())), sink);
+		return sink.count;
+	}
+
+	@Benchmark
+	public long renderToWriter() throws IOException {
+		templateEngine.process("email_confirmation", ctx, writer);
+		writer.flush();
+		return sink.count;
+	}
+
+	/**
+	 * Stands in for the servlet output stream; FileCopyUtils closes it, so close is a no-op.
+	 */
+	static class DiscardingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
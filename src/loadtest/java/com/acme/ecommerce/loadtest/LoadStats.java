@@ -0,0 +1,89 @@
+package com.acme.ecommerce.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and error counts per endpoint, recorded by every shopper thread
+ * into HdrHistogram recorders and collected per measurement interval.
+ * Latencies are kept in microseconds, to three significant digits.
+ */
+public class LoadStats {
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+	/**
+	 * Endpoint name with numeric path segments replaced, so that all product
+	 * detail pages are counted together.
+	 */
+	static String endpoint(String method, String path) {
+		return method + " " + path.replaceAll(";.*$", "").replaceAll("/\\d+(?=/|$)", "/{id}");
+	}
+
+	public void record(String endpoint, long nanos, boolean error) {
+		Endpoint stats = endpoints.get(endpoint);
+		if (stats == null) {
+			Endpoint created = new Endpoint();
+			stats = endpoints.putIfAbsent(endpoint, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		stats.recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS));
+		if (error) {
+			stats.errors.increment();
+		}
+	}
+
+	/**
+	 * Discards everything recorded so far, at the end of a warm-up.
+	 */
+	public void reset() {
+		interval();
+	}
+
+	/**
+	 * Latencies and error counts recorded since the previous call.
+	 */
+	public SortedMap<String, Interval> interval() {
+		SortedMap<String, Interval> intervals = new TreeMap<String, Interval>();
+		for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+			intervals.put(entry.getKey(), new Interval(entry.getValue().recorder.getIntervalHistogram(),
+					entry.getValue().errors.sumThenReset()));
+		}
+		return intervals;
+	}
+
+	private static class Endpoint {
+		final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+		final LongAdder errors = new LongAdder();
+	}
+
+	public static class Interval {
+		private final Histogram histogram;
+		private final long errors;
+
+		Interval(Histogram histogram, long errors) {
+			this.histogram = histogram;
+			this.errors = errors;
+		}
+
+		public Histogram getHistogram() {
+			return histogram;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package com.acme.ecommerce.loadtest;
+
+import com.acme.ecommerce.Application;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.service.ProductService;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives concurrent shopper journeys against the application and reports
+ * throughput and latency percentiles per endpoint.
+ * <p>
+ * The application is started in-process on a random port unless
+ * {@code --url} points at a running one. Each stage runs a fixed number of
+ * shoppers, each looping over {@link ShopperJourney} with its own session;
+ * giving several counts ({@code --users=10,20,40,80}) steps the load up so the
+ * point where an endpoint's throughput stops growing while its latency climbs
+ * can be read off the report.
+ * <pre>
+ * gradle loadtest -PloadtestArgs="--users=10,20,40 --duration=60 --warmup=10 --think=0"
+ * </pre>
+ * Shoppers wait for each response before sending the next request, so under
+ * overload the request rate falls instead of queueing building up; latencies
+ * are those of a closed system.
+ */
+public class LoadTest {
+
+	private final String baseUrl;
+	private final Settings settings;
+	private final LoadStats stats = new LoadStats();
+
+	public LoadTest(String baseUrl, Settings settings) {
+		this.baseUrl = baseUrl;
+		this.settings = settings;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Settings settings = Settings.parse(args);
+		// Let every shopper keep its connection alive; the JDK pools only 5 per host by default
+		int maxUsers = 0;
+		for (int users : settings.users) {
+			maxUsers = Math.max(maxUsers, users);
+		}
+		System.setProperty("http.maxConnections", String.valueOf(maxUsers));
+		ConfigurableApplicationContext context = null;
+		String baseUrl = settings.url;
+		if (baseUrl == null) {
+			// SQL echo and debug output would make the console the bottleneck. The only node, so any node id will do.
+			context = SpringApplication.run(Application.class, "--server.port=0", "--hibernate.show_sql=false",
+					"--logging.level.com.acme.ecommerce=INFO", "--orderNumber.nodeId=0");
+			baseUrl = "http://localhost:" + ((EmbeddedWebApplicationContext) context).getEmbeddedServletContainer().getPort();
+			restock(context.getBean(ProductService.class), settings.stock);
+		}
+		try {
+			new LoadTest(baseUrl, settings).run(System.out);
+		} finally {
+			if (context != null) {
+				context.close();
+			}
+		}
+	}
+
+	/**
+	 * Every visit buys stock, so top it up before the shoppers run it out.
+	 */
+	private static void restock(ProductService productService, int stock) {
+		for (Product product : productService.findAll()) {
+			productService.release(product.getId(), stock);
+		}
+	}
+
+	public void run(PrintStream out) throws Exception {
+		out.println("Load test against " + baseUrl);
+		for (int users : settings.users) {
+			runStage(users, out);
+		}
+	}
+
+	private void runStage(int users, PrintStream out) throws Exception {
+		final long stopAt = System.nanoTime()
+				+ TimeUnit.SECONDS.toNanos(settings.rampUpSeconds + settings.warmupSeconds + settings.durationSeconds);
+		final AtomicLong journeys = new AtomicLong();
+		final AtomicLong completed = new AtomicLong();
+		List<Thread> shoppers = new ArrayList<Thread>();
+		for (int i = 0; i < users; i++) {
+			final long startDelay = settings.rampUpSeconds * 1000L * i / users;
+			final Random random = new Random(31L * users + i);
+			Thread shopper = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(startDelay);
+						while (System.nanoTime() < stopAt) {
+							ShopperJourney journey = new ShopperJourney(new ShopperClient(baseUrl, stats), random,
+									settings.thinkMillis);
+							journeys.incrementAndGet();
+							try {
+								if (journey.run()) {
+									completed.incrementAndGet();
+								}
+							} catch (IOException e) {
+								// Counted as an error against the endpoint; start a new visit
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "shopper-" + i);
+			shopper.setDaemon(true);
+			shoppers.add(shopper);
+			shopper.start();
+		}
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(settings.rampUpSeconds + settings.warmupSeconds));
+		stats.reset();
+		long journeysBefore = journeys.get();
+		long completedBefore = completed.get();
+		long start = System.nanoTime();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(settings.durationSeconds));
+		Map<String, LoadStats.Interval> intervals = stats.interval();
+		double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+		long measuredJourneys = journeys.get() - journeysBefore;
+		long measuredCompleted = completed.get() - completedBefore;
+
+		for (Thread shopper : shoppers) {
+			shopper.join();
+		}
+		report(users, seconds, measuredJourneys, measuredCompleted, intervals, out);
+	}
+
+	private void report(int users, double seconds, long journeys, long completed,
+			Map<String, LoadStats.Interval> intervals, PrintStream out) throws IOException {
+		out.println();
+		out.printf("%d shoppers, %.1f s measured: %d visits started, %d checked out (%.1f/s)%n",
+				users, seconds, journeys, completed, completed / seconds);
+		out.printf("%-32s %9s %7s %9s %9s %9s %9s %9s%n", "endpoint (ms)", "req/s", "errors", "p50", "p90", "p99",
+				"p99.9", "max");
+		for (Map.Entry<String, LoadStats.Interval> entry : intervals.entrySet()) {
+			Histogram histogram = entry.getValue().getHistogram();
+			if (histogram.getTotalCount() == 0) {
+				continue;
+			}
+			out.printf("%-32s %9.1f %7d %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+					histogram.getTotalCount() / seconds, entry.getValue().getErrors(),
+					millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+					millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+					millis(histogram.getMaxValue()));
+			if (settings.histogramDir != null) {
+				writeDistribution(users, entry.getKey(), histogram);
+			}
+		}
+	}
+
+	/**
+	 * Full percentile distribution in HdrHistogram's .hgrm format, which its
+	 * plotter reads.
+	 */
+	private void writeDistribution(int users, String endpoint, Histogram histogram) throws IOException {
+		File dir = new File(settings.histogramDir);
+		dir.mkdirs();
+		String name = users + "-users-" + endpoint.replaceAll("[^A-Za-z0-9]+", "_") + ".hgrm";
+		PrintStream file = new PrintStream(new FileOutputStream(new File(dir, name)), false, "UTF-8");
+		try {
+			histogram.outputPercentileDistribution(file, 1000.0);
+		} finally {
+			file.close();
+		}
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+	static class Settings {
+		String url;
+		int[] users = {10};
+		int durationSeconds = 30;
+		int warmupSeconds = 10;
+		int rampUpSeconds = 5;
+		long thinkMillis = 0;
+		int stock = 1000000;
+		String histogramDir;
+
+		static Settings parse(String[] args) {
+			Map<String, String> options = new HashMap<String, String>();
+			for (String arg : args) {
+				if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+					throw new IllegalArgumentException("Expected --name=value but got " + arg);
+				}
+				options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+			}
+			Settings settings = new Settings();
+			settings.url = options.remove("url");
+			if (options.containsKey("users")) {
+				String[] counts = options.remove("users").split(",");
+				settings.users = new int[counts.length];
+				for (int i = 0; i < counts.length; i++) {
+					settings.users[i] = Integer.parseInt(counts[i].trim());
+				}
+			}
+			settings.durationSeconds = intOption(options, "duration", settings.durationSeconds);
+			settings.warmupSeconds = intOption(options, "warmup", settings.warmupSeconds);
+			settings.rampUpSeconds = intOption(options, "rampUp", settings.rampUpSeconds);
+			settings.thinkMillis = intOption(options, "think", (int) settings.thinkMillis);
+			settings.stock = intOption(options, "stock", settings.stock);
+			settings.histogramDir = options.remove("hgrm");
+			if (!options.isEmpty()) {
+				throw new IllegalArgumentException("Unknown options " + options.keySet());
+			}
+			return settings;
+		}
+
+		private static int intOption(Map<String, String> options, String name, int defaultValue) {
+			String value = options.remove(name);
+			return value == null ? defaultValue : Integer.parseInt(value);
+		}
+	}
+}
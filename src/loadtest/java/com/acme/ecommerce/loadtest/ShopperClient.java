@@ -0,0 +1,181 @@
+package com.acme.ecommerce.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP client for one virtual shopper. Keeps its own cookies, so each shopper
+ * has its own session and cart, and follows redirects itself so that every
+ * request is timed under the endpoint it actually hit.
+ */
+public class ShopperClient {
+
+	private static final int MAX_REDIRECTS = 5;
+
+	private final String baseUrl;
+	private final LoadStats stats;
+	private final Map<String, String> cookies = new LinkedHashMap<String, String>();
+
+	public ShopperClient(String baseUrl, LoadStats stats) {
+		this.baseUrl = baseUrl;
+		this.stats = stats;
+	}
+
+	public Response get(String path) throws IOException {
+		return follow(execute("GET", new URL(baseUrl + path), null));
+	}
+
+	public Response post(String path, Map<String, String> form) throws IOException {
+		return follow(execute("POST", new URL(baseUrl + path), encode(form)));
+	}
+
+	private Response follow(Response response) throws IOException {
+		for (int i = 0; i < MAX_REDIRECTS && response.isRedirect(); i++) {
+			response = execute("GET", new URL(response.url, response.getLocation()), null);
+		}
+		return response;
+	}
+
+	private Response execute(String method, URL url, byte[] body) throws IOException {
+		String endpoint = LoadStats.endpoint(method, url.getPath());
+		long start = System.nanoTime();
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setRequestMethod(method);
+			connection.setInstanceFollowRedirects(false);
+			if (!cookies.isEmpty()) {
+				connection.setRequestProperty("Cookie", cookieHeader());
+			}
+			if (body != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+				OutputStream out = connection.getOutputStream();
+				out.write(body);
+				out.close();
+			}
+			int status = connection.getResponseCode();
+			storeCookies(connection.getHeaderFields().get("Set-Cookie"));
+			String content = read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+			Response response = new Response(url, status, connection.getHeaderField("Location"), content);
+			stats.record(endpoint, System.nanoTime() - start, response.isError());
+			return response;
+		} catch (IOException e) {
+			stats.record(endpoint, System.nanoTime() - start, true);
+			throw e;
+		}
+	}
+
+	private String cookieHeader() {
+		StringBuilder header = new StringBuilder();
+		for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+			if (header.length() > 0) {
+				header.append("; ");
+			}
+			header.append(cookie.getKey()).append('=').append(cookie.getValue());
+		}
+		return header.toString();
+	}
+
+	private void storeCookies(List<String> headers) {
+		if (headers == null) {
+			return;
+		}
+		for (String header : headers) {
+			String[] parts = header.split(";");
+			int eq = parts[0].indexOf('=');
+			if (eq < 0) {
+				continue;
+			}
+			String name = parts[0].substring(0, eq).trim();
+			String value = parts[0].substring(eq + 1).trim();
+			boolean expired = value.isEmpty();
+			for (int i = 1; i < parts.length; i++) {
+				if (parts[i].trim().equalsIgnoreCase("Max-Age=0")) {
+					expired = true;
+				}
+			}
+			if (expired) {
+				cookies.remove(name);
+			} else {
+				cookies.put(name, value);
+			}
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		if (in == null) {
+			return "";
+		}
+		try {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				content.write(buffer, 0, n);
+			}
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] encode(Map<String, String> form) throws UnsupportedEncodingException {
+		StringBuilder body = new StringBuilder();
+		for (Map.Entry<String, String> field : form.entrySet()) {
+			if (body.length() > 0) {
+				body.append('&');
+			}
+			body.append(URLEncoder.encode(field.getKey(), "UTF-8")).append('=')
+					.append(URLEncoder.encode(field.getValue(), "UTF-8"));
+		}
+		return body.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	public static class Response {
+		private final URL url;
+		private final int status;
+		private final String location;
+		private final String body;
+
+		Response(URL url, int status, String location, String body) {
+			this.url = url;
+			this.status = status;
+			this.location = location;
+			this.body = body;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		public String getBody() {
+			return body;
+		}
+
+		public boolean isRedirect() {
+			return status >= 300 && status < 400 && location != null;
+		}
+
+		/**
+		 * Server errors, and redirects to the error page the controllers use
+		 * when the cart is missing.
+		 */
+		public boolean isError() {
+			return status >= 400 || (isRedirect() && location.matches("(https?://[^/]+)?/error(\\?.*)?"));
+		}
+	}
+}
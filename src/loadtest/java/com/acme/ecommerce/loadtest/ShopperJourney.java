@@ -0,0 +1,116 @@
+package com.acme.ecommerce.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One shopper's visit: browse the catalog, open a product, add it to the
+ * cart, change the quantity, then check out with a coupon, shipping and
+ * billing details, and download the e-mail receipt. Redirects are followed
+ * as a browser would. A visit stops at the first failed request.
+ */
+public class ShopperJourney {
+
+	private static final Pattern PRODUCT_LINK = Pattern.compile("/product/detail/(\\d+)");
+
+	private final ShopperClient client;
+	private final Random random;
+	private final long thinkMillis;
+
+	public ShopperJourney(ShopperClient client, Random random, long thinkMillis) {
+		this.client = client;
+		this.random = random;
+		this.thinkMillis = thinkMillis;
+	}
+
+	/**
+	 * @return whether the visit got as far as the receipt
+	 */
+	public boolean run() throws IOException, InterruptedException {
+		ShopperClient.Response listing = client.get("/product/");
+		if (listing.isError()) {
+			return false;
+		}
+		String productId = pickProduct(listing.getBody());
+		if (productId == null) {
+			return false;
+		}
+		think();
+		if (client.get("/product/detail/" + productId).isError()) {
+			return false;
+		}
+		think();
+		if (client.post("/cart/add", form("productId", productId, "quantity", "1")).isError()) {
+			return false;
+		}
+		think();
+		if (client.get("/cart").isError()) {
+			return false;
+		}
+		think();
+		if (client.post("/cart/update", form("productId", productId, "newQuantity", "2")).isError()) {
+			return false;
+		}
+		think();
+		if (client.get("/checkout/coupon").isError()) {
+			return false;
+		}
+		think();
+		if (client.post("/checkout/coupon", form("code", "SPRING")).isError()) {
+			return false;
+		}
+		think();
+		if (client.post("/checkout/shipping", address()).isError()) {
+			return false;
+		}
+		think();
+		Map<String, String> billing = address();
+		billing.put("billingAddressSame", "true");
+		billing.put("creditCardNumber", "4111111111111111");
+		billing.put("creditCardName", "Load Test");
+		billing.put("creditCardExpMonth", "12");
+		billing.put("creditCardExpYear", "2030");
+		billing.put("creditCardCVC", "123");
+		if (client.post("/checkout/billing", billing).isError()) {
+			return false;
+		}
+		think();
+		return !client.get("/checkout/email").isError();
+	}
+
+	private String pickProduct(String listing) {
+		List<String> ids = new ArrayList<String>();
+		Matcher matcher = PRODUCT_LINK.matcher(listing);
+		while (matcher.find()) {
+			ids.add(matcher.group(1));
+		}
+		return ids.isEmpty() ? null : ids.get(random.nextInt(ids.size()));
+	}
+
+	private void think() throws InterruptedException {
+		if (thinkMillis > 0) {
+			// Exponential think times, so shoppers do not march in step
+			Thread.sleep((long) (-Math.log(1 - random.nextDouble()) * thinkMillis));
+		}
+	}
+
+	private static Map<String, String> address() {
+		return form("firstName", "Load", "lastName", "Test", "streetAddress", "1 Main Street", "city", "Springfield",
+				"state", "OR", "zipCode", "97477", "country", "United States", "phoneNumber", "5415550100",
+				"email", "loadtest@example.com");
+	}
+
+	private static Map<String, String> form(String... fields) {
+		Map<String, String> form = new LinkedHashMap<String, String>();
+		for (int i = 0; i < fields.length; i += 2) {
+			form.put(fields[i], fields[i + 1]);
+		}
+		return form;
+	}
+}
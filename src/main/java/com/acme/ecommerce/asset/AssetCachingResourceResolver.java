@@ -0,0 +1,30 @@
+package com.acme.ecommerce.asset;
+
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.resource.CachingResourceResolver;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Caches resolved assets and fingerprinted URLs, so content hashes are
+ * computed once per asset rather than on every page render. Resolved assets
+ * are cached per set of accepted encodings, as the request then decides
+ * between the brotli, gzip and plain variants.
+ */
+public class AssetCachingResourceResolver extends CachingResourceResolver {
+
+	public AssetCachingResourceResolver(String name) {
+		super(new ConcurrentMapCache(name));
+	}
+
+	@Override
+	protected String computeKey(HttpServletRequest request, String requestPath) {
+		String key = RESOLVED_RESOURCE_CACHE_KEY_PREFIX + requestPath;
+		if (request != null) {
+			key += "+encoding=" + StringUtils.collectionToCommaDelimitedString(
+					PrecompressedResourceResolver.acceptedEncodings(request));
+		}
+		return key;
+	}
+}
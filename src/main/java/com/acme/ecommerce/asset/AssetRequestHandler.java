@@ -0,0 +1,32 @@
+package com.acme.ecommerce.asset;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+import org.springframework.web.servlet.resource.VersionedResource;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Serves stylesheets and scripts. A fingerprinted URL names one version of
+ * the content for good, so it may be cached for {@code maxAgeSeconds} without
+ * ever being revalidated; the plain URL is always revalidated.
+ */
+public class AssetRequestHandler extends ResourceHttpRequestHandler {
+
+	private final String fingerprintedCacheControl;
+
+	public AssetRequestHandler(long maxAgeSeconds) {
+		this.fingerprintedCacheControl = "public, max-age=" + maxAgeSeconds + ", immutable";
+	}
+
+	@Override
+	protected void setHeaders(HttpServletResponse response, Resource resource, MediaType mediaType) throws IOException {
+		super.setHeaders(response, resource, mediaType);
+		response.setHeader(HttpHeaders.CACHE_CONTROL,
+				resource instanceof VersionedResource ? fingerprintedCacheControl : "no-cache");
+		response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+	}
+}
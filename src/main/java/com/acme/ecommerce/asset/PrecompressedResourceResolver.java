@@ -0,0 +1,201 @@
+package com.acme.ecommerce.asset;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.EncodedResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+import org.springframework.web.servlet.resource.VersionedResource;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Serves the brotli ({@code .br}) or gzip ({@code .gz}) file the build left
+ * next to an asset when the request's {@code Accept-Encoding} allows it,
+ * preferring brotli. Assets without a compressed sibling are served as they
+ * are. Like Spring's GzipResourceResolver it must come before the
+ * VersionResourceResolver, so fingerprints are always taken over the
+ * uncompressed content.
+ */
+public class PrecompressedResourceResolver extends AbstractResourceResolver {
+
+	/** Supported encodings in order of preference, with their file extensions. */
+	private static final String[][] ENCODINGS = {{"br", ".br"}, {"gzip", ".gz"}};
+
+	@Override
+	protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath,
+											   List<? extends Resource> locations, ResourceResolverChain chain) {
+		Resource resource = chain.resolveResource(request, requestPath, locations);
+		if (resource == null || request == null) {
+			return resource;
+		}
+		for (String encoding : acceptedEncodings(request)) {
+			try {
+				Resource encoded = resource.createRelative(resource.getFilename() + extension(encoding));
+				if (encoded.exists() && encoded.isReadable()) {
+					return resource instanceof VersionedResource
+							? new VersionedEncodedResource(resource, encoded, encoding)
+							: new PrecompressedResource(resource, encoded, encoding);
+				}
+			} catch (IOException e) {
+				logger.trace("No " + encoding + " variant of " + resource, e);
+			}
+		}
+		return resource;
+	}
+
+	@Override
+	protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+											ResourceResolverChain chain) {
+		return chain.resolveUrlPath(resourceUrlPath, locations);
+	}
+
+	/**
+	 * The supported encodings the request accepts, most preferred first.
+	 * Encodings given {@code q=0} are refused.
+	 */
+	public static List<String> acceptedEncodings(HttpServletRequest request) {
+		List<String> result = new ArrayList<String>(ENCODINGS.length);
+		String header = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (header == null) {
+			return result;
+		}
+		Set<String> accepted = new HashSet<String>();
+		for (String coding : header.split(",")) {
+			String[] parts = coding.split(";");
+			double quality = 1;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2));
+					} catch (NumberFormatException e) {
+						quality = 0;
+					}
+				}
+			}
+			if (quality > 0) {
+				accepted.add(parts[0].trim().toLowerCase(Locale.ENGLISH));
+			}
+		}
+		for (String[] encoding : ENCODINGS) {
+			if (accepted.contains(encoding[0])) {
+				result.add(encoding[0]);
+			}
+		}
+		return result;
+	}
+
+	private static String extension(String encoding) {
+		for (String[] candidate : ENCODINGS) {
+			if (candidate[0].equals(encoding)) {
+				return candidate[1];
+			}
+		}
+		throw new IllegalArgumentException("Unsupported encoding " + encoding);
+	}
+
+	/**
+	 * The compressed file's content under the original's name, so the media
+	 * type is still derived from the original.
+	 */
+	static class PrecompressedResource extends AbstractResource implements EncodedResource {
+
+		private final Resource original;
+		private final Resource encoded;
+		private final String encoding;
+
+		PrecompressedResource(Resource original, Resource encoded, String encoding) {
+			this.original = original;
+			this.encoded = encoded;
+			this.encoding = encoding;
+		}
+
+		Resource getOriginal() {
+			return original;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			return encoded.getInputStream();
+		}
+
+		@Override
+		public boolean exists() {
+			return encoded.exists();
+		}
+
+		@Override
+		public boolean isReadable() {
+			return encoded.isReadable();
+		}
+
+		@Override
+		public URL getURL() throws IOException {
+			return encoded.getURL();
+		}
+
+		@Override
+		public URI getURI() throws IOException {
+			return encoded.getURI();
+		}
+
+		@Override
+		public File getFile() throws IOException {
+			return encoded.getFile();
+		}
+
+		@Override
+		public long contentLength() throws IOException {
+			return encoded.contentLength();
+		}
+
+		@Override
+		public long lastModified() throws IOException {
+			return encoded.lastModified();
+		}
+
+		@Override
+		public Resource createRelative(String relativePath) throws IOException {
+			return original.createRelative(relativePath);
+		}
+
+		@Override
+		public String getFilename() {
+			return original.getFilename();
+		}
+
+		@Override
+		public String getDescription() {
+			return encoded.getDescription();
+		}
+
+		@Override
+		public String getContentEncoding() {
+			return encoding;
+		}
+	}
+
+	static class VersionedEncodedResource extends PrecompressedResource implements VersionedResource {
+
+		VersionedEncodedResource(Resource original, Resource encoded, String encoding) {
+			super(original, encoded, encoding);
+		}
+
+		@Override
+		public String getVersion() {
+			return ((VersionedResource) getOriginal()).getVersion();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.acme.ecommerce.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small in-process LRU cache bounded by entry count and time-to-live.
+ * Entries are kept in access order so the least recently used entry is the
+ * one evicted once {@code maxEntries} is exceeded; expired entries are
+ * dropped lazily when they are read.
+ */
+public class BoundedCache<K, V> {
+
+	private final String name;
+	private final int maxEntries;
+	private final long ttlMillis;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	public BoundedCache(String name, int maxEntries, long ttlMillis) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.name = name;
+		this.maxEntries = maxEntries;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				if (size() > BoundedCache.this.maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public V get(K key) {
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null) {
+				if (!entry.isExpired(now())) {
+					hits.incrementAndGet();
+					return entry.value;
+				}
+				entries.remove(key);
+				evictions.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(K key, V value) {
+		if (value == null) {
+			invalidate(key);
+			return;
+		}
+		Entry<V> entry = new Entry<V>(value, ttlMillis > 0 ? now() + ttlMillis : Long.MAX_VALUE);
+		synchronized (entries) {
+			entries.put(key, entry);
+		}
+	}
+
+	public void invalidate(K key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * Drops every expired entry, returning how many were removed.
+	 */
+	public int evictExpired() {
+		long now = now();
+		int removed = 0;
+		synchronized (entries) {
+			Iterator<Entry<V>> it = entries.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().isExpired(now)) {
+					it.remove();
+					removed++;
+				}
+			}
+		}
+		evictions.addAndGet(removed);
+		return removed;
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long expiresAt;
+
+		Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.acme.ecommerce.cart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Session index, expiry and metrics shared by the cart stores; subclasses
+ * only decide where the encoded records live. The index is kept in access
+ * order, so both expired records and eviction candidates are found at its
+ * head. All access is serialized on the store, which is cheap next to the
+ * database work of the request holding it.
+ */
+public abstract class AbstractCartStore implements CartStore, PublicMetrics {
+	final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Rough heap cost of an index entry beyond its session id characters:
+	 * the map entry, the String and its array header, and the entry object.
+	 */
+	static final int INDEX_ENTRY_OVERHEAD = 112;
+
+	protected static class Entry {
+		long lastAccess;
+	}
+
+	private final String name;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+
+	private long indexBytes;
+	private long expired;
+	private long evicted;
+
+	protected AbstractCartStore(String name, long ttlMillis) {
+		this.name = name;
+		this.ttlMillis = ttlMillis;
+	}
+
+	@Override
+	public synchronized CartRecord get(String sessionId) {
+		Entry entry = entries.get(sessionId);
+		if (entry == null) {
+			return null;
+		}
+		long now = now();
+		if (isExpired(entry, now)) {
+			drop(sessionId, entry);
+			expired++;
+			return null;
+		}
+		entry.lastAccess = now;
+		return CartRecord.decode(read(entry));
+	}
+
+	@Override
+	public synchronized void put(String sessionId, CartRecord record) {
+		byte[] data = record.encode();
+		Entry previous = entries.remove(sessionId);
+		if (previous != null) {
+			release(previous);
+		} else {
+			indexBytes += indexCost(sessionId);
+		}
+		Entry entry = store(data);
+		while (entry == null && evictEldest()) {
+			entry = store(data);
+		}
+		if (entry == null) {
+			indexBytes -= indexCost(sessionId);
+			throw new IllegalStateException("Cart record of " + data.length + " bytes does not fit the " + name + " store");
+		}
+		entry.lastAccess = now();
+		entries.put(sessionId, entry);
+	}
+
+	@Override
+	public synchronized void remove(String sessionId) {
+		Entry entry = entries.get(sessionId);
+		if (entry != null) {
+			drop(sessionId, entry);
+		}
+	}
+
+	@Override
+	public synchronized int evictExpired() {
+		long now = now();
+		int count = 0;
+		Iterator<java.util.Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			java.util.Map.Entry<String, Entry> head = it.next();
+			if (!isExpired(head.getValue(), now)) {
+				// Access order: everything after this was used more recently
+				break;
+			}
+			it.remove();
+			release(head.getValue());
+			indexBytes -= indexCost(head.getKey());
+			count++;
+		}
+		expired += count;
+		return count;
+	}
+
+	@Override
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private boolean evictEldest() {
+		Iterator<java.util.Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		if (!it.hasNext()) {
+			return false;
+		}
+		java.util.Map.Entry<String, Entry> eldest = it.next();
+		it.remove();
+		release(eldest.getValue());
+		indexBytes -= indexCost(eldest.getKey());
+		if (isExpired(eldest.getValue(), now())) {
+			expired++;
+		} else {
+			evicted++;
+			logger.warn("Cart store {} is full, dropped the least recently used cart", name);
+		}
+		return true;
+	}
+
+	private void drop(String sessionId, Entry entry) {
+		entries.remove(sessionId);
+		release(entry);
+		indexBytes -= indexCost(sessionId);
+	}
+
+	private boolean isExpired(Entry entry, long now) {
+		return ttlMillis > 0 && now - entry.lastAccess > ttlMillis;
+	}
+
+	private static long indexCost(String sessionId) {
+		return INDEX_ENTRY_OVERHEAD + 2L * sessionId.length();
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Copies {@code data} into the store, or returns null if it does not fit
+	 * until something is released.
+	 */
+	protected abstract Entry store(byte[] data);
+
+	protected abstract byte[] read(Entry entry);
+
+	protected abstract void release(Entry entry);
+
+	/**
+	 * Bytes taken by encoded records, including any slack of the backend.
+	 */
+	protected abstract long bytesUsed();
+
+	protected abstract long bytesCapacity();
+
+	/**
+	 * Heap bytes spent on the records themselves, apart from the index.
+	 */
+	protected abstract long heapBytesUsed();
+
+	@Override
+	public synchronized Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Integer>("cartStore." + name + ".sessions", entries.size()));
+		metrics.add(new Metric<Long>("cartStore." + name + ".bytes.used", bytesUsed()));
+		metrics.add(new Metric<Long>("cartStore." + name + ".bytes.capacity", bytesCapacity()));
+		metrics.add(new Metric<Long>("cartStore." + name + ".heap.bytes", indexBytes + heapBytesUsed()));
+		metrics.add(new Metric<Long>("cartStore." + name + ".expired", expired));
+		metrics.add(new Metric<Long>("cartStore." + name + ".evicted", evicted));
+		return metrics;
+	}
+}
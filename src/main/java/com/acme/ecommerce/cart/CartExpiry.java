@@ -0,0 +1,55 @@
+package com.acme.ecommerce.cart;
+
+import com.acme.ecommerce.reservation.ReservationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+/**
+ * Drops a cart as soon as its session ends, and sweeps the store for carts
+ * whose session end was never seen, such as those left by another node.
+ * The stock held by a cart dropped with its session goes straight back;
+ * that of swept carts goes back when their reservations time out.
+ */
+@Component
+@ConditionalOnProperty(name = "cart.mode", havingValue = "session", matchIfMissing = true)
+public class CartExpiry implements HttpSessionListener {
+	final Logger logger = LoggerFactory.getLogger(CartExpiry.class);
+
+	private final CartStore store;
+	private final ReservationService reservations;
+
+	@Autowired
+	public CartExpiry(CartStore store, ReservationService reservations) {
+		this.store = store;
+		this.reservations = reservations;
+	}
+
+	@Override
+	public void sessionCreated(HttpSessionEvent event) {
+	}
+
+	@Override
+	public void sessionDestroyed(HttpSessionEvent event) {
+		String sessionId = event.getSession().getId();
+		CartRecord record = store.get(sessionId);
+		store.remove(sessionId);
+		if (record != null && record.getCartId() != 0 && record.getLineCount() > 0) {
+			reservations.abandon(record.getCartId());
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${cartStore.sweepMillis:60000}")
+	public void evictExpired() {
+		int count = store.evictExpired();
+		if (count > 0) {
+			logger.debug("Dropped {} expired carts, {} left", count, store.size());
+		}
+	}
+}
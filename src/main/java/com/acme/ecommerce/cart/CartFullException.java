@@ -0,0 +1,18 @@
+package com.acme.ecommerce.cart;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A change would leave the cart with more lines than its record can hold.
+ * Thrown before any stock is taken for the change.
+ */
+@ResponseStatus(value = HttpStatus.CONFLICT, reason = "The cart cannot hold any more products")
+public class CartFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 2931750844306261473L;
+
+	public CartFullException(int lines, int maxLines) {
+		super("Cart of " + lines + " lines exceeds the limit of " + maxLines);
+	}
+}
@@ -0,0 +1,188 @@
+package com.acme.ecommerce.cart;
+
+import com.acme.ecommerce.domain.CouponCode;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * What a visitor needs to find their cart again: the cart id its stock
+ * reservations are held under, the purchase id, the coupon code and the
+ * product id and quantity of every line. The cart id is 0 until one is
+ * assigned, the purchase id 0 while the purchase only exists in the record
+ * and {@link #NO_PURCHASE} when there is none. Encoded as
+ * <pre>
+ * long cartId | long purchaseId | short couponLength (-1 for none) |
+ * coupon UTF-8 bytes | short lineCount | lineCount * (long productId, int quantity)
+ * </pre>
+ * so a ten line cart takes 148 bytes instead of a detached entity graph.
+ */
+public final class CartRecord {
+
+	public static final long NO_PURCHASE = -1;
+
+	static final int MAX_LINES = Short.MAX_VALUE;
+	static final int LINE_LENGTH = 12;
+
+	private final long cartId;
+	private final long purchaseId;
+	private final String couponCode;
+	private final long[] productIds;
+	private final int[] quantities;
+
+	public CartRecord(long cartId, long purchaseId, String couponCode, long[] productIds, int[] quantities) {
+		if (productIds.length != quantities.length) {
+			throw new IllegalArgumentException("productIds and quantities differ in length");
+		}
+		if (productIds.length > MAX_LINES) {
+			throw new IllegalArgumentException("Too many cart lines: " + productIds.length);
+		}
+		this.cartId = cartId;
+		this.purchaseId = purchaseId;
+		this.couponCode = couponCode;
+		this.productIds = productIds;
+		this.quantities = quantities;
+	}
+
+	public static CartRecord of(long cartId, Purchase purchase, CouponCode couponCode) {
+		long purchaseId = NO_PURCHASE;
+		long[] productIds = new long[0];
+		int[] quantities = new int[0];
+		if (purchase != null) {
+			purchaseId = purchase.getId() != null ? purchase.getId() : 0;
+			List<ProductPurchase> lines = purchase.getProductPurchases();
+			productIds = new long[lines.size()];
+			quantities = new int[lines.size()];
+			for (int i = 0; i < lines.size(); i++) {
+				ProductPurchase line = lines.get(i);
+				productIds[i] = line.getProduct().getId();
+				quantities[i] = line.getQuantity();
+			}
+		}
+		return new CartRecord(cartId, purchaseId, couponCode != null ? couponCode.getCode() : null, productIds, quantities);
+	}
+
+	public long getCartId() {
+		return cartId;
+	}
+
+	public long getPurchaseId() {
+		return purchaseId;
+	}
+
+	public boolean hasPurchase() {
+		return purchaseId != NO_PURCHASE;
+	}
+
+	/**
+	 * True once the purchase has been saved and must be loaded from the database.
+	 */
+	public boolean isPurchaseSaved() {
+		return purchaseId > 0;
+	}
+
+	public String getCouponCode() {
+		return couponCode;
+	}
+
+	public int getLineCount() {
+		return productIds.length;
+	}
+
+	public long getProductId(int line) {
+		return productIds[line];
+	}
+
+	public int getQuantity(int line) {
+		return quantities[line];
+	}
+
+	public byte[] encode() {
+		byte[] coupon = couponCode != null ? couponCode.getBytes(StandardCharsets.UTF_8) : null;
+		ByteBuffer buffer = ByteBuffer.allocate(encodedLength(coupon != null ? coupon.length : 0, productIds.length));
+		buffer.putLong(cartId);
+		buffer.putLong(purchaseId);
+		if (coupon != null) {
+			buffer.putShort((short) coupon.length);
+			buffer.put(coupon);
+		} else {
+			buffer.putShort((short) -1);
+		}
+		buffer.putShort((short) productIds.length);
+		for (int i = 0; i < productIds.length; i++) {
+			buffer.putLong(productIds[i]);
+			buffer.putInt(quantities[i]);
+		}
+		return buffer.array();
+	}
+
+	static int encodedLength(int couponBytes, int lineCount) {
+		return 8 + 8 + 2 + couponBytes + 2 + lineCount * LINE_LENGTH;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if {@code data} is not an encoded record
+	 */
+	public static CartRecord decode(byte[] data) {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			long cartId = buffer.getLong();
+			long purchaseId = buffer.getLong();
+			String couponCode = null;
+			short couponLength = buffer.getShort();
+			if (couponLength >= 0) {
+				byte[] coupon = new byte[couponLength];
+				buffer.get(coupon);
+				couponCode = new String(coupon, StandardCharsets.UTF_8);
+			}
+			int lineCount = buffer.getShort();
+			if (lineCount < 0) {
+				throw new IllegalArgumentException("Negative line count");
+			}
+			long[] productIds = new long[lineCount];
+			int[] quantities = new int[lineCount];
+			for (int i = 0; i < lineCount; i++) {
+				productIds[i] = buffer.getLong();
+				quantities[i] = buffer.getInt();
+			}
+			if (buffer.hasRemaining()) {
+				throw new IllegalArgumentException("Trailing bytes after cart record");
+			}
+			return new CartRecord(cartId, purchaseId, couponCode, productIds, quantities);
+		} catch (RuntimeException e) {
+			if (e instanceof IllegalArgumentException) {
+				throw e;
+			}
+			throw new IllegalArgumentException("Malformed cart record", e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof CartRecord)) {
+			return false;
+		}
+		CartRecord other = (CartRecord) o;
+		return cartId == other.cartId
+				&& purchaseId == other.purchaseId
+				&& (couponCode == null ? other.couponCode == null : couponCode.equals(other.couponCode))
+				&& Arrays.equals(productIds, other.productIds)
+				&& Arrays.equals(quantities, other.quantities);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = (int) (cartId ^ (cartId >>> 32));
+		result = 31 * result + (int) (purchaseId ^ (purchaseId >>> 32));
+		result = 31 * result + (couponCode != null ? couponCode.hashCode() : 0);
+		result = 31 * result + Arrays.hashCode(productIds);
+		return 31 * result + Arrays.hashCode(quantities);
+	}
+}
@@ -0,0 +1,25 @@
+package com.acme.ecommerce.cart;
+
+/**
+ * Finds the {@link CartRecord} of the visitor making the current request and
+ * keeps it for their next one.
+ */
+public interface CartResolver {
+
+	/**
+	 * The visitor's record, or null if they have no cart.
+	 */
+	CartRecord load();
+
+	/**
+	 * Replaces the visitor's record; null drops it.
+	 */
+	void save(CartRecord record);
+
+	/**
+	 * The most lines a record can have and still be saved. Checked before
+	 * stock is taken for a new line, as stock taken for a cart that cannot
+	 * be saved would be held for nobody.
+	 */
+	int getMaxLines();
+}
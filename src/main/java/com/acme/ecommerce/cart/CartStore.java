@@ -0,0 +1,25 @@
+package com.acme.ecommerce.cart;
+
+/**
+ * Holds one {@link CartRecord} per HTTP session. Records not touched for the
+ * store's time-to-live are dropped, and a full store makes room by dropping
+ * the least recently used ones.
+ */
+public interface CartStore {
+
+	/**
+	 * The record for the session, or null if there is none or it expired.
+	 */
+	CartRecord get(String sessionId);
+
+	void put(String sessionId, CartRecord record);
+
+	void remove(String sessionId);
+
+	/**
+	 * Drops every expired record and returns how many were dropped.
+	 */
+	int evictExpired();
+
+	int size();
+}
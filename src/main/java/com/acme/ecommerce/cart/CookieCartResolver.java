@@ -0,0 +1,165 @@
+package com.acme.ecommerce.cart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the record in a cookie, so any node can serve any request and no
+ * server memory is spent between requests. The cookie value is
+ * <pre>
+ * base64url(int issuedSeconds | encoded record | HMAC-SHA256 of both, first 16 bytes)
+ * </pre>
+ * A cookie that fails verification or is older than {@code maxAgeSeconds} is
+ * treated as no cart at all.
+ * <p>
+ * Every response carries the whole cart, so of two requests changing the
+ * same cart at once, the cookie of the one answered last wins. The other's
+ * stock is not lost: reservations are kept per cart on the server, and the
+ * next request gives back whatever they hold beyond the cookie.
+ */
+public class CookieCartResolver implements CartResolver {
+	final Logger logger = LoggerFactory.getLogger(CookieCartResolver.class);
+
+	private static final String ALGORITHM = "HmacSHA256";
+	private static final int MAC_LENGTH = 16;
+	/** Browsers only promise 4096 bytes for name, value and attributes together. */
+	static final int MAX_VALUE_LENGTH = 3800;
+	/** Room kept for a coupon code of up to ten characters, four UTF-8 bytes each. */
+	static final int COUPON_BYTES = 40;
+
+	private final SecretKeySpec key;
+	private final String cookieName;
+	private final int maxAgeSeconds;
+	private final boolean secure;
+
+	public CookieCartResolver(byte[] secret, String cookieName, int maxAgeSeconds, boolean secure) {
+		if (secret.length < 16) {
+			throw new IllegalArgumentException("Cart cookie secret must be at least 16 bytes");
+		}
+		this.key = new SecretKeySpec(secret, ALGORITHM);
+		this.cookieName = cookieName;
+		this.maxAgeSeconds = maxAgeSeconds;
+		this.secure = secure;
+	}
+
+	@Override
+	public CartRecord load() {
+		Cookie[] cookies = currentRequest().getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (cookieName.equals(cookie.getName())) {
+					return decode(cookie.getValue(), System.currentTimeMillis());
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void save(CartRecord record) {
+		HttpServletResponse response = currentResponse();
+		if (response.isCommitted()) {
+			logger.warn("Response already committed, cart cookie not updated");
+			return;
+		}
+		Cookie cookie;
+		if (record == null) {
+			cookie = new Cookie(cookieName, "");
+			cookie.setMaxAge(0);
+		} else {
+			cookie = new Cookie(cookieName, encode(record, System.currentTimeMillis()));
+			cookie.setMaxAge(maxAgeSeconds);
+		}
+		cookie.setPath("/");
+		cookie.setHttpOnly(true);
+		cookie.setSecure(secure);
+		response.addCookie(cookie);
+	}
+
+	@Override
+	public int getMaxLines() {
+		int recordBytes = MAX_VALUE_LENGTH / 4 * 3 - 4 - MAC_LENGTH;
+		return (recordBytes - CartRecord.encodedLength(COUPON_BYTES, 0)) / CartRecord.LINE_LENGTH;
+	}
+
+	String encode(CartRecord record, long nowMillis) {
+		byte[] data = record.encode();
+		ByteBuffer buffer = ByteBuffer.allocate(4 + data.length + MAC_LENGTH);
+		buffer.putInt((int) TimeUnit.MILLISECONDS.toSeconds(nowMillis));
+		buffer.put(data);
+		buffer.put(mac(buffer.array(), 4 + data.length));
+		String value = Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+		if (value.length() > MAX_VALUE_LENGTH) {
+			throw new IllegalStateException("Cart with " + record.getLineCount() + " lines does not fit in a cookie");
+		}
+		return value;
+	}
+
+	CartRecord decode(String value, long nowMillis) {
+		byte[] bytes;
+		try {
+			bytes = Base64.getUrlDecoder().decode(value);
+		} catch (IllegalArgumentException e) {
+			logger.debug("Ignoring cart cookie that is not base64url");
+			return null;
+		}
+		if (bytes.length < 4 + MAC_LENGTH) {
+			logger.debug("Ignoring truncated cart cookie");
+			return null;
+		}
+		int signedLength = bytes.length - MAC_LENGTH;
+		byte[] expected = mac(bytes, signedLength);
+		if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, signedLength, bytes.length))) {
+			logger.warn("Ignoring cart cookie with a bad signature");
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, signedLength);
+		long issuedSeconds = buffer.getInt() & 0xFFFFFFFFL;
+		if (TimeUnit.MILLISECONDS.toSeconds(nowMillis) - issuedSeconds > maxAgeSeconds) {
+			logger.debug("Ignoring expired cart cookie");
+			return null;
+		}
+		return CartRecord.decode(Arrays.copyOfRange(bytes, 4, signedLength));
+	}
+
+	private byte[] mac(byte[] bytes, int length) {
+		try {
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(key);
+			mac.update(bytes, 0, length);
+			return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Unable to sign cart cookie", e);
+		}
+	}
+
+	private static ServletRequestAttributes currentAttributes() {
+		return (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+	}
+
+	private static HttpServletRequest currentRequest() {
+		return currentAttributes().getRequest();
+	}
+
+	private static HttpServletResponse currentResponse() {
+		HttpServletResponse response = currentAttributes().getResponse();
+		if (response == null) {
+			throw new IllegalStateException("No response bound to the current request");
+		}
+		return response;
+	}
+}
@@ -0,0 +1,63 @@
+package com.acme.ecommerce.cart;
+
+/**
+ * Keeps each encoded record in its own byte array on the heap.
+ */
+public class HeapCartStore extends AbstractCartStore {
+
+	/** Array header of each stored record. */
+	private static final int ARRAY_OVERHEAD = 16;
+
+	private static class HeapEntry extends Entry {
+		final byte[] data;
+
+		HeapEntry(byte[] data) {
+			this.data = data;
+		}
+	}
+
+	private final long capacityBytes;
+	private long usedBytes;
+
+	public HeapCartStore(long capacityBytes, long ttlMillis) {
+		super("heap", ttlMillis);
+		if (capacityBytes < 1) {
+			throw new IllegalArgumentException("capacityBytes must be positive");
+		}
+		this.capacityBytes = capacityBytes;
+	}
+
+	@Override
+	protected Entry store(byte[] data) {
+		if (usedBytes + data.length > capacityBytes) {
+			return null;
+		}
+		usedBytes += data.length;
+		return new HeapEntry(data);
+	}
+
+	@Override
+	protected byte[] read(Entry entry) {
+		return ((HeapEntry) entry).data;
+	}
+
+	@Override
+	protected void release(Entry entry) {
+		usedBytes -= ((HeapEntry) entry).data.length;
+	}
+
+	@Override
+	protected long bytesUsed() {
+		return usedBytes;
+	}
+
+	@Override
+	protected long bytesCapacity() {
+		return capacityBytes;
+	}
+
+	@Override
+	protected long heapBytesUsed() {
+		return usedBytes + (long) size() * ARRAY_OVERHEAD;
+	}
+}
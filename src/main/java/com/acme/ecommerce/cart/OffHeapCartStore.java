@@ -0,0 +1,155 @@
+package com.acme.ecommerce.cart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps encoded records outside the Java heap, in a direct buffer or a
+ * memory-mapped file, so a session costs the heap only its index entry.
+ * <p>
+ * The region is cut into fixed-size slots. Each slot starts with the index of
+ * the next slot of the same record (or of the free list), and a record spans
+ * as many slots as it needs. Only the session index and the free list head
+ * live on the heap.
+ */
+public class OffHeapCartStore extends AbstractCartStore {
+
+	private static final int NO_SLOT = -1;
+	private static final int SLOT_HEADER = 4;
+
+	private static class SlotEntry extends Entry {
+		final int firstSlot;
+		final int length;
+
+		SlotEntry(int firstSlot, int length) {
+			this.firstSlot = firstSlot;
+			this.length = length;
+		}
+	}
+
+	private final ByteBuffer region;
+	private final int slotSize;
+	private final int slotCount;
+	private int freeHead;
+	private int freeCount;
+
+	public OffHeapCartStore(String name, ByteBuffer region, int slotSize, long ttlMillis) {
+		super(name, ttlMillis);
+		if (slotSize <= SLOT_HEADER) {
+			throw new IllegalArgumentException("slotSize must be larger than " + SLOT_HEADER);
+		}
+		this.region = region;
+		this.slotSize = slotSize;
+		this.slotCount = region.capacity() / slotSize;
+		if (slotCount < 1) {
+			throw new IllegalArgumentException("Region of " + region.capacity() + " bytes holds no slot of " + slotSize);
+		}
+		for (int slot = 0; slot < slotCount; slot++) {
+			region.putInt(offset(slot), slot + 1 < slotCount ? slot + 1 : NO_SLOT);
+		}
+		this.freeHead = 0;
+		this.freeCount = slotCount;
+	}
+
+	public static OffHeapCartStore allocate(int capacityBytes, int slotSize, long ttlMillis) {
+		return new OffHeapCartStore("offHeap", ByteBuffer.allocateDirect(capacityBytes), slotSize, ttlMillis);
+	}
+
+	/**
+	 * Store backed by {@code file}, which is created or resized to
+	 * {@code capacityBytes}. Its previous contents are not read back; the file
+	 * only lets the operating system page cart data out.
+	 */
+	public static OffHeapCartStore mapped(File file, int capacityBytes, int slotSize, long ttlMillis) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(capacityBytes);
+			ByteBuffer region = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+			return new OffHeapCartStore("mapped", region, slotSize, ttlMillis);
+		} finally {
+			// The mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	@Override
+	protected Entry store(byte[] data) {
+		int payload = slotSize - SLOT_HEADER;
+		int needed = Math.max(1, (data.length + payload - 1) / payload);
+		if (needed > freeCount) {
+			return null;
+		}
+		int first = freeHead;
+		int slot = first;
+		int written = 0;
+		for (int i = 0; i < needed; i++) {
+			int next = region.getInt(offset(slot));
+			int chunk = Math.min(payload, data.length - written);
+			region.position(offset(slot) + SLOT_HEADER);
+			region.put(data, written, chunk);
+			written += chunk;
+			if (i == needed - 1) {
+				region.putInt(offset(slot), NO_SLOT);
+				freeHead = next;
+			} else {
+				slot = next;
+			}
+		}
+		freeCount -= needed;
+		return new SlotEntry(first, data.length);
+	}
+
+	@Override
+	protected byte[] read(Entry entry) {
+		SlotEntry slots = (SlotEntry) entry;
+		byte[] data = new byte[slots.length];
+		int payload = slotSize - SLOT_HEADER;
+		int slot = slots.firstSlot;
+		int read = 0;
+		while (read < data.length) {
+			int chunk = Math.min(payload, data.length - read);
+			region.position(offset(slot) + SLOT_HEADER);
+			region.get(data, read, chunk);
+			read += chunk;
+			slot = region.getInt(offset(slot));
+		}
+		return data;
+	}
+
+	@Override
+	protected void release(Entry entry) {
+		int slot = ((SlotEntry) entry).firstSlot;
+		int released = 1;
+		int next;
+		while ((next = region.getInt(offset(slot))) != NO_SLOT) {
+			slot = next;
+			released++;
+		}
+		// Splice the whole chain onto the free list
+		region.putInt(offset(slot), freeHead);
+		freeHead = ((SlotEntry) entry).firstSlot;
+		freeCount += released;
+	}
+
+	private int offset(int slot) {
+		return slot * slotSize;
+	}
+
+	@Override
+	protected long bytesUsed() {
+		return (long) (slotCount - freeCount) * slotSize;
+	}
+
+	@Override
+	protected long bytesCapacity() {
+		return (long) slotCount * slotSize;
+	}
+
+	@Override
+	protected long heapBytesUsed() {
+		return 0;
+	}
+}
@@ -0,0 +1,40 @@
+package com.acme.ecommerce.cart;
+
+import javax.servlet.http.HttpSession;
+
+/**
+ * Keeps records in a {@link CartStore} under the HTTP session id, so a visitor
+ * must keep reaching the node holding their session.
+ */
+public class SessionCartResolver implements CartResolver {
+
+	private final CartStore store;
+	private final HttpSession session;
+
+	/**
+	 * @param session the request-bound session proxy
+	 */
+	public SessionCartResolver(CartStore store, HttpSession session) {
+		this.store = store;
+		this.session = session;
+	}
+
+	@Override
+	public CartRecord load() {
+		return store.get(session.getId());
+	}
+
+	@Override
+	public void save(CartRecord record) {
+		if (record == null) {
+			store.remove(session.getId());
+		} else {
+			store.put(session.getId(), record);
+		}
+	}
+
+	@Override
+	public int getMaxLines() {
+		return CartRecord.MAX_LINES;
+	}
+}
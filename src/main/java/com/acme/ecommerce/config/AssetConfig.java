@@ -0,0 +1,77 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.asset.AssetCachingResourceResolver;
+import com.acme.ecommerce.asset.AssetRequestHandler;
+import com.acme.ecommerce.asset.PrecompressedResourceResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stylesheets and scripts are linked by fingerprinted URLs such as
+ * {@code /css/site-<md5>.css}: ResourceUrlEncodingFilter rewrites the
+ * {@code @{...}} links the templates render. The build stores brotli and gzip
+ * copies next to them (see processResources in build.gradle), served to
+ * clients that accept them. Fingerprinted URLs are cached for
+ * {@code asset.maxAgeSeconds}, a year by default.
+ */
+@Configuration
+public class AssetConfig {
+
+	@Autowired
+	private Environment env;
+
+	@Bean
+	public SimpleUrlHandlerMapping assetHandlerMapping() {
+		Map<String, Object> urlMap = new HashMap<String, Object>();
+		urlMap.put("/css/**", cssHandler());
+		urlMap.put("/js/**", jsHandler());
+		SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
+		mapping.setUrlMap(urlMap);
+		// Ahead of the catch-all static resource mapping
+		mapping.setOrder(Ordered.LOWEST_PRECEDENCE - 2);
+		return mapping;
+	}
+
+	@Bean
+	public AssetRequestHandler cssHandler() {
+		return assetHandler("css");
+	}
+
+	@Bean
+	public AssetRequestHandler jsHandler() {
+		return assetHandler("js");
+	}
+
+	@Bean
+	public ResourceUrlEncodingFilter resourceUrlEncodingFilter() {
+		return new ResourceUrlEncodingFilter();
+	}
+
+	private AssetRequestHandler assetHandler(String directory) {
+		AssetRequestHandler handler = new AssetRequestHandler(
+				env.getProperty("asset.maxAgeSeconds", Long.class, TimeUnit.DAYS.toSeconds(365)));
+		handler.setLocations(Collections.<Resource>singletonList(new ClassPathResource("static/" + directory + "/")));
+		handler.setResourceResolvers(Arrays.<ResourceResolver>asList(
+				new AssetCachingResourceResolver(directory + "Assets"),
+				new PrecompressedResourceResolver(),
+				new VersionResourceResolver().addContentVersionStrategy("/**"),
+				new PathResourceResolver()));
+		return handler;
+	}
+}
@@ -0,0 +1,98 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.cart.CartResolver;
+import com.acme.ecommerce.cart.CartStore;
+import com.acme.ecommerce.cart.CookieCartResolver;
+import com.acme.ecommerce.cart.HeapCartStore;
+import com.acme.ecommerce.cart.OffHeapCartStore;
+import com.acme.ecommerce.cart.SessionCartResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import javax.servlet.http.HttpSession;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code cart.mode=session} (the default) keeps carts in a {@link CartStore}
+ * keyed by session id; {@code cart.mode=cookie} keeps them in a signed cookie
+ * and needs no session or sticky routing at all.
+ */
+@Configuration
+@EnableScheduling
+public class CartConfig {
+	final Logger logger = LoggerFactory.getLogger(CartConfig.class);
+
+	@Autowired
+	private Environment env;
+
+	@Configuration
+	@ConditionalOnProperty(name = "cart.mode", havingValue = "session", matchIfMissing = true)
+	static class SessionCartConfig {
+
+		@Autowired
+		private Environment env;
+
+		/**
+		 * {@code cartStore.type=offHeap} (the default) keeps carts in a direct
+		 * buffer, {@code mapped} in a memory-mapped {@code cartStore.file} and
+		 * {@code heap} in ordinary byte arrays. Records untouched for
+		 * {@code cartStore.ttlSeconds} are dropped; keep it at least as long as the
+		 * session timeout.
+		 */
+		@Bean
+		public CartStore cartStore() throws IOException {
+			String type = env.getProperty("cartStore.type", "offHeap");
+			int capacityBytes = env.getProperty("cartStore.capacityBytes", Integer.class, 16 * 1024 * 1024);
+			int slotSize = env.getProperty("cartStore.slotSize", Integer.class, 64);
+			long ttlMillis = TimeUnit.SECONDS.toMillis(env.getProperty("cartStore.ttlSeconds", Long.class, 1800L));
+			if ("offHeap".equals(type)) {
+				return OffHeapCartStore.allocate(capacityBytes, slotSize, ttlMillis);
+			}
+			if ("mapped".equals(type)) {
+				File file = new File(env.getProperty("cartStore.file", "carts.dat"));
+				return OffHeapCartStore.mapped(file, capacityBytes, slotSize, ttlMillis);
+			}
+			if ("heap".equals(type)) {
+				return new HeapCartStore(capacityBytes, ttlMillis);
+			}
+			throw new IllegalStateException("Unknown cartStore.type '" + type + "', expected 'offHeap', 'mapped' or 'heap'");
+		}
+
+		@Bean
+		public CartResolver cartResolver(CartStore cartStore, HttpSession session) {
+			return new SessionCartResolver(cartStore, session);
+		}
+	}
+
+	/**
+	 * Every node must share {@code cart.cookie.secret}; without one a random
+	 * key is used and carts do not survive a restart or reach another node.
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "cart.mode", havingValue = "cookie")
+	public CartResolver cookieCartResolver() {
+		String secret = env.getProperty("cart.cookie.secret");
+		byte[] key;
+		if (secret == null || secret.isEmpty()) {
+			logger.warn("cart.cookie.secret is not set, signing cart cookies with a random key for this node only");
+			key = new byte[32];
+			new SecureRandom().nextBytes(key);
+		} else {
+			key = secret.getBytes(StandardCharsets.UTF_8);
+		}
+		return new CookieCartResolver(key,
+				env.getProperty("cart.cookie.name", "CART"),
+				env.getProperty("cart.cookie.maxAgeSeconds", Integer.class, 7 * 24 * 3600),
+				env.getProperty("cart.cookie.secure", Boolean.class, false));
+	}
+}
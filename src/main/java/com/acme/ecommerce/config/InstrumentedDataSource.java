@@ -0,0 +1,122 @@
+package com.acme.ecommerce.config;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps the application DataSource to time every connection checkout, so the
+ * pool can be sized against the time requests actually spend waiting for a
+ * connection. When the target is a Tomcat JDBC pool its active, idle and
+ * waiting counts are published alongside.
+ */
+public class InstrumentedDataSource extends DelegatingDataSource implements PublicMetrics {
+
+	private final String prefix;
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public InstrumentedDataSource(DataSource target) {
+		this(null, target);
+	}
+
+	/**
+	 * @param name inserted into the metric names, as in
+	 * {@code datasource.<name>.connections.acquired}, to tell several pools apart
+	 */
+	public InstrumentedDataSource(String name, DataSource target) {
+		super(target);
+		this.prefix = name == null ? "datasource." : "datasource." + name + ".";
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			Connection connection = super.getConnection();
+			recordWait(System.nanoTime() - start);
+			return connection;
+		} catch (SQLException e) {
+			failed.incrementAndGet();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			Connection connection = super.getConnection(username, password);
+			recordWait(System.nanoTime() - start);
+			return connection;
+		} catch (SQLException e) {
+			failed.incrementAndGet();
+			throw e;
+		}
+	}
+
+	private void recordWait(long nanos) {
+		acquired.incrementAndGet();
+		totalWaitNanos.addAndGet(nanos);
+		long max = maxWaitNanos.get();
+		while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+			max = maxWaitNanos.get();
+		}
+	}
+
+	public long getAcquired() {
+		return acquired.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Closes the underlying pool or embedded database. Picked up as the bean's
+	 * destroy method.
+	 */
+	public void close() {
+		DataSource target = getTargetDataSource();
+		if (target instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+			((org.apache.tomcat.jdbc.pool.DataSource) target).close();
+		} else if (target instanceof EmbeddedDatabase) {
+			((EmbeddedDatabase) target).shutdown();
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		long count = acquired.get();
+		metrics.add(new Metric<Long>(prefix + "connections.acquired", count));
+		metrics.add(new Metric<Long>(prefix + "connections.failed", failed.get()));
+		metrics.add(new Metric<Double>(prefix + "connections.waitMillis.mean",
+				count == 0 ? 0.0 : totalWaitNanos.get() / (double) count / TimeUnit.MILLISECONDS.toNanos(1)));
+		metrics.add(new Metric<Double>(prefix + "connections.waitMillis.max",
+				maxWaitNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+
+		DataSource target = getTargetDataSource();
+		if (target instanceof org.apache.tomcat.jdbc.pool.DataSource) {
+			org.apache.tomcat.jdbc.pool.DataSource pool = (org.apache.tomcat.jdbc.pool.DataSource) target;
+			metrics.add(new Metric<Integer>(prefix + "pool.active", pool.getActive()));
+			metrics.add(new Metric<Integer>(prefix + "pool.idle", pool.getIdle()));
+			metrics.add(new Metric<Integer>(prefix + "pool.waiting", pool.getWaitCount()));
+			metrics.add(new Metric<Integer>(prefix + "pool.size", pool.getSize()));
+			metrics.add(new Metric<Integer>(prefix + "pool.maxActive", pool.getMaxActive()));
+		}
+		return metrics;
+	}
+}
@@ -0,0 +1,38 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.metrics.LatencyEndpoint;
+import com.acme.ecommerce.metrics.LatencyRecorder;
+import com.acme.ecommerce.metrics.RequestLatencyInterceptor;
+import com.acme.ecommerce.metrics.ServiceLatencyAspect;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+/**
+ * Latency histograms for request handlers and service methods, published on
+ * the {@code /latency} actuator endpoint.
+ */
+@Configuration
+public class LatencyConfig extends WebMvcConfigurerAdapter {
+
+	@Bean
+	public LatencyRecorder latencyRecorder() {
+		return new LatencyRecorder();
+	}
+
+	@Bean
+	public ServiceLatencyAspect serviceLatencyAspect() {
+		return new ServiceLatencyAspect(latencyRecorder());
+	}
+
+	@Bean
+	public LatencyEndpoint latencyEndpoint() {
+		return new LatencyEndpoint(latencyRecorder());
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new RequestLatencyInterceptor(latencyRecorder()));
+	}
+}
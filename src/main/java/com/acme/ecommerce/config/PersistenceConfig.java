@@ -1,7 +1,12 @@
 package com.acme.ecommerce.config;
 
+import net.sf.ehcache.CacheManager;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.hibernate.cache.ehcache.SingletonEhCacheRegionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
@@ -17,10 +22,91 @@ import java.util.Properties;
 @EnableTransactionManagement
 @EnableJpaRepositories("com.acme.ecommerce.repository")
 public class PersistenceConfig {
- 
+
+    @Autowired
+    private Environment env;
+
+    /**
+     * {@code dataSource.type=pooled} (the default) builds a Tomcat JDBC pool
+     * against {@code dataSource.url}, so a file-backed or server-mode H2 is a
+     * property change away; {@code dataSource.type=embedded} keeps the old
+     * unpooled in-memory database.
+     * <p>
+     * Setting {@code dataSource.replica.url} adds a second pool for read-only
+     * transactions. Its {@code dataSource.replica.*} settings default to the
+     * primary's.
+     */
     @Bean
     public DataSource dataSource() {
-        return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build();
+        if (!env.containsProperty("dataSource.replica.url")) {
+            return primaryDataSource(null);
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource("primary"),
+                new InstrumentedDataSource("replica", new org.apache.tomcat.jdbc.pool.DataSource(
+                        poolProperties("dataSource.replica", "ecommerce-replica"))));
+    }
+
+    private InstrumentedDataSource primaryDataSource(String name) {
+        String type = env.getProperty("dataSource.type", "pooled");
+        if ("embedded".equals(type)) {
+            return new InstrumentedDataSource(name, new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).build());
+        }
+        if (!"pooled".equals(type)) {
+            throw new IllegalStateException("Unknown dataSource.type '" + type + "', expected 'pooled' or 'embedded'");
+        }
+        return new InstrumentedDataSource(name, new org.apache.tomcat.jdbc.pool.DataSource(
+                poolProperties("dataSource", "ecommerce")));
+    }
+
+    private PoolProperties poolProperties(String prefix, String name) {
+        PoolProperties pool = new PoolProperties();
+        pool.setName(name);
+        pool.setDriverClassName(property(prefix, "driverClassName", String.class, "org.h2.Driver"));
+        pool.setUrl(property(prefix, "url", String.class, "jdbc:h2:mem:testdb;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE"));
+        pool.setUsername(property(prefix, "username", String.class, "sa"));
+        pool.setPassword(property(prefix, "password", String.class, ""));
+
+        int maxActive = property(prefix, "maxActive", Integer.class, 20);
+        pool.setMaxActive(maxActive);
+        pool.setMaxIdle(maxActive);
+        pool.setMinIdle(property(prefix, "minIdle", Integer.class, 2));
+        pool.setInitialSize(property(prefix, "initialSize", Integer.class, 2));
+        // How long a request may wait for a free connection before failing
+        pool.setMaxWait(property(prefix, "maxWaitMillis", Integer.class, 5000));
+
+        pool.setTestOnBorrow(true);
+        pool.setValidationQuery("SELECT 1");
+        pool.setValidationInterval(30000);
+        pool.setTimeBetweenEvictionRunsMillis(5000);
+
+        // Leak detection: log the borrowing stack of connections held longer than this
+        int leakSeconds = property(prefix, "leakDetectionSeconds", Integer.class, 60);
+        if (leakSeconds > 0) {
+            pool.setSuspectTimeout(leakSeconds);
+            pool.setLogAbandoned(true);
+        }
+        // Optionally reclaim them as well; off by default since it closes live connections
+        int abandonSeconds = property(prefix, "removeAbandonedSeconds", Integer.class, 0);
+        if (abandonSeconds > 0) {
+            pool.setRemoveAbandoned(true);
+            pool.setRemoveAbandonedTimeout(abandonSeconds);
+            pool.setLogAbandoned(true);
+        }
+
+        int statementCacheSize = property(prefix, "statementCacheSize", Integer.class, 50);
+        String interceptors = "ConnectionState";
+        if (statementCacheSize > 0) {
+            interceptors += ";StatementCache(prepared=true,callable=false,max=" + statementCacheSize + ")";
+        }
+        pool.setJdbcInterceptors(interceptors);
+        return pool;
+    }
+
+    /**
+     * {@code <prefix>.<key>}, falling back to the primary's {@code dataSource.<key>}.
+     */
+    private <T> T property(String prefix, String key, Class<T> type, T defaultValue) {
+        return env.getProperty(prefix + "." + key, type, env.getProperty("dataSource." + key, type, defaultValue));
     }
  
     @Bean
@@ -37,10 +123,53 @@ public class PersistenceConfig {
         Properties properties = new Properties();
         properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
         properties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
-        properties.setProperty("hibernate.show_sql", "true");
         properties.setProperty("hibernate.format_sql", "false");
+        properties.setProperty("hibernate.show_sql", env.getProperty("hibernate.show_sql", "true"));
+        properties.setProperty("hibernate.generate_statistics", env.getProperty("hibernate.generate_statistics", "false"));
+
+        // Sequence ids are handed out in blocks (pooled-lo) so inserts need no id round-trip
+        // and, unlike identity columns, can be sent as JDBC batches
+        properties.setProperty("hibernate.id.new_generator_mappings", "true");
+        properties.setProperty("hibernate.id.optimizer.pooled.prefer_lo", "true");
+        properties.setProperty("hibernate.jdbc.batch_size", env.getProperty("hibernate.jdbc.batch_size", "25"));
+        properties.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        properties.setProperty("hibernate.order_inserts", "true");
+        properties.setProperty("hibernate.order_updates", "true");
+
+        // Second-level cache for @Cacheable entities, regions in hibernate-ehcache.xml.
+        // The singleton factory lets contexts sharing one JVM share one cache manager.
+        boolean cacheEnabled = env.getProperty("hibernate.cache.enabled", Boolean.class, true);
+        properties.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(cacheEnabled));
+        properties.setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        if (cacheEnabled) {
+            properties.setProperty("hibernate.cache.region.factory_class", SingletonEhCacheRegionFactory.class.getName());
+            properties.setProperty("net.sf.ehcache.configurationResourceName", "/hibernate-ehcache.xml");
+        }
         return properties;
     }
+
+    /**
+     * Applies {@code hibernate.cache.<region>.maxEntries} and
+     * {@code hibernate.cache.<region>.ttlSeconds} to the entity
+     * region and exposes its hit ratio as a metric.
+     */
+    @Bean
+    public SecondLevelCache secondLevelCache() {
+        if (!env.getProperty("hibernate.cache.enabled", Boolean.class, true)) {
+            return new SecondLevelCache(null);
+        }
+        // The region factory creates the cache manager while the entity manager factory starts
+        entityManagerFactory().getObject();
+        SecondLevelCache cache = new SecondLevelCache(CacheManager.getInstance());
+        configureRegion(cache, "product", 10000);
+        return cache;
+    }
+
+    private void configureRegion(SecondLevelCache cache, String region, int defaultMaxEntries) {
+        cache.configure(region,
+                env.getProperty("hibernate.cache." + region + ".maxEntries", Integer.class, defaultMaxEntries),
+                env.getProperty("hibernate.cache." + region + ".ttlSeconds", Long.class, 300L));
+    }
  
     @Bean
     public JpaTransactionManager transactionManager() {
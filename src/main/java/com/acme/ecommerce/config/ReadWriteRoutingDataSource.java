@@ -0,0 +1,80 @@
+package com.acme.ecommerce.config;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends connections for read-only transactions to a replica and everything
+ * else to the primary. The transaction managers take their connection before
+ * marking the transaction read-only, so the physical connection is only
+ * fetched, and the route chosen, when the first statement runs.
+ * <p>
+ * Reads routed to the replica may lag writes just committed on the primary;
+ * anything that must see its own writes belongs in a read-write transaction.
+ */
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements PublicMetrics {
+
+	private enum Route {
+		PRIMARY, REPLICA
+	}
+
+	private final InstrumentedDataSource primary;
+	private final InstrumentedDataSource replica;
+
+	private final AtomicLong primaryRoutes = new AtomicLong();
+	private final AtomicLong replicaRoutes = new AtomicLong();
+
+	public ReadWriteRoutingDataSource(InstrumentedDataSource primary, InstrumentedDataSource replica) {
+		this.primary = primary;
+		this.replica = replica;
+		Router router = new Router();
+		Map<Object, Object> targets = new HashMap<Object, Object>();
+		targets.put(Route.PRIMARY, primary);
+		targets.put(Route.REPLICA, replica);
+		router.setTargetDataSources(targets);
+		router.setDefaultTargetDataSource(primary);
+		router.afterPropertiesSet();
+		setTargetDataSource(router);
+		afterPropertiesSet();
+	}
+
+	private class Router extends AbstractRoutingDataSource {
+		@Override
+		protected Object determineCurrentLookupKey() {
+			if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+				replicaRoutes.incrementAndGet();
+				return Route.REPLICA;
+			}
+			primaryRoutes.incrementAndGet();
+			return Route.PRIMARY;
+		}
+	}
+
+	/**
+	 * Closes both pools. Picked up as the bean's destroy method.
+	 */
+	public void close() {
+		replica.close();
+		primary.close();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Long>("datasource.routes.primary", primaryRoutes.get()));
+		metrics.add(new Metric<Long>("datasource.routes.replica", replicaRoutes.get()));
+		metrics.addAll(primary.metrics());
+		metrics.addAll(replica.metrics());
+		return metrics;
+	}
+}
@@ -0,0 +1,27 @@
+package com.acme.ecommerce.config;
+
+import com.acme.ecommerce.reservation.HashedTimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Carts holding stock are scheduled on a wheel of {@code reservation.wheelSize}
+ * buckets of {@code reservation.tickMillis} each; with the defaults a turn is
+ * about eight and a half minutes and a cart at the default 30 minute
+ * {@code reservation.ttlSeconds} is passed over three times before it expires.
+ */
+@Configuration
+public class ReservationConfig {
+
+	@Autowired
+	private Environment env;
+
+	@Bean
+	public HashedTimingWheel<Long> reservationWheel() {
+		return new HashedTimingWheel<Long>(env.getProperty("reservation.tickMillis", Long.class, 1000L),
+				env.getProperty("reservation.wheelSize", Integer.class, 512),
+				System.currentTimeMillis());
+	}
+}
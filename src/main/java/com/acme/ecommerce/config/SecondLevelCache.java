@@ -0,0 +1,69 @@
+package com.acme.ecommerce.config;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Statistics;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sizes the Hibernate second-level cache regions and publishes their hit
+ * counts. Regions are declared in {@code hibernate-ehcache.xml}; their entry
+ * limit and time-to-live can be changed here while they are live.
+ */
+public class SecondLevelCache implements PublicMetrics {
+
+	private final CacheManager cacheManager;
+	private final List<String> regions = new ArrayList<String>();
+
+	/**
+	 * @param cacheManager the region factory's cache manager, null when the
+	 * second-level cache is disabled
+	 */
+	public SecondLevelCache(CacheManager cacheManager) {
+		this.cacheManager = cacheManager;
+	}
+
+	public void configure(String region, int maxEntries, long ttlSeconds) {
+		if (cacheManager == null) {
+			return;
+		}
+		Cache cache = cacheManager.getCache(region);
+		if (cache == null) {
+			throw new IllegalStateException("No second-level cache region '" + region + "' in hibernate-ehcache.xml");
+		}
+		CacheConfiguration config = cache.getCacheConfiguration();
+		config.setMaxElementsInMemory(maxEntries);
+		config.setTimeToLiveSeconds(ttlSeconds);
+		cache.setStatisticsEnabled(true);
+		regions.add(region);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		for (String region : regions) {
+			Cache cache = cacheManager.getCache(region);
+			if (cache == null) {
+				// Cache manager already shut down
+				continue;
+			}
+			Statistics statistics = cache.getStatistics();
+			long hits = statistics.getCacheHits();
+			long misses = statistics.getCacheMisses();
+			String prefix = "hibernate.cache." + region;
+			metrics.add(new Metric<Long>(prefix + ".hits", hits));
+			metrics.add(new Metric<Long>(prefix + ".misses", misses));
+			metrics.add(new Metric<Double>(prefix + ".hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses)));
+			metrics.add(new Metric<Long>(prefix + ".evictions", statistics.getEvictionCount()));
+			metrics.add(new Metric<Long>(prefix + ".size", cache.getMemoryStoreSize()));
+			metrics.add(new Metric<Integer>(prefix + ".maxEntries", cache.getCacheConfiguration().getMaxElementsInMemory()));
+		}
+		return metrics;
+	}
+}
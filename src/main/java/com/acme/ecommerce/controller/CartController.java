@@ -1,22 +1,28 @@
 package com.acme.ecommerce.controller;
 
+import com.acme.ecommerce.cart.CartFullException;
 import com.acme.ecommerce.domain.*;
+import com.acme.ecommerce.service.CartService;
 import com.acme.ecommerce.service.ProductService;
-import com.acme.ecommerce.service.PurchaseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.web.servlet.view.RedirectView;
 
-import javax.servlet.http.HttpSession;
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
 
 @Controller
 @RequestMapping("/cart")
@@ -24,39 +30,32 @@ import java.math.BigDecimal;
 public class CartController {
 	final Logger logger = LoggerFactory.getLogger(CartController.class);
 
-	@Autowired
-	PurchaseService purchaseService;
+	private static final int MAX_BATCH_OPERATIONS = 500;
 
 	@Autowired
 	private ProductService productService;
 
 	@Autowired
-	private ShoppingCart sCart;
+	private CartService cartService;
 
 	@Autowired
-	private HttpSession session;
+	private ShoppingCart sCart;
 
 	@RequestMapping("")
 	public String viewCart(Model model) {
 		logger.debug("Getting Product List");
-		logger.debug("Session ID = " + session.getId());
 
 		Purchase purchase = sCart.getPurchase();
-		BigDecimal subTotal = new BigDecimal(0);
 
 		model.addAttribute("purchase", purchase);
 		if (purchase != null) {
-			for (ProductPurchase pp : purchase.getProductPurchases()) {
-				logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName());
-				subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
-			}
-
-			if (!subTotal.equals(new BigDecimal(0))) {
+			BigDecimal subTotal = sCart.getTotals().getSubtotal();
+			if (subTotal.signum() != 0) {
 				model.addAttribute("subTotal", subTotal);
 			}
 
 		} else {
-			logger.error("No purchases Found for session ID=" + session.getId());
+			logger.error("No purchases Found for this cart");
 //			return "redirect:/error";
 		}
 		return "cart";
@@ -66,62 +65,49 @@ public class CartController {
 	public RedirectView addToCart(@ModelAttribute(value="productId") long productId,
 								  @ModelAttribute(value="quantity") int quantity,
 								  RedirectAttributes redirectAttributes) {
-		boolean productAlreadyInCart = false;
 		RedirectView redirect = new RedirectView("/product/");
 		redirect.setExposeModelAttributes(false);
 
 		Product addProduct = productService.findById(productId);
 		if (addProduct != null) {
-			int stockQuantity = addProduct.getQuantity();
-			if (stockQuantity >= quantity) {
-				logger.debug("Adding Product: " + addProduct.getId());
+			Purchase purchase = sCart.getPurchase();
+			ProductPurchase existingProductPurchase = null;
+			if (purchase == null) {
+				purchase = new Purchase();
+			} else {
+				existingProductPurchase = PriceCalculator.findLine(purchase, productId);
+			}
+			int lines = purchase.getProductPurchases().size();
+			if (existingProductPurchase == null && lines >= sCart.getMaxLines()) {
+				logger.info("Rejected product {} for a cart already holding {} products", productId, lines);
+				throw new CartFullException(lines + 1, sCart.getMaxLines());
+			}
+			if (productService.tryReserve(productId, quantity)) {
+				logger.debug("Adding Product: {}", addProduct.getId());
 
-				Purchase purchase = sCart.getPurchase();
-				if (purchase == null) {
-					purchase = new Purchase();
-					sCart.setPurchase(purchase);
+				if (existingProductPurchase != null) {
+					existingProductPurchase.setQuantity(existingProductPurchase.getQuantity() + quantity);
 				} else {
-					for (ProductPurchase pp : purchase.getProductPurchases()) {
-						if (pp.getProduct() != null) {
-							if (pp.getProduct().getId().equals(productId)) {
-								pp.setQuantity(pp.getQuantity() + quantity);
-
-								// Update stock quantity
-								addProduct.setQuantity(stockQuantity - quantity);
-								productService.save(addProduct);
-
-								productAlreadyInCart = true;
-								break;
-							}
-						}
-					}
-				}
-				if (!productAlreadyInCart) {
 					ProductPurchase newProductPurchase = new ProductPurchase();
 					newProductPurchase.setProduct(addProduct);
 					newProductPurchase.setQuantity(quantity);
-
-					// Update stock quantity
-					addProduct.setQuantity(stockQuantity - quantity);
-					productService.save(addProduct);
-
 					newProductPurchase.setPurchase(purchase);
 					purchase.getProductPurchases().add(newProductPurchase);
 				}
-				logger.debug("Added " + quantity + " of " + addProduct.getName() + " to cart");
-				sCart.setPurchase(purchaseService.save(purchase));
+				logger.debug("Added {} of {} to cart", quantity, addProduct.getName());
+				sCart.update(purchase);
 
                 redirectAttributes.addFlashAttribute("flash",
                         new FlashMessage("Product added to cart", FlashMessage.Status.SUCCESS));
-			} else if(stockQuantity < quantity && addProduct != null) {
-				logger.error("Attempt to add higher quantity of product than available: " + productId);
+			} else {
+				logger.error("Attempt to add higher quantity of product than available: {}", productId);
 				redirectAttributes.addFlashAttribute("error", "quantity");
 				redirectAttributes.addFlashAttribute("flash",
 						new FlashMessage("Trying to add higher quantity than available", FlashMessage.Status.FAILED));
 //				redirect.setUrl("/cart");
 			}
 		} else {
-			logger.error("Attempt to add unknown product: " + productId);
+			logger.error("Attempt to add unknown product: {}", productId);
 			redirect.setUrl("/error");
 		}
 
@@ -132,61 +118,54 @@ public class CartController {
 	public RedirectView updateCart(@ModelAttribute(value="productId") long productId,
 								   @ModelAttribute(value="newQuantity") int newQuantity,
 								   RedirectAttributes redirectAttributes) {
-		logger.debug("Updating Product: " + productId + " with Quantity: " + newQuantity);
+		logger.debug("Updating Product: {} with Quantity: {}", productId, newQuantity);
 		RedirectView redirect = new RedirectView("/cart");
 		redirect.setExposeModelAttributes(false);
 
 		Product updateProduct = productService.findById(productId);
 		if (updateProduct != null) {
-			int stockQuantity = updateProduct.getQuantity();
 			Purchase purchase = sCart.getPurchase();
 			if (purchase == null) {
 				logger.error("Unable to find shopping cart for update");
 				redirect.setUrl("/error");
 			} else {
-				for (ProductPurchase pp : purchase.getProductPurchases()) {
-					if (pp.getProduct() != null) {
-						if (pp.getProduct().getId().equals(productId)) {
-							int oldQuantity = pp.getQuantity();
-							if (newQuantity > 0  && stockQuantity + pp.getQuantity() >= newQuantity) {
-
-								pp.setQuantity(newQuantity);
-
-								// Update stock quantity accordingly
-								if (newQuantity == oldQuantity) {
-									logger.debug("Quantity of product " + updateProduct.getName() + " stayed the same");
-									return redirect;
-								} else if (newQuantity > oldQuantity) {
-									updateProduct.setQuantity((stockQuantity + oldQuantity) - newQuantity);
-								} else if (newQuantity < oldQuantity) {
-									updateProduct.setQuantity(stockQuantity + (oldQuantity - newQuantity));
-								}
-
-								redirectAttributes.addFlashAttribute("flash",
-										new FlashMessage("Updated cart", FlashMessage.Status.SUCCESS));
-								logger.debug("Updated " + updateProduct.getName() + " to " + newQuantity);
-							}  else if (stockQuantity < newQuantity) {
-								redirectAttributes.addFlashAttribute("flash",
-										new FlashMessage("Cannot update to higher quantity than available",
-												FlashMessage.Status.FAILED));
-								redirectAttributes.addFlashAttribute("error", "quantity");
-								logger.error("Attempt to update to a higher quantity than available");
-								redirect.setUrl("/cart");
-							}  else {
-								purchase.getProductPurchases().remove(pp);
-
-								updateProduct.setQuantity(stockQuantity + oldQuantity);
+				ProductPurchase pp = PriceCalculator.findLine(purchase, productId);
+				if (pp != null) {
+					int oldQuantity = pp.getQuantity();
+					if (newQuantity == oldQuantity) {
+						logger.debug("Quantity of product {} stayed the same", updateProduct.getName());
+						return redirect;
+					} else if (newQuantity > 0) {
+						// Update stock quantity accordingly
+						boolean stockUpdated = true;
+						if (newQuantity > oldQuantity) {
+							stockUpdated = productService.tryReserve(productId, newQuantity - oldQuantity);
+						} else {
+							productService.release(productId, oldQuantity - newQuantity);
+						}
 
-								logger.debug("Removed " + updateProduct.getName() + " because quantity was set to " + newQuantity);
-							}
-							// Save updated stock quantity
-							productService.save(updateProduct);
-							break;
+						if (stockUpdated) {
+							pp.setQuantity(newQuantity);
+							redirectAttributes.addFlashAttribute("flash",
+									new FlashMessage("Updated cart", FlashMessage.Status.SUCCESS));
+							logger.debug("Updated {} to {}", updateProduct.getName(), newQuantity);
+						} else {
+							redirectAttributes.addFlashAttribute("flash",
+									new FlashMessage("Cannot update to higher quantity than available",
+											FlashMessage.Status.FAILED));
+							redirectAttributes.addFlashAttribute("error", "quantity");
+							logger.error("Attempt to update to a higher quantity than available");
+							redirect.setUrl("/cart");
 						}
+					} else {
+						purchase.getProductPurchases().remove(pp);
+						productService.release(productId, oldQuantity);
+
+						logger.debug("Removed {} because quantity was set to {}", updateProduct.getName(), newQuantity);
 					}
 				}
+				sCart.update(purchase);
 			}
-			sCart.setPurchase(purchaseService.save(purchase));
 		} else {
 			logger.error("Attempt to update on non-existent product");
 			redirect.setUrl("/error");
@@ -198,35 +177,27 @@ public class CartController {
 	@RequestMapping(path="/remove", method = RequestMethod.POST)
 	public RedirectView removeFromCart(@ModelAttribute(value="productId") long productId,
 									   RedirectAttributes redirectAttributes) {
-		logger.debug("Removing Product: " + productId);
+		logger.debug("Removing Product: {}", productId);
 		RedirectView redirect = new RedirectView("/cart");
 		redirect.setExposeModelAttributes(false);
 
 		Product updateProduct = productService.findById(productId);
 		if (updateProduct != null) {
-			int stockQuantity = updateProduct.getQuantity();
 			Purchase purchase = sCart.getPurchase();
 			if (purchase != null) {
-				for (ProductPurchase pp : purchase.getProductPurchases()) {
-					if (pp.getProduct() != null) {
-						if (pp.getProduct().getId().equals(productId)) {
-							int purchaseQuantity = pp.getQuantity();
-							purchase.getProductPurchases().remove(pp);
+				ProductPurchase pp = PriceCalculator.findLine(purchase, productId);
+				if (pp != null) {
+					int purchaseQuantity = pp.getQuantity();
+					purchase.getProductPurchases().remove(pp);
 
-							// Update stock quantity
-							Product product = pp.getProduct();
-							product.setQuantity(stockQuantity + purchaseQuantity);
-							productService.save(product);
+					// Update stock quantity
+					productService.release(productId, purchaseQuantity);
 
-							redirectAttributes.addFlashAttribute("flash",
-									new FlashMessage("Product removed", FlashMessage.Status.SUCCESS));
-							logger.debug("Removed " + updateProduct.getName());
-							break;
-						}
-					}
+					redirectAttributes.addFlashAttribute("flash",
+							new FlashMessage("Product removed", FlashMessage.Status.SUCCESS));
+					logger.debug("Removed {}", updateProduct.getName());
 				}
-				purchase = purchaseService.save(purchase);
-				sCart.setPurchase(purchase);
+				sCart.update(purchase);
 				if (purchase.getProductPurchases().isEmpty()) {
 					//if last item in cart redirect to product else return cart
 					redirect.setUrl("/product/");
@@ -253,15 +224,11 @@ public class CartController {
 		if (purchase != null) {
 			// Update stock quantities
 			for (ProductPurchase pp : purchase.getProductPurchases()) {
-				Product product = pp.getProduct();
-				int stockQuantity = product.getQuantity();
-
-				product.setQuantity(stockQuantity + pp.getQuantity());
-				productService.save(product);
+				productService.release(pp.getProduct().getId(), pp.getQuantity());
 			}
 			purchase.getProductPurchases().clear();
 			redirectAttributes.addFlashAttribute("flash", new FlashMessage("Emptied cart", FlashMessage.Status.SUCCESS));
-			sCart.setPurchase(purchaseService.save(purchase));
+			sCart.update(purchase);
 		} else {
 			logger.error("Unable to find shopping cart for update");
 			redirect.setUrl("/error");
@@ -269,4 +236,24 @@ public class CartController {
 
 		return redirect;
 	}
+
+	/**
+	 * Applies a JSON array of add, update and remove operations in one go, for
+	 * clients adding many products at once, e.g.
+	 * {@code [{"action":"add","productId":1,"quantity":2},{"action":"remove","productId":3}]}.
+	 * Replies with the outcome of every operation and the new cart totals.
+	 */
+	@RequestMapping(path="/batch", method = RequestMethod.POST,
+			consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public ResponseEntity<?> batchUpdate(@RequestBody List<CartOperation> operations) {
+		if (operations.isEmpty() || operations.size() > MAX_BATCH_OPERATIONS) {
+			logger.info("Rejected cart batch of {} operations", operations.size());
+			return ResponseEntity.badRequest().body(Collections.singletonMap("message",
+					"A cart batch must hold between 1 and " + MAX_BATCH_OPERATIONS + " operations, not "
+							+ operations.size()));
+		}
+		logger.debug("Applying cart batch of {} operations", operations.size());
+		return ResponseEntity.ok(cartService.applyBatch(sCart, operations));
+	}
 }
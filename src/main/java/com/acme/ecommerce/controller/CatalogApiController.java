@@ -0,0 +1,98 @@
+package com.acme.ecommerce.controller;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductListView;
+import com.acme.ecommerce.domain.ProductView;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCursor;
+import com.acme.ecommerce.service.ProductService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only JSON view of the catalog. Responses carry an ETag built from the
+ * product versions, so a client revalidating with {@code If-None-Match} gets
+ * a 304 without a body as long as nothing it shows has changed, and may reuse
+ * a response without asking for {@code catalog.api.maxAgeSeconds}.
+ */
+@Controller
+@RequestMapping("/api/products")
+public class CatalogApiController {
+
+	final Logger logger = LoggerFactory.getLogger(CatalogApiController.class);
+
+	private static final int DEFAULT_PAGE_SIZE = 20;
+	private static final int MAX_PAGE_SIZE = 100;
+
+	@Autowired
+	ProductService productService;
+
+	@Value("${catalog.api.maxAgeSeconds:60}")
+	long maxAgeSeconds;
+
+	@RequestMapping(path = "", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public ResponseEntity<ProductListView> list(@RequestParam(value = "cursor", required = false) String cursor,
+												@RequestParam(value = "sort", required = false) String sort,
+												@RequestParam(value = "size", defaultValue = "20") int size) {
+		ProductCursor.Order order = ProductCursor.Order.fromParam(sort);
+		size = size > 0 ? Math.min(size, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+		KeysetPage<Product> page = productService.findPage(ProductCursor.decode(cursor), order, size);
+
+		return ResponseEntity.ok()
+				.cacheControl(cacheControl())
+				.eTag(listETag(page))
+				.body(new ProductListView(page));
+	}
+
+	@RequestMapping(path = "/{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@ResponseBody
+	public ResponseEntity<ProductView> product(@PathVariable long id) {
+		Product product = productService.findById(id);
+		if (product == null) {
+			logger.debug("No product {} for catalog API", id);
+			return new ResponseEntity<ProductView>(HttpStatus.NOT_FOUND);
+		}
+
+		return ResponseEntity.ok()
+				.cacheControl(cacheControl())
+				.eTag(productETag(product))
+				.body(new ProductView(product));
+	}
+
+	private CacheControl cacheControl() {
+		return CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+	}
+
+	static String productETag(Product product) {
+		return "\"p" + product.getId() + "v" + product.getVersion() + "\"";
+	}
+
+	/**
+	 * Weak, as it hashes the versions of the products on the page rather than
+	 * naming them.
+	 */
+	static String listETag(KeysetPage<Product> page) {
+		long hash = page.getNumber();
+		hash = 31 * hash + page.getTotalPages();
+		for (Product product : page.getContent()) {
+			hash = 31 * hash + product.getId();
+			hash = 31 * hash + (product.getVersion() != null ? product.getVersion() : 0);
+		}
+		return "W/\"l" + Long.toHexString(hash) + "\"";
+	}
+}
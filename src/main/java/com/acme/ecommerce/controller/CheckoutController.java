@@ -1,6 +1,7 @@
 package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.domain.*;
+import com.acme.ecommerce.service.OrderNumberGenerator;
 import com.acme.ecommerce.service.PurchaseService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,7 +9,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
-import org.springframework.util.FileCopyUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -19,12 +19,8 @@ import org.thymeleaf.context.Context;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
-import java.util.concurrent.ThreadLocalRandom;
 
 import static com.acme.ecommerce.controller.WebConstants.*;
 
@@ -43,7 +39,16 @@ public class CheckoutController {
 	
 	@Autowired
 	PurchaseService purchaseService;
+
+	@Autowired
+	OrderNumberGenerator orderNumberGenerator;
 	
+	@ModelAttribute
+	void fetchCheckoutGraph() {
+		// Every checkout page shows addresses or totals; load them with the purchase
+		sCart.fetchAddresses();
+	}
+
 	@RequestMapping("/coupon")
 	String checkoutCoupon(Model model) {
     	Purchase purchase = sCart.getPurchase();
@@ -57,7 +62,7 @@ public class CheckoutController {
     			couponCode = new CouponCode();
     		}
     		
-    		subTotal = computeSubtotal(purchase, couponCode);
+    		subTotal = sCart.getTotals().getSubtotal(couponCode);
 
     		model.addAttribute("subTotal", subTotal);
 
@@ -75,7 +80,7 @@ public class CheckoutController {
 	String postCouponCode(Model model, @ModelAttribute(value="couponCode") @Valid CouponCode couponCode,
                           final BindingResult result, RedirectAttributes redirectAttributes) {
 		if (result.hasErrors() && !couponCode.getCode().isEmpty()) {
-            logger.error("Errors on fields: " + result.getFieldErrorCount());
+            logger.error("Errors on fields: {}", result.getFieldErrorCount());
             redirectAttributes.addFlashAttribute("org.springframework.validation.BindingResult.couponCode", result);
             redirectAttributes.addFlashAttribute("couponCode", couponCode);
             return "redirect:coupon";
@@ -93,7 +98,7 @@ public class CheckoutController {
     	
     	model.addAttribute("purchase", purchase);
     	if (purchase != null) {
-    		subTotal = computeSubtotal(purchase, couponCode);
+    		subTotal = sCart.getTotals().getSubtotal(couponCode);
     		
     		if (!model.containsAttribute("shippingAddress")) { // so we don't overwrite any errors...
 	    		Address modelAddress;
@@ -118,7 +123,7 @@ public class CheckoutController {
 	String postShipping(@ModelAttribute(value="shippingAddress") @Valid Address shippingAddress, final BindingResult result, RedirectAttributes redirectAttributes) {
 
     	if(result.hasErrors()) {
-    		logger.error("Errors on fields: " + result.getFieldErrorCount());
+    		logger.error("Errors on fields: {}", result.getFieldErrorCount());
     		redirectAttributes.addFlashAttribute("org.springframework.validation.BindingResult.shippingAddress", result);
     		redirectAttributes.addFlashAttribute("shippingAddress", shippingAddress);
     		return String.format("redirect:shipping");
@@ -160,8 +165,8 @@ public class CheckoutController {
 	    		model.addAttribute("billingObject", combinedBilling);
     		}
     		
-    		subTotal = computeSubtotal(purchase, couponCode);
-    		shippingCost = computeShippingCost(purchase);
+    		subTotal = sCart.getTotals().getSubtotal(couponCode);
+    		shippingCost = sCart.getTotals().getShippingCost();
     		
     		BigDecimal orderTotal = subTotal.add(shippingCost);
 
@@ -214,7 +219,7 @@ public class CheckoutController {
 				purchase.setCreditCardExpMonth(combinedBilling.getCreditCardExpMonth());
 				purchase.setCreditCardExpYear(combinedBilling.getCreditCardExpYear());
 				purchase.setCreditCardCVC(combinedBilling.getCreditCardCVC());
-				purchase.setOrderNumber(String.valueOf(ThreadLocalRandom.current().nextInt(1000000, 9999999)));
+				purchase.setOrderNumber(orderNumberGenerator.next());
 				sCart.setPurchase(purchaseService.save(purchase));
 			} else {
 	    		logger.error("No purchases Found!");
@@ -234,8 +239,8 @@ public class CheckoutController {
     	
     	model.addAttribute("purchase", purchase);
     	if (purchase != null) {
-			subTotal = computeSubtotal(purchase, couponCode);
-			shippingCost = computeShippingCost(purchase);
+			subTotal = sCart.getTotals().getSubtotal(couponCode);
+			shippingCost = sCart.getTotals().getShippingCost();
 			BigDecimal orderTotal = subTotal.add(shippingCost);
 
 			model.addAttribute("subTotal", subTotal);
@@ -269,8 +274,8 @@ public class CheckoutController {
 
 	    	ctx.setVariable("purchase", purchase);
 	    	if (purchase != null) {
-	    		subTotal = computeSubtotal(purchase, couponCode);
-	    		shippingCost = computeShippingCost(purchase);
+	    		subTotal = sCart.getTotals().getSubtotal(couponCode);
+	    		shippingCost = sCart.getTotals().getShippingCost();
 	    		BigDecimal orderTotal = subTotal.add(shippingCost);
 
 	    		ctx.setVariable("subTotal", subTotal);
@@ -285,59 +290,35 @@ public class CheckoutController {
 	    		ctx.setVariable("creditCard", purchase.getCreditCardNumber());
 	    		*/
 
-	    		final String htmlContent = this.templateEngine.process("email_confirmation", ctx);
-
 		    	response.setHeader("Content-Disposition", "attachment; filename=email_receipt.html");
 
-		    	response.setContentType("text/html");
-
-		    	InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(htmlContent.getBytes()));
+		    	response.setContentType("text/html;charset=UTF-8");
 
-		    	FileCopyUtils.copy(inputStream, response.getOutputStream());
-
-		    	response.flushBuffer();
 	    	} else {
 	    		logger.error("No purchases Found!");
 	    	}
 
-	    	//Order completed, reset in case user wants to order again
-	    	sCart.setCouponCode(null);
-	    	sCart.setPurchase(null);
+	    	//Order completed, reset in case user wants to order again. Done before rendering, as a
+	    	//cookie-backed cart can no longer clear its cookie once the response is committed.
+	    	//A cart not ordered yet is left alone: clearing it would drop its reservations without
+	    	//returning the stock they hold
+	    	if (purchase != null && purchase.getOrderNumber() != null) {
+	    		sCart.setCouponCode(null);
+	    		sCart.setPurchase(null);
+	    	}
+
+	    	if (purchase != null) {
+		    	// Render straight into the response instead of building the document as a String.
+		    	// A receipt that fits the response buffer goes out with a Content-Length, a larger
+		    	// one is sent chunked, so the buffer is deliberately not flushed here.
+		    	this.templateEngine.process("email_confirmation", ctx, response.getWriter());
+	    	}
 	    } catch (IOException ex) {
 	      logger.info("Error writing file to output stream. Filename was '{}'", "email_receipt.html", ex);
 	      throw new RuntimeException("IOError writing file to output stream");
 	    }
 	}
 
-	private BigDecimal computeSubtotal(Purchase purchase, CouponCode couponCode) {
-
-		BigDecimal subTotal = new BigDecimal(0);
-
-		for (ProductPurchase pp : purchase.getProductPurchases()) {
-			logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName() + " at " + "$" + pp.getProduct().getPrice());
-			subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
-		}
-
-		if (couponCode.getCode() != null && !couponCode.getCode().isEmpty()) {
-			logger.info("Applying discount for coupon");
-			subTotal = subTotal.multiply(new BigDecimal(0.9));
-		}
-
-		return subTotal;
-	}
-
-	private BigDecimal computeShippingCost(Purchase purchase) {
-		BigDecimal shippingCost = new BigDecimal(0);
-
-		for (ProductPurchase pp : purchase.getProductPurchases()) {
-			BigDecimal itemShippingCost = new BigDecimal(0).add(COST_PER_ITEM.multiply(new BigDecimal(pp.getQuantity())));
-			logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName() + " shipping cost of " + itemShippingCost);
-			shippingCost = shippingCost.add(itemShippingCost);
-		}
-
-		return shippingCost;
-	}
-
 	private String getMaskedCCNumber(Purchase purchase) {
 		String credictCardNumber = purchase.getCreditCardNumber();
 		StringBuilder sb = new StringBuilder();
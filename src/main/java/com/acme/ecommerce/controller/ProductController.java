@@ -1,27 +1,28 @@
 package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.domain.*;
+import com.acme.ecommerce.image.ImageServer;
+import com.acme.ecommerce.image.ThumbnailService;
+import com.acme.ecommerce.search.SearchHit;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCursor;
 import com.acme.ecommerce.service.ProductService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 
-import javax.activation.MimetypesFileTypeMap;
-import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.util.List;
 
 @Controller
 @RequestMapping("/product")
@@ -30,47 +31,65 @@ public class ProductController {
 	
 	final Logger logger = LoggerFactory.getLogger(ProductController.class);
 	
-	private static final int INITIAL_PAGE = 0;
 	private static final int PAGE_SIZE = 5;
+	private static final int MAX_SEARCH_RESULTS = 50;
 	
 	@Autowired
 	ProductService productService;
 	
 	@Autowired
-	HttpSession session;
+	ShoppingCart sCart;
+	
+	@Autowired
+	ImageServer imageServer;
 
 	@Autowired
-	ShoppingCart sCart;
+	ThumbnailService thumbnailService;
 	
 	@Value("${imagePath:/images/}")
 	String imagePath;
 	
     @RequestMapping("/")
-    public String index(Model model, @RequestParam(value = "page", required = false) Integer page) {
+    public String index(Model model, @RequestParam(value = "page", required = false) Integer page,
+						@RequestParam(value = "cursor", required = false) String cursor,
+						@RequestParam(value = "sort", required = false) String sort) {
     	logger.debug("Getting Product List");
-    	logger.debug("Session ID = " + session.getId());
-    	
-		// Evaluate page. If requested parameter is null or less than 0 (to
-		// prevent exception), return initial size. Otherwise, return value of
-		// param. decreased by 1.
-		int evalPage = (page == null || page < 1) ? INITIAL_PAGE : page - 1;
-    	
-    	Page<Product> products = productService.findAll(new PageRequest(evalPage, PAGE_SIZE));
+
+		ProductCursor.Order order = ProductCursor.Order.fromParam(sort);
+		KeysetPage<Product> products;
+		if (cursor == null && page != null && page > 1) {
+			// Page numbers only come from links made before cursors; serve them once by offset
+			products = productService.findPage(page - 1, order, PAGE_SIZE);
+		} else {
+			products = productService.findPage(ProductCursor.decode(cursor), order, PAGE_SIZE);
+		}
     	
 		model.addAttribute("products", products);
-		if (sCart != null && sCart.getPurchase() != null) {
-			BigDecimal subTotal = computeSubtotal(sCart.getPurchase(), new CouponCode());
-			if (!subTotal.equals(new BigDecimal(0))) {
-				model.addAttribute("subTotal", subTotal);
-			}
+		if (order == ProductCursor.Order.PRICE) {
+			model.addAttribute("sort", "price");
+		}
+		if (sCart != null && !sCart.getTotals().isEmpty()) {
+			model.addAttribute("subTotal", sCart.getTotals().getSubtotal());
 		}
 
         return "index";
     }
     
+    @RequestMapping(path = "/search", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public List<SearchHit> search(@RequestParam(value = "q", required = false) String query,
+								  @RequestParam(value = "limit", defaultValue = "10") int limit) {
+    	logger.debug("Searching products for '{}'", query);
+
+    	return productService.search(query, Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+    }
+
     @RequestMapping(path = "/detail/{id}", method = RequestMethod.GET)
     public String productDetail(@PathVariable long id, Model model) {
-    	logger.debug("Details for Product " + id);
+    	if (logger.isDebugEnabled()) {
+    		// Guarded so the id is not boxed when debug is off
+    		logger.debug("Details for Product {}", id);
+    	}
     	
     	Product returnProduct = productService.findById(id);
     	if (returnProduct != null) {
@@ -80,14 +99,11 @@ public class ProductController {
     		productPurchase.setQuantity(1);
     		model.addAttribute("productPurchase", productPurchase);
 
-			if (sCart != null && sCart.getPurchase() != null) {
-				BigDecimal subTotal = computeSubtotal(sCart.getPurchase(), new CouponCode());
-				if (!subTotal.equals(new BigDecimal(0))) {
-					model.addAttribute("subTotal", subTotal);
-				}
+			if (sCart != null && !sCart.getTotals().isEmpty()) {
+				model.addAttribute("subTotal", sCart.getTotals().getSubtotal());
 			}
     	} else {
-    		logger.error("Product " + id + " Not Found!");
+    		logger.error("Product {} Not Found!", id);
 //    		return "redirect:/error";
     		return "product_detail_unknown";
     	}
@@ -96,49 +112,55 @@ public class ProductController {
     }
     
     @RequestMapping(path="/{id}/image", method = RequestMethod.GET)
-    @ResponseBody
-    public ResponseEntity<InputStreamResource> productImage(@PathVariable long id) throws FileNotFoundException {
-    	MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
-    	
-    	logger.debug("Product Image Request for " + id);
-    	logger.info("Using imagePath [" + imagePath + "]");
+    public void productImage(@PathVariable long id, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+    	if (logger.isDebugEnabled()) {
+    		logger.debug("Product Image Request for {}", id);
+    	}
     	
     	Product returnProduct = productService.findById(id);
-    	String imageFilePath = null;
-    	if (returnProduct != null) {
-    		if (!imagePath.endsWith("/")) {
-    			imagePath = imagePath + "/";
-    		}
-    		imageFilePath = imagePath + returnProduct.getFullImageName();
-    	} 
-    	File imageFile = new File(imageFilePath);
-    	
-    	return ResponseEntity.ok()
-                .contentLength(imageFile.length())
-                .contentType(MediaType.parseMediaType(mimeTypesMap.getContentType(imageFile)))
-                .body(new InputStreamResource(new FileInputStream(imageFile)));
+    	if (returnProduct == null) {
+    		logger.error("Image requested for unknown Product {}", id);
+    		response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    		return;
+    	}
+
+    	imageServer.serve(new File(imagePath, returnProduct.getFullImageName()), request, response);
+    }
+    
+    @RequestMapping(path="/{id}/thumb", method = RequestMethod.GET)
+    public void productThumbnail(@PathVariable long id, @RequestParam(value = "w", required = false) Integer width,
+								 HttpServletRequest request, HttpServletResponse response) throws IOException {
+    	if (logger.isDebugEnabled()) {
+    		logger.debug("Product Thumbnail Request for {} at width {}", id, width);
+    	}
+
+    	Product returnProduct = productService.findById(id);
+    	if (returnProduct == null) {
+    		logger.error("Thumbnail requested for unknown Product {}", id);
+    		response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    		return;
+    	}
+
+    	File source = new File(imagePath, returnProduct.getThumbImageName());
+    	File thumbnail = thumbnailService.thumbnail(source, thumbnailService.snapWidth(width));
+    	if (thumbnail != null) {
+    		imageServer.serve(thumbnail, request, response);
+    	} else {
+    		// not generated yet, send the original without letting clients keep it
+    		imageServer.serve(imageServer.resolve(source), request, response, 0);
+    	}
     }
     
+    @ExceptionHandler(FileNotFoundException.class)
+    public void imageFileMissing(FileNotFoundException e, HttpServletResponse response) throws IOException {
+    	logger.error("Image file {} is missing", e.getMessage());
+    	response.sendError(HttpServletResponse.SC_NOT_FOUND);
+    }
+
     @RequestMapping(path = "/about")
     public String aboutCartShop() {
     	logger.warn("Happy Easter! Someone actually clicked on About.");
     	return("about");
     }
-
-	private BigDecimal computeSubtotal(Purchase purchase, CouponCode couponCode) {
-
-		BigDecimal subTotal = new BigDecimal(0);
-
-		for (ProductPurchase pp : purchase.getProductPurchases()) {
-			logger.debug("cart has " + pp.getQuantity() + " of " + pp.getProduct().getName() + " at " + "$" + pp.getProduct().getPrice());
-			subTotal = subTotal.add(pp.getProduct().getPrice().multiply(new BigDecimal(pp.getQuantity())));
-		}
-
-		if (couponCode.getCode() != null && !couponCode.getCode().isEmpty()) {
-			logger.info("Applying discount for coupon");
-			subTotal = subTotal.multiply(new BigDecimal(0.9));
-		}
-
-		return subTotal;
-	}
 }
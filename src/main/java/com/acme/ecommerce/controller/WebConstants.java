@@ -1,5 +1,7 @@
 package com.acme.ecommerce.controller;
 
+import com.acme.ecommerce.domain.PriceCalculator;
+
 import java.math.BigDecimal;
 import java.time.Year;
 import java.util.Arrays;
@@ -12,6 +14,6 @@ public final class WebConstants {
     public static final List<String> LIST_COUNTRIES = Arrays.asList("USA", "Canada", "Mexico");
     public static final List<String> LIST_MONTHS = Arrays.asList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12");
     public static final List<Integer> LIST_YEARS = IntStream.range(Year.now().getValue(),Year.now().getValue() + 5).boxed().collect(Collectors.toList());
-    public static final BigDecimal COST_PER_ITEM = new BigDecimal(2.58);
+    public static final BigDecimal COST_PER_ITEM = PriceCalculator.COST_PER_ITEM;
     public static final String REDIRECT_TO_BASE = "redirect:/product/";
 }
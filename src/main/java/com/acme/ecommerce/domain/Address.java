@@ -13,7 +13,8 @@ public class Address implements Serializable {
 	private static final long serialVersionUID = -5920378527592916159L;
 
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(strategy=GenerationType.SEQUENCE, generator="address_seq")
+	@SequenceGenerator(name="address_seq", sequenceName="address_seq", initialValue=1000, allocationSize=50)
 	@Column(name = "address_id")
 	private Long addressId;
 	
@@ -0,0 +1,54 @@
+package com.acme.ecommerce.domain;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Reply to {@code /cart/batch}: one result per operation, in request order,
+ * and the cart totals after the batch.
+ */
+public class CartBatchResult {
+
+	private final List<CartLineResult> lines;
+	private final long itemCount;
+	private final BigDecimal subtotal;
+	private final BigDecimal shippingCost;
+	private final BigDecimal orderTotal;
+
+	public CartBatchResult(List<CartLineResult> lines, CartTotals totals, CouponCode couponCode) {
+		this.lines = lines;
+		this.itemCount = totals.getItemCount();
+		this.subtotal = cents(totals.getSubtotal(couponCode));
+		this.shippingCost = cents(totals.getShippingCost());
+		this.orderTotal = cents(totals.getOrderTotal(couponCode));
+	}
+
+	// Rounded as the pages show them; the pricing constants are not exact decimals
+	private static BigDecimal cents(BigDecimal amount) {
+		return amount.setScale(2, RoundingMode.HALF_UP);
+	}
+
+	public List<CartLineResult> getLines() {
+		return lines;
+	}
+
+	public long getItemCount() {
+		return itemCount;
+	}
+
+	/**
+	 * After any coupon discount.
+	 */
+	public BigDecimal getSubtotal() {
+		return subtotal;
+	}
+
+	public BigDecimal getShippingCost() {
+		return shippingCost;
+	}
+
+	public BigDecimal getOrderTotal() {
+		return orderTotal;
+	}
+}
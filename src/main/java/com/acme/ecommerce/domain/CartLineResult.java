@@ -0,0 +1,48 @@
+package com.acme.ecommerce.domain;
+
+/**
+ * Outcome of one {@link CartOperation}, with the quantity of the product in
+ * the cart once the whole batch was applied.
+ */
+public class CartLineResult {
+
+	private final Long productId;
+	private final CartOperation.Action action;
+	private final Status status;
+	private final int quantity;
+
+	public CartLineResult(Long productId, CartOperation.Action action, Status status, int quantity) {
+		this.productId = productId;
+		this.action = action;
+		this.status = status;
+		this.quantity = quantity;
+	}
+
+	public Long getProductId() {
+		return productId;
+	}
+
+	public CartOperation.Action getAction() {
+		return action;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public enum Status {
+		APPLIED,
+		/** No such product */
+		UNKNOWN_PRODUCT,
+		/** Missing action or product id, or a quantity the action does not allow */
+		INVALID,
+		/** Update or remove of a product that is not in the cart */
+		NOT_IN_CART,
+		/** Not enough stock for the product's lines; none of them were applied */
+		INSUFFICIENT_STOCK
+	}
+}
@@ -0,0 +1,57 @@
+package com.acme.ecommerce.domain;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/**
+ * One change in a batch sent to {@code /cart/batch}: add {@code quantity}
+ * units of a product, set its line to {@code quantity} units (0 removes it),
+ * or remove its line.
+ */
+public class CartOperation {
+
+	private Action action;
+	private Long productId;
+	private int quantity;
+
+	public CartOperation() {
+	}
+
+	public CartOperation(Action action, Long productId, int quantity) {
+		this.action = action;
+		this.productId = productId;
+		this.quantity = quantity;
+	}
+
+	public Action getAction() {
+		return action;
+	}
+
+	public void setAction(Action action) {
+		this.action = action;
+	}
+
+	public Long getProductId() {
+		return productId;
+	}
+
+	public void setProductId(Long productId) {
+		this.productId = productId;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	public enum Action {
+		ADD, UPDATE, REMOVE;
+
+		@JsonCreator
+		public static Action forName(String name) {
+			return name == null ? null : valueOf(name.toUpperCase());
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.acme.ecommerce.domain;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Subtotal, item count and shipping of a cart, worked out once by
+ * {@link PriceCalculator} so pages showing several of them do not each walk
+ * the lines again.
+ */
+public class CartTotals implements Serializable {
+
+	private static final long serialVersionUID = 2958734062331720184L;
+
+	private BigDecimal subtotal = BigDecimal.ZERO;
+	private long itemCount = 0;
+	private BigDecimal shippingCost = PriceCalculator.computeShippingCost(0);
+
+	public static CartTotals of(Purchase purchase) {
+		CartTotals totals = new CartTotals();
+		if (purchase != null) {
+			totals.subtotal = PriceCalculator.computeSubtotal(purchase);
+			totals.itemCount = PriceCalculator.countItems(purchase);
+			totals.shippingCost = PriceCalculator.computeShippingCost(totals.itemCount);
+		}
+		return totals;
+	}
+
+	public BigDecimal getSubtotal() {
+		return subtotal;
+	}
+
+	public BigDecimal getSubtotal(CouponCode couponCode) {
+		return PriceCalculator.applyCoupon(getSubtotal(), couponCode);
+	}
+
+	public long getItemCount() {
+		return itemCount;
+	}
+
+	public BigDecimal getShippingCost() {
+		return shippingCost;
+	}
+
+	public BigDecimal getOrderTotal(CouponCode couponCode) {
+		return getSubtotal(couponCode).add(getShippingCost());
+	}
+
+	public boolean isEmpty() {
+		return itemCount == 0;
+	}
+}
@@ -0,0 +1,67 @@
+package com.acme.ecommerce.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Pricing rules for a shopping cart, shared by the product, cart and
+ * checkout pages.
+ */
+public final class PriceCalculator {
+
+	public static final BigDecimal COST_PER_ITEM = new BigDecimal(2.58);
+	public static final BigDecimal COUPON_DISCOUNT = new BigDecimal(0.9);
+
+	private PriceCalculator() {
+	}
+
+	public static BigDecimal computeSubtotal(Purchase purchase) {
+		BigDecimal subTotal = BigDecimal.ZERO;
+
+		for (ProductPurchase pp : purchase.getProductPurchases()) {
+			subTotal = subTotal.add(pp.getProduct().getPrice().multiply(BigDecimal.valueOf(pp.getQuantity())));
+		}
+
+		return subTotal;
+	}
+
+	public static BigDecimal computeSubtotal(Purchase purchase, CouponCode couponCode) {
+		return applyCoupon(computeSubtotal(purchase), couponCode);
+	}
+
+	public static BigDecimal applyCoupon(BigDecimal subTotal, CouponCode couponCode) {
+		if (couponCode != null && couponCode.getCode() != null && !couponCode.getCode().isEmpty()) {
+			return subTotal.multiply(COUPON_DISCOUNT);
+		}
+		return subTotal;
+	}
+
+	public static BigDecimal computeShippingCost(Purchase purchase) {
+		return computeShippingCost(countItems(purchase));
+	}
+
+	public static BigDecimal computeShippingCost(long itemCount) {
+		return COST_PER_ITEM.multiply(BigDecimal.valueOf(itemCount));
+	}
+
+	public static long countItems(Purchase purchase) {
+		long itemCount = 0;
+
+		for (ProductPurchase pp : purchase.getProductPurchases()) {
+			itemCount += pp.getQuantity();
+		}
+
+		return itemCount;
+	}
+
+	/**
+	 * @return the cart line holding the given product, or null if it is not in the cart
+	 */
+	public static ProductPurchase findLine(Purchase purchase, Long productId) {
+		for (ProductPurchase pp : purchase.getProductPurchases()) {
+			if (pp.getProduct() != null && pp.getProduct().getId().equals(productId)) {
+				return pp;
+			}
+		}
+		return null;
+	}
+}
@@ -1,16 +1,23 @@
 package com.acme.ecommerce.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 import java.io.Serializable;
 import java.math.BigDecimal;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
+@Table(indexes = @Index(name = "ix_product_price_id", columnList = "price, product_id"))
 public class Product implements Serializable {
 
 	private static final long serialVersionUID = 8217376139341892205L;
 
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(strategy=GenerationType.SEQUENCE, generator="product_seq")
+	@SequenceGenerator(name="product_seq", sequenceName="product_seq", initialValue=1000, allocationSize=50)
 	@Column(name = "product_id")
 	private Long productId;
 	
@@ -31,6 +38,21 @@ public class Product implements Serializable {
 	
 	@Column(name = "quantity", nullable = false)
 	private Integer quantity;
+
+	/**
+	 * Bumped by every change, including the stock updates in ProductRepository;
+	 * the catalog API derives its ETags from it.
+	 */
+	@Version
+	@Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+	private Long version;
+
+	/**
+	 * This copy as it was read, so a save that loses an optimistic lock can be
+	 * replayed as the changes made since.
+	 */
+	@Transient
+	private transient Product loaded;
 	
 	public Long getId() {
 		return productId;
@@ -88,10 +110,48 @@ public class Product implements Serializable {
 		this.quantity = quantity;
 	}
 
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	public Product getLoaded() {
+		return loaded;
+	}
+
+	public void setLoaded(Product loaded) {
+		this.loaded = loaded;
+	}
+
+	/**
+	 * A detached copy of the persistent fields.
+	 */
+	public Product copy() {
+		Product copy = new Product();
+		copy.setId(productId);
+		copy.setName(name);
+		copy.setDesc(desc);
+		copy.setThumbImageName(thumbImageName);
+		copy.setFullImageName(fullImageName);
+		copy.setPrice(price);
+		copy.setQuantity(quantity);
+		copy.setVersion(version);
+		return copy;
+	}
+
+	@PostLoad
+	void rememberLoadedState() {
+		loaded = copy();
+	}
+
 	@Override
 	public String toString() {
 		return "Product [id=" + productId + ", name=" + name + ", desc=" + desc + ", thumbImageName=" + thumbImageName
-				+ ", fullImageName=" + fullImageName + ", price=" + price + ", quantity=" + quantity + "]";
+				+ ", fullImageName=" + fullImageName + ", price=" + price + ", quantity=" + quantity
+				+ ", version=" + version + "]";
 	}
 	
 }
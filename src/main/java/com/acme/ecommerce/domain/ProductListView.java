@@ -0,0 +1,54 @@
+package com.acme.ecommerce.domain;
+
+import com.acme.ecommerce.service.KeysetPage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the catalog API's product list. The cursors are passed back as
+ * the {@code cursor} parameter to move between pages and are null at either
+ * end of the list.
+ */
+public class ProductListView {
+
+	private final List<ProductView> products;
+	private final int page;
+	private final int totalPages;
+	private final String previousCursor;
+	private final String nextCursor;
+
+	public ProductListView(KeysetPage<Product> page) {
+		this.products = new ArrayList<ProductView>(page.getContent().size());
+		for (Product product : page.getContent()) {
+			products.add(new ProductView(product));
+		}
+		this.page = page.getNumber();
+		this.totalPages = page.getTotalPages();
+		this.previousCursor = page.getPreviousCursor();
+		this.nextCursor = page.getNextCursor();
+	}
+
+	public List<ProductView> getProducts() {
+		return products;
+	}
+
+	/**
+	 * Zero-based.
+	 */
+	public int getPage() {
+		return page;
+	}
+
+	public int getTotalPages() {
+		return totalPages;
+	}
+
+	public String getPreviousCursor() {
+		return previousCursor;
+	}
+
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
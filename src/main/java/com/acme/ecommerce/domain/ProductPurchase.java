@@ -9,7 +9,8 @@ public class ProductPurchase implements Serializable {
 	private static final long serialVersionUID = -3665850872024911072L;
 
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(strategy=GenerationType.SEQUENCE, generator="product_purchase_seq")
+	@SequenceGenerator(name="product_purchase_seq", sequenceName="product_purchase_seq", initialValue=1000, allocationSize=50)
 	@Column(name = "product_purchase_id")
 	private Long productPurchaseId;
 	
@@ -58,8 +59,10 @@ public class ProductPurchase implements Serializable {
 
 	@Override
 	public String toString() {
-		return "ProductPurchase [productPurchaseId=" + productPurchaseId + ", purchase=" + purchase + ", product="
-				+ product + ", quantity=" + quantity + "]";
+		// The purchase prints its lines, so refer back to it by id only
+		return "ProductPurchase [productPurchaseId=" + productPurchaseId
+				+ ", purchaseId=" + (purchase == null ? null : purchase.getId())
+				+ ", productId=" + (product == null ? null : product.getId()) + ", quantity=" + quantity + "]";
 	}
 
 }
@@ -0,0 +1,59 @@
+package com.acme.ecommerce.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * A product as the catalog API shows it, with links to its images instead of
+ * their file names.
+ */
+public class ProductView {
+
+	private final Long id;
+	private final String name;
+	private final String description;
+	private final BigDecimal price;
+	private final int available;
+	private final String imageUrl;
+	private final String thumbUrl;
+
+	public ProductView(Product product) {
+		this.id = product.getId();
+		this.name = product.getName();
+		this.description = product.getDesc();
+		this.price = product.getPrice();
+		this.available = product.getQuantity() != null ? product.getQuantity() : 0;
+		this.imageUrl = "/product/" + product.getId() + "/image";
+		this.thumbUrl = "/product/" + product.getId() + "/thumb";
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	/**
+	 * Units in stock.
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	public String getImageUrl() {
+		return imageUrl;
+	}
+
+	public String getThumbUrl() {
+		return thumbUrl;
+	}
+}
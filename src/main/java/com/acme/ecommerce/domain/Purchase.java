@@ -6,12 +6,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "ux_purchase_order_number", columnList = "order_number", unique = true))
 public class Purchase implements Serializable {  // AKA Shopping Cart
 	
 	private static final long serialVersionUID = -1544211294433636412L;
 	
 	@Id
-	@GeneratedValue(strategy=GenerationType.AUTO)
+	@GeneratedValue(strategy=GenerationType.SEQUENCE, generator="purchase_seq")
+	@SequenceGenerator(name="purchase_seq", sequenceName="purchase_seq", initialValue=1000, allocationSize=50)
 	@Column(name = "purchase_id")
 	private Long purchaseId;
 	
@@ -137,10 +139,8 @@ public class Purchase implements Serializable {  // AKA Shopping Cart
 
 	@Override
 	public String toString() {
-		return "Purchase [purchaseId=" + purchaseId + ", productPurchases=" + productPurchases + ", creditCardNumber="
-				+ creditCardNumber + ", creditCardName=" + creditCardName + ", creditCardExpMonth=" + creditCardExpMonth
-				+ ", creditCardExpYear=" + creditCardExpYear + ", creditCardCVC=" + creditCardCVC + ", orderNumber="
-				+ orderNumber + ", shippingAddress=" + shippingAddress + ", billingAddress=" + billingAddress
+		// Identifiers only: no card details in logs, and no walk into lazy associations
+		return "Purchase [purchaseId=" + purchaseId + ", orderNumber=" + orderNumber
 				+ ", billingAddressSame=" + billingAddressSame + "]";
 	}
 
@@ -0,0 +1,108 @@
+package com.acme.ecommerce.domain;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * Stock taken out of inventory for one line of a cart that has not been
+ * checked out. Times are epoch milliseconds; {@code touchedAt} moves on
+ * whenever the cart is used, and a cart whose lines were not touched for the
+ * reservation time-to-live gets its stock back.
+ */
+@Entity
+@Table(indexes = @Index(name = "ix_reservation_cart_id", columnList = "cart_id"))
+public class Reservation implements Serializable {
+
+	private static final long serialVersionUID = 4721360295714813305L;
+
+	@Id
+	@GeneratedValue(strategy=GenerationType.SEQUENCE, generator="reservation_seq")
+	@SequenceGenerator(name="reservation_seq", sequenceName="reservation_seq", initialValue=1000, allocationSize=50)
+	@Column(name = "reservation_id")
+	private Long reservationId;
+
+	@Column(name = "cart_id", nullable = false)
+	private long cartId;
+
+	@Column(name = "product_id", nullable = false)
+	private long productId;
+
+	@Column(name = "quantity", nullable = false)
+	private int quantity;
+
+	/**
+	 * The cart's purchase once checkout has saved it, so it can be purged
+	 * with the reservation.
+	 */
+	@Column(name = "purchase_id")
+	private Long purchaseId;
+
+	@Column(name = "reserved_at", nullable = false)
+	private long reservedAt;
+
+	@Column(name = "touched_at", nullable = false)
+	private long touchedAt;
+
+	public Long getId() {
+		return reservationId;
+	}
+
+	public void setId(Long id) {
+		this.reservationId = id;
+	}
+
+	public long getCartId() {
+		return cartId;
+	}
+
+	public void setCartId(long cartId) {
+		this.cartId = cartId;
+	}
+
+	public long getProductId() {
+		return productId;
+	}
+
+	public void setProductId(long productId) {
+		this.productId = productId;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	public Long getPurchaseId() {
+		return purchaseId;
+	}
+
+	public void setPurchaseId(Long purchaseId) {
+		this.purchaseId = purchaseId;
+	}
+
+	public long getReservedAt() {
+		return reservedAt;
+	}
+
+	public void setReservedAt(long reservedAt) {
+		this.reservedAt = reservedAt;
+	}
+
+	public long getTouchedAt() {
+		return touchedAt;
+	}
+
+	public void setTouchedAt(long touchedAt) {
+		this.touchedAt = touchedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "Reservation [reservationId=" + reservationId + ", cartId=" + cartId + ", productId=" + productId
+				+ ", quantity=" + quantity + ", purchaseId=" + purchaseId + ", reservedAt=" + reservedAt
+				+ ", touchedAt=" + touchedAt + "]";
+	}
+}
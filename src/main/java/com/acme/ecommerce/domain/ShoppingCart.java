@@ -1,30 +1,292 @@
 package com.acme.ecommerce.domain;
 
+import com.acme.ecommerce.cart.CartRecord;
+import com.acme.ecommerce.cart.CartResolver;
+import com.acme.ecommerce.reservation.ReservationService;
+import com.acme.ecommerce.service.ProductService;
+import com.acme.ecommerce.service.PurchaseService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The visitor's cart for the current request. Between requests only a
+ * {@link CartRecord} is kept, by the configured {@link CartResolver}; the
+ * cart is rebuilt from it on first use and every change is written back.
+ * <p>
+ * Until checkout saves it, the purchase exists only in the record and is
+ * rebuilt from its product ids and quantities.
+ * <p>
+ * The stock in the cart is held by {@link ReservationService} under the
+ * cart id until the order is placed. The reservations, not the record, decide
+ * what the cart holds: a record can be older than them, replayed from an
+ * earlier response or overwritten by a concurrent request, and they may have
+ * expired while the visitor was away. Missing stock is taken again on load if
+ * there is enough, and otherwise the lines are cut down to what is held.
+ * That takes a locking transaction, so it is only done when the request may
+ * change the cart: GET and HEAD requests, such as the cart badge on every
+ * catalog page, show the record as it is.
+ */
 @Component
-@Scope("session")
+@Scope("request")
 public class ShoppingCart {
+	final Logger logger = LoggerFactory.getLogger(ShoppingCart.class);
+
+	private final CartResolver resolver;
+	private final PurchaseService purchaseService;
+	private final ProductService productService;
+	private final ReservationService reservations;
 
+	private boolean fetchAddresses = false;
+	private boolean loaded = false;
+	private long cartId = 0;
 	private Purchase purchase = null;
 	private CouponCode couponCode = null;
+	/** Worked out from the lines when first asked for, null until then or after a change. */
+	private CartTotals totals = null;
+	/** Units the reservations hold for the cart, by product id, as of the last load or save. */
+	private Map<Long, Integer> held = Collections.emptyMap();
+
+	@Autowired
+	public ShoppingCart(CartResolver resolver, PurchaseService purchaseService, ProductService productService,
+			ReservationService reservations) {
+		this.resolver = resolver;
+		this.purchaseService = purchaseService;
+		this.productService = productService;
+		this.reservations = reservations;
+	}
+
+	/**
+	 * Loads the shipping and billing addresses in the same query as the
+	 * purchase, for pages that show them. Only has an effect before the cart
+	 * is first used in the request.
+	 */
+	public void fetchAddresses() {
+		this.fetchAddresses = true;
+	}
 
 	public Purchase getPurchase() {
+		load();
 		return purchase;
 	}
 
 	public void setPurchase(Purchase purchase) {
+		load();
 		this.purchase = purchase;
+		totals = null;
+		save();
+	}
+
+	/**
+	 * Records a change to the cart lines. The purchase is written to the
+	 * database only if checkout already saved it.
+	 */
+	public void update(Purchase purchase) {
+		if (purchase.getId() != null) {
+			purchase = purchaseService.save(purchase);
+		}
+		setPurchase(purchase);
 	}
 
 	public CouponCode getCouponCode() {
+		load();
 		return couponCode;
 	}
 
 	public void setCouponCode(CouponCode couponCode) {
+		load();
 		this.couponCode = couponCode;
+		save();
+	}
+
+	/**
+	 * The most lines the cart can have; see {@link CartResolver#getMaxLines()}.
+	 */
+	public int getMaxLines() {
+		return resolver.getMaxLines();
 	}
 
+	/**
+	 * Totals for the current purchase, worked out again after every
+	 * {@link #setPurchase} or {@link #update}.
+	 */
+	public CartTotals getTotals() {
+		load();
+		if (totals == null) {
+			totals = CartTotals.of(purchase);
+		}
+		return totals;
+	}
+
+	private void load() {
+		if (loaded) {
+			return;
+		}
+		loaded = true;
+		CartRecord record = resolver.load();
+		if (record == null) {
+			return;
+		}
+		cartId = record.getCartId();
+		boolean changed = false;
+		if (record.isPurchaseSaved()) {
+			purchase = fetchAddresses
+					? purchaseService.findForConfirmation(record.getPurchaseId())
+					: purchaseService.findWithLinesAndProducts(record.getPurchaseId());
+			if (purchase == null) {
+				// Deleted when its reservations expired
+				purchase = rebuild(record);
+				changed = true;
+			}
+		} else if (record.hasPurchase()) {
+			purchase = rebuild(record);
+		}
+		if (record.getCouponCode() != null) {
+			couponCode = new CouponCode();
+			couponCode.setCode(record.getCouponCode());
+		}
+		if (cartId != 0 && (purchase == null || purchase.getOrderNumber() == null)) {
+			if (changed || !isSafeRequest()) {
+				changed |= reconcile();
+			} else {
+				// Not checked against the reservations; taken to match them should this request still write
+				held = quantities(purchase);
+			}
+		}
+		if (changed) {
+			save();
+		}
+	}
+
+	/**
+	 * Cuts the lines down to the units the reservations hold, once these
+	 * took back what they held beyond the lines or reserved what was missing.
+	 * @return true if lines had to be cut
+	 */
+	private boolean reconcile() {
+		Map<Long, Integer> wanted = quantities(purchase);
+		held = reservations.reconcile(cartId, purchase != null ? purchase.getId() : null, wanted);
+		if (held.equals(wanted)) {
+			return false;
+		}
+		Map<Long, Integer> left = new HashMap<Long, Integer>(held);
+		Iterator<ProductPurchase> lines = purchase.getProductPurchases().iterator();
+		while (lines.hasNext()) {
+			ProductPurchase line = lines.next();
+			Long productId = line.getProduct().getId();
+			Integer units = left.get(productId);
+			int quantity = Math.min(line.getQuantity(), units != null ? units : 0);
+			if (quantity < line.getQuantity()) {
+				logger.info("Cutting product {} in cart {} from {} to {} units, no more is held for it",
+						productId, cartId, line.getQuantity(), quantity);
+			}
+			if (quantity == 0) {
+				lines.remove();
+			} else {
+				line.setQuantity(quantity);
+				left.put(productId, units - quantity);
+			}
+		}
+		if (purchase.getId() != null) {
+			purchase = purchaseService.save(purchase);
+		}
+		return true;
+	}
+
+	private static boolean isSafeRequest() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (!(attributes instanceof ServletRequestAttributes)) {
+			return false;
+		}
+		String method = ((ServletRequestAttributes) attributes).getRequest().getMethod();
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private Purchase rebuild(CartRecord record) {
+		Purchase rebuilt = new Purchase();
+		List<Long> productIds = new ArrayList<Long>(record.getLineCount());
+		for (int i = 0; i < record.getLineCount(); i++) {
+			productIds.add(record.getProductId(i));
+		}
+		Map<Long, Product> products = productService.findByIds(productIds);
+		for (int i = 0; i < record.getLineCount(); i++) {
+			Product product = products.get(record.getProductId(i));
+			if (product == null) {
+				logger.warn("Dropping cart line for unknown product {}", record.getProductId(i));
+				continue;
+			}
+			ProductPurchase line = new ProductPurchase();
+			line.setProduct(product);
+			line.setQuantity(record.getQuantity(i));
+			line.setPurchase(rebuilt);
+			rebuilt.getProductPurchases().add(line);
+		}
+		return rebuilt;
+	}
+
+	private void save() {
+		if (purchase != null && purchase.getOrderNumber() != null) {
+			// Checked out, the stock is sold
+			if (cartId != 0) {
+				reservations.confirm(cartId);
+				cartId = 0;
+			}
+		} else {
+			Map<Long, Integer> quantities = quantities(purchase);
+			if (cartId == 0 && !quantities.isEmpty()) {
+				cartId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+			}
+			if (cartId != 0) {
+				reservations.hold(cartId, purchase != null ? purchase.getId() : null, changes(held, quantities));
+				held = quantities;
+			}
+		}
+		if (purchase == null && couponCode == null) {
+			resolver.save(null);
+		} else {
+			resolver.save(CartRecord.of(cartId, purchase, couponCode));
+		}
+	}
+
+	private static Map<Long, Integer> quantities(Purchase purchase) {
+		Map<Long, Integer> quantities = new HashMap<Long, Integer>();
+		if (purchase != null) {
+			for (ProductPurchase line : purchase.getProductPurchases()) {
+				Integer quantity = quantities.get(line.getProduct().getId());
+				quantities.put(line.getProduct().getId(), (quantity != null ? quantity : 0) + line.getQuantity());
+			}
+		}
+		return quantities;
+	}
+
+	private static Map<Long, Integer> changes(Map<Long, Integer> before, Map<Long, Integer> after) {
+		Map<Long, Integer> changes = new HashMap<Long, Integer>();
+		for (Map.Entry<Long, Integer> entry : after.entrySet()) {
+			Integer previous = before.get(entry.getKey());
+			int change = entry.getValue() - (previous != null ? previous : 0);
+			if (change != 0) {
+				changes.put(entry.getKey(), change);
+			}
+		}
+		for (Map.Entry<Long, Integer> entry : before.entrySet()) {
+			if (!after.containsKey(entry.getKey()) && entry.getValue() != 0) {
+				changes.put(entry.getKey(), -entry.getValue());
+			}
+		}
+		return changes;
+	}
 
 }
@@ -0,0 +1,48 @@
+package com.acme.ecommerce.image;
+
+import java.io.File;
+
+/**
+ * An image on disk together with the metadata needed to answer conditional
+ * and range requests for it without touching the file again.
+ */
+public final class ImageFile {
+
+	private final File file;
+	private final String contentType;
+	private final long length;
+	private final long lastModified;
+	private final String eTag;
+
+	ImageFile(File file, String contentType, long length, long lastModified) {
+		this.file = file;
+		this.contentType = contentType;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	boolean isCurrent(long fileLength, long fileLastModified) {
+		return length == fileLength && lastModified == fileLastModified;
+	}
+}
@@ -0,0 +1,238 @@
+package com.acme.ecommerce.image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import javax.activation.MimetypesFileTypeMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Serves image files with strong validators, far-future caching and single
+ * byte-range support. File metadata and content types are resolved once per
+ * file and reused until the file changes on disk.
+ * <p>
+ * Where the container supports it (Tomcat's NIO and APR connectors without
+ * TLS) files of at least {@code imageSendfileMinBytes} are not written by the
+ * application at all: the file name and range are handed to Tomcat, which
+ * sends them with the operating system's sendfile once the request returns.
+ * Smaller files, and all files elsewhere, are copied through the response
+ * stream.
+ */
+@Component
+public class ImageServer {
+
+	final Logger logger = LoggerFactory.getLogger(ImageServer.class);
+
+	private static final String BYTES_UNIT = "bytes=";
+
+	static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+	static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	private final MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
+
+	private final ConcurrentMap<String, ImageFile> images = new ConcurrentHashMap<String, ImageFile>();
+
+	private final ConcurrentMap<String, String> contentTypes = new ConcurrentHashMap<String, String>();
+
+	@Value("${imageCacheSeconds:86400}")
+	long cacheSeconds = 86400;
+
+	// Tomcat's own DefaultServlet threshold; below it sendfile costs more than a copy
+	@Value("${imageSendfileMinBytes:49152}")
+	long sendfileMinBytes = 49152;
+
+	public ImageFile resolve(File file) throws FileNotFoundException {
+		String key = file.getPath();
+		long length = file.length();
+		long lastModified = file.lastModified();
+		if (lastModified == 0L || !file.isFile()) {
+			images.remove(key);
+			throw new FileNotFoundException(file.getPath());
+		}
+
+		ImageFile image = images.get(key);
+		if (image == null || !image.isCurrent(length, lastModified)) {
+			image = new ImageFile(file, contentTypeOf(file), length, lastModified);
+			images.put(key, image);
+		}
+		return image;
+	}
+
+	public void serve(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		serve(resolve(file), request, response);
+	}
+
+	public void serve(ImageFile image, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		serve(image, request, response, cacheSeconds);
+	}
+
+	/**
+	 * Serves an image with an explicit max-age, e.g. 0 for a stand-in that
+	 * clients should not keep once the real resource is available.
+	 */
+	public void serve(ImageFile image, HttpServletRequest request, HttpServletResponse response,
+					  long maxAgeSeconds) throws IOException {
+		response.setHeader(HttpHeaders.ETAG, image.getETag());
+		response.setDateHeader(HttpHeaders.LAST_MODIFIED, image.getLastModified());
+		response.setHeader(HttpHeaders.CACHE_CONTROL, maxAgeSeconds > 0 ? "public, max-age=" + maxAgeSeconds : "no-cache");
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+		if (isNotModified(image, request)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long length = image.getLength();
+		long start = 0;
+		long end = length - 1;
+
+		String range = request.getHeader(HttpHeaders.RANGE);
+		if (range != null && isRangeApplicable(image, request)) {
+			long[] bounds = parseRange(range, length);
+			if (bounds == null) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (bounds.length == 2) {
+				start = bounds[0];
+				end = bounds[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+
+		long count = end - start + 1;
+		response.setContentType(image.getContentType());
+		response.setHeader(HttpHeaders.CONTENT_LENGTH, Long.toString(count));
+
+		if (count >= sendfileMinBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+			request.setAttribute(SENDFILE_FILENAME, image.getFile().getCanonicalPath());
+			request.setAttribute(SENDFILE_START, start);
+			// exclusive
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(image.getFile().toPath(), StandardOpenOption.READ)) {
+			WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while (count > 0) {
+				long sent = channel.transferTo(position, count, out);
+				if (sent <= 0) {
+					break;
+				}
+				position += sent;
+				count -= sent;
+			}
+		}
+	}
+
+	private boolean isNotModified(ImageFile image, HttpServletRequest request) {
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			return matchesETag(ifNoneMatch, image.getETag());
+		}
+		long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+		return ifModifiedSince != -1 && ifModifiedSince >= (image.getLastModified() / 1000) * 1000;
+	}
+
+	/**
+	 * A Range request only applies if its If-Range validator, when present,
+	 * still matches the current file.
+	 */
+	private boolean isRangeApplicable(ImageFile image, HttpServletRequest request) {
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"")) {
+			return ifRange.equals(image.getETag());
+		}
+		long date = dateHeader(request, HttpHeaders.IF_RANGE);
+		return date != -1 && date >= (image.getLastModified() / 1000) * 1000;
+	}
+
+	private static boolean matchesETag(String header, String eTag) {
+		for (String candidate : header.split(",")) {
+			String value = candidate.trim();
+			if (value.equals("*") || value.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return {start, end} for a single satisfiable range, an empty array if
+	 * the header should be ignored (multiple ranges or unknown unit) and null
+	 * if the range cannot be satisfied
+	 */
+	static long[] parseRange(String header, long length) {
+		if (!header.startsWith(BYTES_UNIT) || header.indexOf(',') != -1) {
+			return new long[0];
+		}
+		String spec = header.substring(BYTES_UNIT.length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1) {
+			return new long[0];
+		}
+		try {
+			long start;
+			long end;
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1));
+				if (suffix <= 0) {
+					return null;
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(spec.substring(0, dash));
+				end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+			}
+			if (start >= length || start > end) {
+				return null;
+			}
+			return new long[]{start, end};
+		} catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+	private long dateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			logger.debug("Ignoring malformed {} header", name);
+			return -1;
+		}
+	}
+
+	private String contentTypeOf(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String extension = dot == -1 ? "" : name.substring(dot + 1).toLowerCase();
+		String contentType = contentTypes.get(extension);
+		if (contentType == null) {
+			contentType = mimeTypesMap.getContentType(file);
+			contentTypes.put(extension, contentType);
+		}
+		return contentType;
+	}
+}
@@ -0,0 +1,347 @@
+package com.acme.ecommerce.image;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCursor;
+import com.acme.ecommerce.service.ProductService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates resized JPEG variants of product images on a bounded worker pool
+ * and keeps them in a disk cache keyed by a hash of the source image, so a
+ * replaced image never serves stale thumbnails and an unchanged one is only
+ * ever scaled once.
+ */
+@Component
+public class ThumbnailService implements ApplicationListener<ContextRefreshedEvent> {
+
+	final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+	private final ImageServer imageServer;
+	private final ProductService productService;
+	private final File cacheDir;
+	private final String imagePath;
+	private final int[] widths;
+	private final long waitMillis;
+	private final ThreadPoolExecutor executor;
+	/** Most pre-generation jobs queued at once; the rest of the queue is left to requests. */
+	private final int pregenerateWindow;
+	private final AtomicReference<Thread> pregenerator = new AtomicReference<Thread>();
+
+	private static final int PREGENERATE_BATCH = 100;
+
+	// source ETag -> content hash, so the source is only hashed once per version
+	private final ConcurrentMap<String, String> sourceHashes = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, Future<String>> inFlight = new ConcurrentHashMap<String, Future<String>>();
+
+	@Autowired
+	public ThumbnailService(ImageServer imageServer, ProductService productService,
+							@Value("${imagePath:/images/}") String imagePath,
+							@Value("${thumbnail.cachePath:${java.io.tmpdir}/ecommerce-thumbnails}") String cachePath,
+							@Value("${thumbnail.widths:80,160,320}") int[] widths,
+							@Value("${thumbnail.workers:2}") int workers,
+							@Value("${thumbnail.queueSize:256}") int queueSize,
+							@Value("${thumbnail.waitMillis:500}") long waitMillis) {
+		this.imageServer = imageServer;
+		this.productService = productService;
+		this.imagePath = imagePath;
+		this.cacheDir = new File(cachePath);
+		this.widths = widths.clone();
+		Arrays.sort(this.widths);
+		this.waitMillis = waitMillis;
+		this.pregenerateWindow = Math.max(1, queueSize / 2);
+		this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Pre-generates thumbnails for the whole catalog on a background thread.
+	 */
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				pregenerate();
+			}
+		}, "thumbnail-pregenerate");
+		thread.setDaemon(true);
+		// Every context refresh publishes the event; one pass is enough
+		if (pregenerator.compareAndSet(null, thread)) {
+			thread.start();
+		}
+	}
+
+	/**
+	 * Reads the catalog a batch at a time and waits for queued images to be
+	 * done before queueing more, so it never takes more than half the queue.
+	 * Images that still do not fit are left to be generated on first request.
+	 */
+	void pregenerate() {
+		Deque<Future<String>> queued = new ArrayDeque<Future<String>>();
+		int scheduled = 0;
+		int skipped = 0;
+		try {
+			KeysetPage<Product> page = productService.findPage(null, ProductCursor.Order.ID, PREGENERATE_BATCH);
+			while (true) {
+				for (Product product : page) {
+					File source = new File(imagePath, product.getThumbImageName());
+					if (!source.isFile()) {
+						continue;
+					}
+					while (queued.size() >= pregenerateWindow) {
+						await(queued.removeFirst());
+					}
+					Future<String> pending = schedule(source);
+					if (pending != null) {
+						queued.addLast(pending);
+						scheduled++;
+					} else {
+						skipped++;
+					}
+				}
+				if (!page.hasNext()) {
+					break;
+				}
+				List<Product> rows = page.getContent();
+				page = productService.findPage(ProductCursor.after(ProductCursor.Order.ID, page.getNumber() + 1,
+						rows.get(rows.size() - 1)), ProductCursor.Order.ID, PREGENERATE_BATCH);
+				if (page.getNumber() == 0) {
+					// The listing started over because the rows after the cursor are gone
+					break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if (skipped > 0) {
+			logger.warn("Thumbnail queue full, {} images left to be generated on first request", skipped);
+		}
+		logger.info("Thumbnail pre-generation queued {} images", scheduled);
+	}
+
+	private void await(Future<String> pending) throws InterruptedException {
+		try {
+			pending.get();
+		} catch (ExecutionException e) {
+			// Logged again if a request asks for the thumbnail
+			logger.debug("Thumbnail pre-generation failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Snaps a requested width to the smallest configured width that is at
+	 * least as wide, or the largest one.
+	 */
+	public int snapWidth(Integer requested) {
+		if (requested != null) {
+			for (int width : widths) {
+				if (width >= requested) {
+					return width;
+				}
+			}
+		}
+		return widths[widths.length - 1];
+	}
+
+	/**
+	 * @return the thumbnail file, or null if it is not ready within the
+	 * configured wait and the caller should fall back to the source image
+	 */
+	public File thumbnail(File source, int width) throws FileNotFoundException {
+		ImageFile image = imageServer.resolve(source);
+		String hash = sourceHashes.get(image.getETag());
+		if (hash != null) {
+			File thumbnail = thumbnailFile(hash, width);
+			if (thumbnail.isFile()) {
+				return thumbnail;
+			}
+		}
+
+		Future<String> pending = schedule(source);
+		if (pending == null) {
+			logger.warn("Thumbnail queue full, skipping {}", source);
+			return null;
+		}
+		try {
+			hash = pending.get(waitMillis, TimeUnit.MILLISECONDS);
+			File thumbnail = hash != null ? thumbnailFile(hash, width) : null;
+			return thumbnail != null && thumbnail.isFile() ? thumbnail : null;
+		} catch (TimeoutException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			logger.error("Thumbnail generation failed for {}", source, e.getCause());
+			return null;
+		}
+	}
+
+	private Future<String> schedule(final File source) {
+		final String key = source.getPath();
+		Future<String> pending = inFlight.get(key);
+		if (pending != null) {
+			return pending;
+		}
+		FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				try {
+					return generate(source);
+				} finally {
+					inFlight.remove(key);
+				}
+			}
+		});
+		pending = inFlight.putIfAbsent(key, task);
+		if (pending != null) {
+			return pending;
+		}
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			inFlight.remove(key, task);
+			return null;
+		}
+		return task;
+	}
+
+	private String generate(File source) throws IOException {
+		ImageFile image = imageServer.resolve(source);
+		String hash = hash(source);
+
+		BufferedImage original = null;
+		for (int width : widths) {
+			File target = thumbnailFile(hash, width);
+			if (target.isFile()) {
+				continue;
+			}
+			if (original == null) {
+				original = ImageIO.read(source);
+				if (original == null) {
+					throw new IOException("Unsupported image format: " + source);
+				}
+			}
+			write(scale(original, width), target);
+		}
+
+		sourceHashes.put(image.getETag(), hash);
+		return hash;
+	}
+
+	static BufferedImage scale(BufferedImage original, int width) {
+		int targetWidth = Math.min(width, original.getWidth());
+		int targetHeight = Math.max(1, (int) Math.round(original.getHeight() * (double) targetWidth / original.getWidth()));
+
+		// halve repeatedly before the final bilinear pass to avoid aliasing on big reductions
+		BufferedImage current = original;
+		int currentWidth = original.getWidth();
+		int currentHeight = original.getHeight();
+		do {
+			currentWidth = Math.max(targetWidth, currentWidth / 2);
+			currentHeight = Math.max(targetHeight, currentHeight / 2);
+			BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = next.createGraphics();
+			try {
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+			} finally {
+				g.dispose();
+			}
+			current = next;
+		} while (currentWidth != targetWidth || currentHeight != targetHeight);
+		return current;
+	}
+
+	private void write(BufferedImage thumbnail, File target) throws IOException {
+		File dir = target.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Unable to create thumbnail directory " + dir);
+		}
+		File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+		try {
+			if (!ImageIO.write(thumbnail, "jpg", tmp)) {
+				throw new IOException("No JPEG writer available");
+			}
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp.toPath());
+		}
+	}
+
+	private File thumbnailFile(String hash, int width) {
+		return new File(new File(cacheDir, hash.substring(0, 2)), hash + "-" + width + ".jpg");
+	}
+
+	private static String hash(File source) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream in = new DigestInputStream(Files.newInputStream(source.toPath()), digest)) {
+			while (in.read(buffer) != -1) {
+				// digest is updated as the stream is read
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		Thread thread = pregenerator.get();
+		if (thread != null) {
+			thread.interrupt();
+		}
+		executor.shutdownNow();
+	}
+
+	private static final class WorkerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "thumbnail-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
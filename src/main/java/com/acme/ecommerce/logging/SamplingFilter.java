@@ -0,0 +1,70 @@
+package com.acme.ecommerce.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-logger sampling and rate limits, configured on an appender in
+ * {@code logback.xml}:
+ * <pre>
+ * &lt;filter class="com.acme.ecommerce.logging.SamplingFilter"&gt;
+ *   &lt;rule&gt;
+ *     &lt;logger&gt;com.acme.ecommerce.controller&lt;/logger&gt;
+ *     &lt;level&gt;DEBUG&lt;/level&gt;
+ *     &lt;sampleEvery&gt;10&lt;/sampleEvery&gt;
+ *     &lt;maxPerSecond&gt;50&lt;/maxPerSecond&gt;
+ *   &lt;/rule&gt;
+ * &lt;/filter&gt;
+ * </pre>
+ * The most specific rule matching a logger applies. This is an appender
+ * filter rather than a turbo filter on purpose: turbo filters run before the
+ * level check, and logback boxes the arguments of every call, enabled or
+ * not, to hand them over. Here disabled statements never reach the filter,
+ * and dropped events are discarded on the calling thread before their
+ * message is formatted or queued.
+ */
+public class SamplingFilter extends Filter<ILoggingEvent> {
+
+	private static final SamplingRule NO_RULE = new SamplingRule();
+
+	private final List<SamplingRule> rules = new ArrayList<SamplingRule>();
+	private final ConcurrentMap<String, SamplingRule> ruleByLogger = new ConcurrentHashMap<String, SamplingRule>();
+
+	public void addRule(SamplingRule rule) {
+		rules.add(rule);
+		ruleByLogger.clear();
+	}
+
+	public List<SamplingRule> getRules() {
+		return rules;
+	}
+
+	@Override
+	public FilterReply decide(ILoggingEvent event) {
+		SamplingRule rule = ruleByLogger.get(event.getLoggerName());
+		if (rule == null) {
+			rule = ruleFor(event.getLoggerName());
+			ruleByLogger.putIfAbsent(event.getLoggerName(), rule);
+		}
+		if (rule == NO_RULE || rule.accept(event.getLevel(), event.getTimeStamp())) {
+			return FilterReply.NEUTRAL;
+		}
+		return FilterReply.DENY;
+	}
+
+	private SamplingRule ruleFor(String loggerName) {
+		SamplingRule best = NO_RULE;
+		for (SamplingRule rule : rules) {
+			if (rule.appliesTo(loggerName) && (best == NO_RULE || rule.getLogger().length() > best.getLogger().length())) {
+				best = rule;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,101 @@
+package com.acme.ecommerce.logging;
+
+import ch.qos.logback.classic.Level;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thins out the events of one logger and its children: keeps one in every
+ * {@code sampleEvery} events and at most {@code maxPerSecond} a second.
+ * Events above {@code level} are never dropped.
+ */
+public class SamplingRule {
+
+	private String logger = "";
+	private Level level = Level.INFO;
+	private int sampleEvery = 1;
+	private int maxPerSecond = 0;
+
+	private final AtomicLong seen = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	// Upper half is the current second, lower half the events let through in it
+	private final AtomicLong window = new AtomicLong();
+
+	public String getLogger() {
+		return logger;
+	}
+
+	public void setLogger(String logger) {
+		this.logger = logger;
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Highest level the rule applies to, INFO if not set.
+	 */
+	public void setLevel(Level level) {
+		this.level = level;
+	}
+
+	public int getSampleEvery() {
+		return sampleEvery;
+	}
+
+	public void setSampleEvery(int sampleEvery) {
+		this.sampleEvery = Math.max(1, sampleEvery);
+	}
+
+	public int getMaxPerSecond() {
+		return maxPerSecond;
+	}
+
+	/**
+	 * Events let through per second, 0 for no limit.
+	 */
+	public void setMaxPerSecond(int maxPerSecond) {
+		this.maxPerSecond = Math.max(0, maxPerSecond);
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	boolean appliesTo(String loggerName) {
+		return logger.isEmpty() || loggerName.equals(logger)
+				|| (loggerName.startsWith(logger) && loggerName.charAt(logger.length()) == '.');
+	}
+
+	/**
+	 * Decides whether an event at {@code level} is kept, counting it either way.
+	 */
+	boolean accept(Level level, long nowMillis) {
+		if (!this.level.isGreaterOrEqual(level)) {
+			return true;
+		}
+		if (sampleEvery > 1 && seen.getAndIncrement() % sampleEvery != 0) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		if (maxPerSecond > 0 && !takePermit(nowMillis / 1000)) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private boolean takePermit(long second) {
+		while (true) {
+			long current = window.get();
+			long count = current >>> 32 == (second & 0xFFFFFFFFL) ? current & 0xFFFFFFFFL : 0;
+			if (count >= maxPerSecond) {
+				return false;
+			}
+			if (window.compareAndSet(current, (second << 32) | (count + 1))) {
+				return true;
+			}
+		}
+	}
+}
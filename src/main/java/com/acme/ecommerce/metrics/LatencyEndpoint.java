@@ -0,0 +1,42 @@
+package com.acme.ecommerce.metrics;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actuator endpoint at {@code /latency} listing, for every timed request
+ * handler and service method, its call count, throughput and latency
+ * percentiles in milliseconds.
+ */
+public class LatencyEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final LatencyRecorder recorder;
+
+	public LatencyEndpoint(LatencyRecorder recorder) {
+		super("latency");
+		this.recorder = recorder;
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, LatencyHistogram.Snapshot> entry : recorder.snapshot().entrySet()) {
+			LatencyHistogram.Snapshot snapshot = entry.getValue();
+			Map<String, Object> timings = new LinkedHashMap<String, Object>();
+			timings.put("count", snapshot.getCount());
+			timings.put("ratePerSecond", snapshot.getRatePerSecond());
+			timings.put("mean", snapshot.getMeanNanos() / NANOS_PER_MILLI);
+			timings.put("p50", snapshot.getP50Nanos() / NANOS_PER_MILLI);
+			timings.put("p95", snapshot.getP95Nanos() / NANOS_PER_MILLI);
+			timings.put("p99", snapshot.getP99Nanos() / NANOS_PER_MILLI);
+			timings.put("max", snapshot.getMaxNanos() / NANOS_PER_MILLI);
+			result.put(entry.getKey(), timings);
+		}
+		return result;
+	}
+}
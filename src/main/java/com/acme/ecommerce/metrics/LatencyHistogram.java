@@ -0,0 +1,146 @@
+package com.acme.ecommerce.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram over nanosecond durations. Each power of two is
+ * split into {@value #SUB_BUCKETS} linear buckets, so reported percentiles are
+ * within about 6% of the recorded value while the whole range up to
+ * {@code Long.MAX_VALUE} fits in a fixed array of counters.
+ * <p>
+ * Recording is a handful of atomic increments; snapshots are taken without
+ * stopping writers and may be off by the recordings made while reading.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	private final long startedNanos = System.nanoTime();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+		long max = maxNanos.get();
+		while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+			max = maxNanos.get();
+		}
+	}
+
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		long max = maxNanos.get();
+		long elapsed = System.nanoTime() - startedNanos;
+		return new Snapshot(total,
+				total == 0 ? 0 : totalNanos.sum() / (double) total,
+				percentile(counts, total, 0.50, max),
+				percentile(counts, total, 0.95, max),
+				percentile(counts, total, 0.99, max),
+				max,
+				elapsed <= 0 ? 0 : total / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+	}
+
+	static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Largest value that falls in the bucket.
+	 */
+	static long highestValueIn(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	private static long percentile(long[] counts, long total, double quantile, long max) {
+		if (total == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValueIn(i), max);
+			}
+		}
+		return max;
+	}
+
+	public static final class Snapshot {
+		private final long count;
+		private final double meanNanos;
+		private final long p50Nanos;
+		private final long p95Nanos;
+		private final long p99Nanos;
+		private final long maxNanos;
+		private final double ratePerSecond;
+
+		Snapshot(long count, double meanNanos, long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos,
+				double ratePerSecond) {
+			this.count = count;
+			this.meanNanos = meanNanos;
+			this.p50Nanos = p50Nanos;
+			this.p95Nanos = p95Nanos;
+			this.p99Nanos = p99Nanos;
+			this.maxNanos = maxNanos;
+			this.ratePerSecond = ratePerSecond;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMeanNanos() {
+			return meanNanos;
+		}
+
+		public long getP50Nanos() {
+			return p50Nanos;
+		}
+
+		public long getP95Nanos() {
+			return p95Nanos;
+		}
+
+		public long getP99Nanos() {
+			return p99Nanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * Average throughput since the histogram was created.
+		 */
+		public double getRatePerSecond() {
+			return ratePerSecond;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.acme.ecommerce.metrics;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Times every request handled by a {@code @RequestMapping} method, from the
+ * handler being chosen until the view has been rendered, and records it as
+ * {@code request.<Controller>.<method>}.
+ */
+public class RequestLatencyInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String START_ATTRIBUTE = RequestLatencyInterceptor.class.getName() + ".start";
+
+	private final LatencyRecorder recorder;
+
+	public RequestLatencyInterceptor(LatencyRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (handler instanceof HandlerMethod) {
+			request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		Object start = request.getAttribute(START_ATTRIBUTE);
+		if (start == null) {
+			return;
+		}
+		request.removeAttribute(START_ATTRIBUTE);
+		HandlerMethod method = (HandlerMethod) handler;
+		recorder.record("request." + method.getBeanType().getSimpleName() + "." + method.getMethod().getName(),
+				System.nanoTime() - (Long) start);
+	}
+}
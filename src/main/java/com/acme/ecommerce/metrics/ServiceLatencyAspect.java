@@ -0,0 +1,33 @@
+package com.acme.ecommerce.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Times every call made through the product and purchase service interfaces
+ * and records it as {@code service.<Service>.<method>}. Calls a service makes
+ * to its own methods are not proxied and so not timed separately.
+ */
+@Aspect
+public class ServiceLatencyAspect {
+
+	private final LatencyRecorder recorder;
+
+	public ServiceLatencyAspect(LatencyRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	@Around("execution(* com.acme.ecommerce.service.ProductService.*(..))"
+			+ " || execution(* com.acme.ecommerce.service.PurchaseService.*(..))"
+			+ " || execution(* com.acme.ecommerce.service.CartService.*(..))")
+	public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+		long start = System.nanoTime();
+		try {
+			return joinPoint.proceed();
+		} finally {
+			recorder.record("service." + joinPoint.getSignature().getDeclaringType().getSimpleName()
+					+ "." + joinPoint.getSignature().getName(), System.nanoTime() - start);
+		}
+	}
+}
@@ -1,8 +1,76 @@
 package com.acme.ecommerce.repository;
 
 import com.acme.ecommerce.domain.Product;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 
 public interface ProductRepository extends PagingAndSortingRepository<Product, Long> {
 
+	/**
+	 * Reads the row in a read-write transaction, so with a replica configured
+	 * it comes from the primary, and past the second-level cache. For rows
+	 * written moments ago, which the replica may not have yet. Joins a
+	 * surrounding transaction, so it must not be called from a read-only one.
+	 */
+	@Transactional
+	@Query("select p from Product p where p.productId = ?1")
+	Product findCurrent(Long productId);
+
+	/**
+	 * {@link #findCurrent(Long)} for several rows at once.
+	 */
+	@Transactional
+	@Query("select p from Product p where p.productId in ?1")
+	List<Product> findAllCurrent(Collection<Long> productIds);
+
+	/*
+	 * Bulk updates bypass Hibernate's versioning, so the stock updates bump
+	 * the version themselves.
+	 */
+
+	/**
+	 * Takes {@code quantity} units out of stock if at least that many are left.
+	 * @return the number of rows updated, 0 when the product is unknown or short on stock
+	 */
+	@Transactional
+	@Modifying
+	@Query("update Product p set p.quantity = p.quantity - ?2, p.version = p.version + 1"
+			+ " where p.productId = ?1 and p.quantity >= ?2")
+	int decrementQuantity(Long productId, int quantity);
+
+	@Transactional
+	@Modifying
+	@Query("update Product p set p.quantity = p.quantity + ?2, p.version = p.version + 1 where p.productId = ?1")
+	int incrementQuantity(Long productId, int quantity);
+
+	/*
+	 * Keyset pagination. The ordering and row limit come from the Pageable, which
+	 * must sort on the same columns the query seeks on; returning a List keeps
+	 * Spring Data from issuing a count query. Not query cached: every stock
+	 * reservation is a bulk update of the product table, which invalidates all
+	 * cached results of it, so they would hardly ever be hit. A seek only reads
+	 * a page's worth of index entries anyway.
+	 */
+
+	@Query("select p from Product p")
+	List<Product> findSlice(Pageable pageable);
+
+	@Query("select p from Product p where p.productId > ?1")
+	List<Product> findSliceAfterId(Long productId, Pageable pageable);
+
+	@Query("select p from Product p where p.productId < ?1")
+	List<Product> findSliceBeforeId(Long productId, Pageable pageable);
+
+	@Query("select p from Product p where p.price > ?1 or (p.price = ?1 and p.productId > ?2)")
+	List<Product> findSliceAfterPrice(BigDecimal price, Long productId, Pageable pageable);
+
+	@Query("select p from Product p where p.price < ?1 or (p.price = ?1 and p.productId < ?2)")
+	List<Product> findSliceBeforePrice(BigDecimal price, Long productId, Pageable pageable);
 }
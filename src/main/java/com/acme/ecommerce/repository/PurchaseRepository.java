@@ -1,8 +1,51 @@
 package com.acme.ecommerce.repository;
 
 import com.acme.ecommerce.domain.Purchase;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface PurchaseRepository extends CrudRepository<Purchase, Long> {
 
+	/**
+	 * Backed by the unique index on {@code order_number}.
+	 */
+	Purchase findByOrderNumber(String orderNumber);
+
+	/**
+	 * The purchase with its lines and their products in a single statement, for
+	 * the cart page. Addresses, being eager, still cost one select each when set.
+	 */
+	@Query("select distinct p from Purchase p left join fetch p.productPurchases pp left join fetch pp.product"
+			+ " where p.purchaseId = ?1")
+	Purchase findWithLinesAndProducts(Long id);
+
+	/**
+	 * Everything the checkout and confirmation pages show, in a single statement.
+	 */
+	@Query("select distinct p from Purchase p left join fetch p.productPurchases pp left join fetch pp.product"
+			+ " left join fetch p.shippingAddress left join fetch p.billingAddress where p.purchaseId = ?1")
+	Purchase findForConfirmation(Long id);
+
+	/**
+	 * Those of the given purchases that never got an order number.
+	 */
+	@Query("select p.purchaseId from Purchase p where p.purchaseId in ?1 and p.orderNumber is null")
+	List<Long> findUnorderedIds(Collection<Long> ids);
+
+	@Query("select a.addressId from Purchase p, Address a where p.purchaseId in ?1"
+			+ " and (a = p.shippingAddress or a = p.billingAddress)")
+	List<Long> findAddressIds(Collection<Long> ids);
+
+	/**
+	 * Deletes the purchase rows only; their lines and addresses must go separately.
+	 */
+	@Transactional
+	@Modifying
+	@Query("delete from Purchase p where p.purchaseId in ?1")
+	int deleteByIds(Collection<Long> ids);
 }
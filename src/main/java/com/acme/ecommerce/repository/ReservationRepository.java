@@ -0,0 +1,60 @@
+package com.acme.ecommerce.repository;
+
+import com.acme.ecommerce.domain.Reservation;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+public interface ReservationRepository extends CrudRepository<Reservation, Long> {
+
+	List<Reservation> findByCartId(long cartId);
+
+	/**
+	 * The cart's lines, locked so concurrent requests for the same cart
+	 * change them one after the other.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select r from Reservation r where r.cartId = ?1")
+	List<Reservation> findByCartIdForUpdate(long cartId);
+
+	/**
+	 * @return the number of lines the cart holds, 0 when it holds none
+	 */
+	@Transactional
+	@Modifying
+	@Query("update Reservation r set r.touchedAt = ?2 where r.cartId = ?1")
+	int touch(long cartId, long touchedAt);
+
+	@Transactional
+	@Modifying
+	@Query("delete from Reservation r where r.cartId = ?1")
+	int deleteByCartId(long cartId);
+
+	/**
+	 * Lines of the given carts not touched since {@code cutoff}, locked so a
+	 * cart used in the meantime keeps them until the caller commits.
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select r from Reservation r where r.cartId in ?1 and r.touchedAt <= ?2")
+	List<Reservation> findIdleForUpdate(Collection<Long> cartIds, long cutoff);
+
+	@Transactional
+	@Modifying
+	@Query("delete from Reservation r where r.reservationId in ?1")
+	int deleteByIds(Collection<Long> ids);
+
+	/**
+	 * Pairs of cart id and the last time any of its lines was touched.
+	 */
+	@Query("select r.cartId, max(r.touchedAt) from Reservation r group by r.cartId")
+	List<Object[]> findLastTouches();
+
+	@Query("select r.cartId, max(r.touchedAt) from Reservation r where r.cartId in ?1 group by r.cartId")
+	List<Object[]> findLastTouches(Collection<Long> cartIds);
+}
@@ -0,0 +1,153 @@
+package com.acme.ecommerce.reservation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keyed timeouts hashed into a ring of buckets, one per tick, so scheduling
+ * and cancelling are O(1) however many are pending and each tick only looks
+ * at the timeouts that hashed to it. Deadlines are rounded up to the tick, so
+ * a timeout fires up to one tick late, never early.
+ * <p>
+ * Any thread may schedule or cancel; scheduling a key again replaces its
+ * timeout. New timeouts wait in a queue until {@link #advance} moves them
+ * into their bucket, which keeps the buckets to the single advancing thread.
+ */
+public class HashedTimingWheel<K> {
+
+	private final long tickMillis;
+	private final int mask;
+	private final List<List<Timeout<K>>> buckets;
+	private final Queue<Timeout<K>> pending = new ConcurrentLinkedQueue<Timeout<K>>();
+	private final ConcurrentMap<K, Timeout<K>> timeouts = new ConcurrentHashMap<K, Timeout<K>>();
+
+	// Next tick to process, only read and written by the advancing thread
+	private long tick;
+
+	/**
+	 * @param wheelSize number of buckets, rounded up to a power of two; a
+	 * timeout more than a turn of the wheel away is passed over that many times
+	 * @param startMillis time the wheel starts from
+	 */
+	public HashedTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+		}
+		if (wheelSize <= 0 || wheelSize > 1 << 30) {
+			throw new IllegalArgumentException("wheelSize out of range: " + wheelSize);
+		}
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.tickMillis = tickMillis;
+		this.mask = size - 1;
+		this.buckets = new ArrayList<List<Timeout<K>>>(size);
+		for (int i = 0; i < size; i++) {
+			buckets.add(new ArrayList<Timeout<K>>());
+		}
+		this.tick = startMillis / tickMillis;
+	}
+
+	/**
+	 * Schedules {@code key} to expire at {@code deadlineMillis}, replacing any
+	 * timeout it already has.
+	 */
+	public void schedule(K key, long deadlineMillis) {
+		Timeout<K> timeout = new Timeout<K>(key, deadlineMillis);
+		Timeout<K> replaced = timeouts.put(key, timeout);
+		if (replaced != null) {
+			replaced.cancelled = true;
+		}
+		pending.add(timeout);
+	}
+
+	public void cancel(K key) {
+		Timeout<K> timeout = timeouts.remove(key);
+		if (timeout != null) {
+			timeout.cancelled = true;
+		}
+	}
+
+	/**
+	 * @return the deadline {@code key} is scheduled for, or -1 if it is not
+	 */
+	public long deadlineOf(K key) {
+		Timeout<K> timeout = timeouts.get(key);
+		return timeout != null ? timeout.deadlineMillis : -1;
+	}
+
+	public int size() {
+		return timeouts.size();
+	}
+
+	/**
+	 * Processes every tick up to {@code nowMillis} and returns the timeouts
+	 * that expired, which are no longer scheduled. Must not be called from
+	 * more than one thread at a time.
+	 */
+	public List<Timeout<K>> advance(long nowMillis) {
+		long now = nowMillis / tickMillis;
+		List<Timeout<K>> expired = new ArrayList<Timeout<K>>();
+		if (now < tick) {
+			return expired;
+		}
+		Timeout<K> timeout;
+		while ((timeout = pending.poll()) != null) {
+			if (!timeout.cancelled) {
+				// Late arrivals go in the current bucket and expire this pass
+				buckets.get((int) (Math.max(timeout.deadlineTick(tickMillis), tick) & mask)).add(timeout);
+			}
+		}
+		// After a stall longer than a turn every bucket is due, but each only once
+		long ticks = Math.min(now - tick + 1, buckets.size());
+		for (long t = tick; t < tick + ticks; t++) {
+			// Compacts the bucket in place, keeping timeouts due on a later turn
+			List<Timeout<K>> bucket = buckets.get((int) (t & mask));
+			int kept = 0;
+			for (int i = 0; i < bucket.size(); i++) {
+				timeout = bucket.get(i);
+				if (timeout.cancelled) {
+					continue;
+				}
+				if (timeout.deadlineTick(tickMillis) <= now) {
+					if (timeouts.remove(timeout.key, timeout)) {
+						expired.add(timeout);
+					}
+				} else {
+					bucket.set(kept++, timeout);
+				}
+			}
+			bucket.subList(kept, bucket.size()).clear();
+		}
+		tick = now + 1;
+		return expired;
+	}
+
+	public static final class Timeout<K> {
+		private final K key;
+		private final long deadlineMillis;
+		private volatile boolean cancelled;
+
+		Timeout(K key, long deadlineMillis) {
+			this.key = key;
+			this.deadlineMillis = deadlineMillis;
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public long getDeadlineMillis() {
+			return deadlineMillis;
+		}
+
+		long deadlineTick(long tickMillis) {
+			return (deadlineMillis + tickMillis - 1) / tickMillis;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.acme.ecommerce.reservation;
+
+/**
+ * What one {@link ReservationService#reclaim} call gave back.
+ */
+public class ReclaimResult {
+
+	private final int carts;
+	private final long units;
+	private final int purchases;
+
+	public ReclaimResult(int carts, long units, int purchases) {
+		this.carts = carts;
+		this.units = units;
+		this.purchases = purchases;
+	}
+
+	/**
+	 * Carts whose reservations expired.
+	 */
+	public int getCarts() {
+		return carts;
+	}
+
+	/**
+	 * Units returned to inventory.
+	 */
+	public long getUnits() {
+		return units;
+	}
+
+	/**
+	 * Unordered purchases deleted with their lines and addresses.
+	 */
+	public int getPurchases() {
+		return purchases;
+	}
+}
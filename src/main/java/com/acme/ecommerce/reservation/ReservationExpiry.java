@@ -0,0 +1,105 @@
+package com.acme.ecommerce.reservation;
+
+import com.acme.ecommerce.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Advances the reservation wheel every {@code reservation.tickMillis} and
+ * gives the stock of expired carts back in batches of
+ * {@code reservation.batchSize}, one transaction each. Publishes how late
+ * carts expire and how much came back.
+ */
+@Component
+public class ReservationExpiry implements ApplicationListener<ContextRefreshedEvent>, PublicMetrics {
+	final Logger logger = LoggerFactory.getLogger(ReservationExpiry.class);
+
+	private final ReservationService reservations;
+	private final HashedTimingWheel<Long> wheel;
+	private final int batchSize;
+	private final long retryMillis;
+
+	private final LatencyHistogram lag = new LatencyHistogram();
+	private final AtomicLong expiredCarts = new AtomicLong();
+	private final AtomicLong reclaimedUnits = new AtomicLong();
+	private final AtomicLong purgedPurchases = new AtomicLong();
+
+	@Autowired
+	public ReservationExpiry(ReservationService reservations, HashedTimingWheel<Long> reservationWheel,
+			@Value("${reservation.batchSize:500}") int batchSize,
+			@Value("${reservation.retrySeconds:60}") long retrySeconds) {
+		this.reservations = reservations;
+		this.wheel = reservationWheel;
+		this.batchSize = batchSize;
+		this.retryMillis = TimeUnit.SECONDS.toMillis(retrySeconds);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		int carts = reservations.recover();
+		if (carts > 0) {
+			logger.info("Scheduled expiry of {} carts holding stock", carts);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${reservation.tickMillis:1000}")
+	public void expireIdle() {
+		long now = System.currentTimeMillis();
+		List<HashedTimingWheel.Timeout<Long>> due = wheel.advance(now);
+		if (due.isEmpty()) {
+			return;
+		}
+		List<Long> cartIds = new ArrayList<Long>(due.size());
+		for (HashedTimingWheel.Timeout<Long> timeout : due) {
+			lag.record(TimeUnit.MILLISECONDS.toNanos(now - timeout.getDeadlineMillis()));
+			cartIds.add(timeout.getKey());
+		}
+		long cutoff = now - reservations.getTtlMillis();
+		for (int from = 0; from < cartIds.size(); from += batchSize) {
+			List<Long> batch = cartIds.subList(from, Math.min(from + batchSize, cartIds.size()));
+			try {
+				ReclaimResult result = reservations.reclaim(batch, cutoff);
+				expiredCarts.addAndGet(result.getCarts());
+				reclaimedUnits.addAndGet(result.getUnits());
+				purgedPurchases.addAndGet(result.getPurchases());
+				if (result.getCarts() > 0) {
+					logger.debug("Expired {} carts, returned {} units and purged {} purchases",
+							result.getCarts(), result.getUnits(), result.getPurchases());
+				}
+			} catch (RuntimeException e) {
+				logger.error("Failed to reclaim {} expired carts, retrying in {} ms", batch.size(), retryMillis, e);
+				for (Long cartId : batch) {
+					wheel.schedule(cartId, now + retryMillis);
+				}
+			}
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		LatencyHistogram.Snapshot snapshot = lag.snapshot();
+		metrics.add(new Metric<Integer>("reservations.carts", wheel.size()));
+		metrics.add(new Metric<Long>("reservations.expired", expiredCarts.get()));
+		metrics.add(new Metric<Long>("reservations.reclaimedUnits", reclaimedUnits.get()));
+		metrics.add(new Metric<Long>("reservations.purgedPurchases", purgedPurchases.get()));
+		metrics.add(new Metric<Long>("reservations.expiryLag.p50", TimeUnit.NANOSECONDS.toMillis(snapshot.getP50Nanos())));
+		metrics.add(new Metric<Long>("reservations.expiryLag.p99", TimeUnit.NANOSECONDS.toMillis(snapshot.getP99Nanos())));
+		metrics.add(new Metric<Long>("reservations.expiryLag.max", TimeUnit.NANOSECONDS.toMillis(snapshot.getMaxNanos())));
+		return metrics;
+	}
+}
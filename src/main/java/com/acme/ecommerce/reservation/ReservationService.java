@@ -0,0 +1,60 @@
+package com.acme.ecommerce.reservation;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Keeps track of the stock each cart has taken out of inventory, so stock
+ * held by carts nobody comes back to is returned. A cart's reservations
+ * expire once it has not been used for the reservation time-to-live, or
+ * shortly after its session ends.
+ */
+public interface ReservationService {
+
+	/**
+	 * Applies {@code changes}, the units by product id the caller has just
+	 * taken out of inventory (positive) or returned to it (negative), to the
+	 * cart's reservations and restarts its time-to-live. Only stock the caller
+	 * actually moved may be passed, so the reservations always add up to the
+	 * stock taken for the cart.
+	 * @param purchaseId the cart's saved purchase, null while it has none
+	 */
+	public void hold(long cartId, Long purchaseId, Map<Long, Integer> changes);
+
+	/**
+	 * Brings the cart's reservations in line with {@code quantities}, the
+	 * units by product id its record claims, and keeps them from expiring.
+	 * Units held beyond the claim go back to inventory; units claimed beyond
+	 * what is held, because the record was replayed or the reservations
+	 * expired, are taken again if there is enough stock and are otherwise
+	 * left out.
+	 * @param purchaseId the cart's saved purchase, null while it has none
+	 * @return the units now held, by product id, never more than claimed
+	 */
+	public Map<Long, Integer> reconcile(long cartId, Long purchaseId, Map<Long, Integer> quantities);
+
+	/**
+	 * The cart was checked out: its stock is sold and no longer held.
+	 */
+	public void confirm(long cartId);
+
+	/**
+	 * The cart cannot be reached any more; its stock goes back on the next tick.
+	 */
+	public void abandon(long cartId);
+
+	/**
+	 * Returns the stock of those carts that were not touched since
+	 * {@code cutoffMillis} to inventory and deletes their unordered purchases.
+	 * Carts touched since, possibly on another node, are rescheduled.
+	 */
+	public ReclaimResult reclaim(Collection<Long> cartIds, long cutoffMillis);
+
+	/**
+	 * Schedules expiry of every cart holding stock, after a restart.
+	 * @return the number of carts found
+	 */
+	public int recover();
+
+	public long getTtlMillis();
+}
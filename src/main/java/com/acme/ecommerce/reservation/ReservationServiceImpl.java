@@ -0,0 +1,248 @@
+package com.acme.ecommerce.reservation;
+
+import com.acme.ecommerce.domain.Reservation;
+import com.acme.ecommerce.repository.AddressRepository;
+import com.acme.ecommerce.repository.ProductPurchaseRepository;
+import com.acme.ecommerce.repository.PurchaseRepository;
+import com.acme.ecommerce.repository.ReservationRepository;
+import com.acme.ecommerce.service.ProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservations live in the database, so any node can serve a cart and they
+ * survive a restart; each node also schedules the carts it sees on a
+ * {@link HashedTimingWheel}, which {@link ReservationExpiry} advances.
+ */
+@Service
+public class ReservationServiceImpl implements ReservationService {
+
+	private final ReservationRepository repository;
+	private final PurchaseRepository purchaseRepository;
+	private final ProductPurchaseRepository productPurchaseRepository;
+	private final AddressRepository addressRepository;
+	private final ProductService productService;
+	private final HashedTimingWheel<Long> wheel;
+	private final long ttlMillis;
+
+	@Autowired
+	public ReservationServiceImpl(ReservationRepository repository, PurchaseRepository purchaseRepository,
+			ProductPurchaseRepository productPurchaseRepository, AddressRepository addressRepository,
+			ProductService productService, HashedTimingWheel<Long> reservationWheel,
+			@Value("${reservation.ttlSeconds:1800}") long ttlSeconds) {
+		this.repository = repository;
+		this.purchaseRepository = purchaseRepository;
+		this.productPurchaseRepository = productPurchaseRepository;
+		this.addressRepository = addressRepository;
+		this.productService = productService;
+		this.wheel = reservationWheel;
+		this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+	}
+
+	@Transactional
+	@Override
+	public void hold(long cartId, Long purchaseId, Map<Long, Integer> changes) {
+		List<Reservation> removed = new ArrayList<Reservation>();
+		Map<Long, Reservation> lines = lock(cartId, removed);
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Long, Integer> change : changes.entrySet()) {
+			Reservation line = lines.get(change.getKey());
+			if (line != null) {
+				// Keeps reservedAt, the time the product was first put in the cart
+				line.setQuantity(line.getQuantity() + change.getValue());
+			} else if (change.getValue() > 0) {
+				lines.put(change.getKey(), newLine(cartId, change.getKey(), change.getValue(), now));
+			}
+		}
+		store(cartId, purchaseId, lines.values(), removed, now);
+	}
+
+	@Transactional
+	@Override
+	public Map<Long, Integer> reconcile(long cartId, Long purchaseId, Map<Long, Integer> quantities) {
+		List<Reservation> removed = new ArrayList<Reservation>();
+		Map<Long, Reservation> lines = lock(cartId, removed);
+		long now = System.currentTimeMillis();
+		// Sorted so concurrent carts update product rows in the same order
+		Set<Long> productIds = new TreeSet<Long>(quantities.keySet());
+		productIds.addAll(lines.keySet());
+		Map<Long, Integer> held = new HashMap<Long, Integer>();
+		boolean changed = !removed.isEmpty();
+		for (Long productId : productIds) {
+			Integer claimed = quantities.get(productId);
+			int wanted = claimed != null ? claimed : 0;
+			Reservation line = lines.get(productId);
+			int quantity = line != null ? line.getQuantity() : 0;
+			if (wanted < quantity) {
+				productService.release(productId, quantity - wanted);
+				quantity = wanted;
+			} else if (wanted > quantity && productService.tryReserve(productId, wanted - quantity)) {
+				quantity = wanted;
+			}
+			if (line == null) {
+				if (quantity > 0) {
+					lines.put(productId, newLine(cartId, productId, quantity, now));
+					changed = true;
+				}
+			} else if (line.getQuantity() != quantity) {
+				line.setQuantity(quantity);
+				changed = true;
+			}
+			if (quantity > 0) {
+				held.put(productId, quantity);
+			}
+		}
+		// A cart in use is rarely past half its time-to-live, so most requests write nothing
+		if (changed || wheel.deadlineOf(cartId) - now <= ttlMillis / 2) {
+			store(cartId, purchaseId, lines.values(), removed, now);
+		}
+		return held;
+	}
+
+	/**
+	 * The cart's lines by product id. Lines for the same product, left by
+	 * carts saved before they were locked, are merged and the extra ones
+	 * added to {@code removed}.
+	 */
+	private Map<Long, Reservation> lock(long cartId, List<Reservation> removed) {
+		Map<Long, Reservation> lines = new HashMap<Long, Reservation>();
+		for (Reservation line : repository.findByCartIdForUpdate(cartId)) {
+			Reservation first = lines.get(line.getProductId());
+			if (first == null) {
+				lines.put(line.getProductId(), line);
+			} else {
+				first.setQuantity(first.getQuantity() + line.getQuantity());
+				first.setReservedAt(Math.min(first.getReservedAt(), line.getReservedAt()));
+				removed.add(line);
+			}
+		}
+		return lines;
+	}
+
+	private static Reservation newLine(long cartId, long productId, int quantity, long now) {
+		Reservation line = new Reservation();
+		line.setCartId(cartId);
+		line.setProductId(productId);
+		line.setQuantity(quantity);
+		line.setReservedAt(now);
+		return line;
+	}
+
+	private void store(long cartId, Long purchaseId, Collection<Reservation> lines, List<Reservation> removed,
+			long now) {
+		List<Reservation> kept = new ArrayList<Reservation>(lines.size());
+		for (Reservation line : lines) {
+			if (line.getQuantity() > 0) {
+				line.setPurchaseId(purchaseId);
+				line.setTouchedAt(now);
+				kept.add(line);
+			} else if (line.getId() != null) {
+				removed.add(line);
+			}
+		}
+		repository.delete(removed);
+		repository.save(kept);
+		if (kept.isEmpty()) {
+			wheel.cancel(cartId);
+		} else {
+			wheel.schedule(cartId, now + ttlMillis);
+		}
+	}
+
+	@Override
+	public void confirm(long cartId) {
+		repository.deleteByCartId(cartId);
+		wheel.cancel(cartId);
+	}
+
+	@Override
+	public void abandon(long cartId) {
+		// Backdated so reclaim takes it whichever node gets there first
+		if (repository.touch(cartId, 0) > 0) {
+			wheel.schedule(cartId, System.currentTimeMillis());
+		}
+	}
+
+	@Transactional
+	@Override
+	public ReclaimResult reclaim(Collection<Long> cartIds, long cutoffMillis) {
+		if (cartIds.isEmpty()) {
+			return new ReclaimResult(0, 0, 0);
+		}
+		List<Reservation> idle = repository.findIdleForUpdate(cartIds, cutoffMillis);
+		// Sorted so concurrent reclaims update product rows in the same order
+		Map<Long, Integer> units = new TreeMap<Long, Integer>();
+		List<Long> ids = new ArrayList<Long>(idle.size());
+		Set<Long> carts = new HashSet<Long>();
+		Set<Long> purchaseIds = new HashSet<Long>();
+		long total = 0;
+		for (Reservation line : idle) {
+			Integer quantity = units.get(line.getProductId());
+			units.put(line.getProductId(), (quantity != null ? quantity : 0) + line.getQuantity());
+			ids.add(line.getId());
+			carts.add(line.getCartId());
+			if (line.getPurchaseId() != null) {
+				purchaseIds.add(line.getPurchaseId());
+			}
+			total += line.getQuantity();
+		}
+		// One update per product however many carts held it
+		for (Map.Entry<Long, Integer> entry : units.entrySet()) {
+			productService.release(entry.getKey(), entry.getValue());
+		}
+		if (!ids.isEmpty()) {
+			repository.deleteByIds(ids);
+		}
+		int purged = purgeUnordered(purchaseIds);
+
+		for (Object[] lastTouch : repository.findLastTouches(cartIds)) {
+			wheel.schedule((Long) lastTouch[0], (Long) lastTouch[1] + ttlMillis);
+		}
+		return new ReclaimResult(carts.size(), total, purged);
+	}
+
+	private int purgeUnordered(Collection<Long> purchaseIds) {
+		if (purchaseIds.isEmpty()) {
+			return 0;
+		}
+		List<Long> unordered = purchaseRepository.findUnorderedIds(purchaseIds);
+		if (unordered.isEmpty()) {
+			return 0;
+		}
+		List<Long> addressIds = purchaseRepository.findAddressIds(unordered);
+		productPurchaseRepository.deleteByPurchaseIds(unordered);
+		purchaseRepository.deleteByIds(unordered);
+		if (!addressIds.isEmpty()) {
+			addressRepository.deleteByIds(addressIds);
+		}
+		return unordered.size();
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public int recover() {
+		List<Object[]> lastTouches = repository.findLastTouches();
+		for (Object[] lastTouch : lastTouches) {
+			wheel.schedule((Long) lastTouch[0], (Long) lastTouch[1] + ttlMillis);
+		}
+		return lastTouches.size();
+	}
+
+	@Override
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+}
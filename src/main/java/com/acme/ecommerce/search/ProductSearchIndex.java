@@ -0,0 +1,505 @@
+package com.acme.ecommerce.search;
+
+import com.acme.ecommerce.domain.Product;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over product names and descriptions, ranked by
+ * TF-IDF with a length norm. Query terms are OR-ed; the last one also matches
+ * the terms it is a prefix of, at a lower weight, so a word still being typed
+ * finds results.
+ * <p>
+ * Products are numbered internally in the order they are indexed, which keeps
+ * every posting list sorted and append-only. Re-indexing a product retires its
+ * old number; retired numbers are skipped at query time and purged once they
+ * make up a quarter of the index. Searches share a read lock, updates take the
+ * write lock.
+ * <p>
+ * Terms found in more than {@link #CHAMPIONS} products are scored from a
+ * champion list instead of the full posting list: the products where the term
+ * weighs most, built on first use after a change. Prefix expansions share one
+ * such budget between them. Ranking for common terms is an approximation, but
+ * query cost no longer grows with the catalog.
+ */
+@Component
+public class ProductSearchIndex {
+
+	/** Name terms count this many times towards a product's term frequency. */
+	static final int NAME_BOOST = 2;
+	static final float PREFIX_WEIGHT = 0.5f;
+	/** Shorter query terms only match exactly, to keep expansions small. */
+	static final int MIN_PREFIX_LENGTH = 3;
+	/** A prefix expands to at most this many terms, the ones found in the most products. */
+	static final int MAX_EXPANSIONS = 16;
+	static final int CHAMPIONS = 1000;
+
+	private static final Comparator<Postings> BY_SIZE_DESCENDING = new Comparator<Postings>() {
+		@Override
+		public int compare(Postings a, Postings b) {
+			return Integer.compare(b.size, a.size);
+		}
+	};
+
+	private static final Comparator<SearchHit> BY_SCORE = new Comparator<SearchHit>() {
+		@Override
+		public int compare(SearchHit a, SearchHit b) {
+			int c = Float.compare(a.getScore(), b.getScore());
+			return c != 0 ? c : b.getId().compareTo(a.getId());
+		}
+	};
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<String, Postings> terms = new TreeMap<String, Postings>();
+	private final Map<Long, Integer> docByProduct = new HashMap<Long, Integer>();
+	private Doc[] docs = new Doc[64];
+	private float[] norms = new float[64];
+	private int maxDoc;
+	// Bumped on every change, so champion lists know when they are stale
+	private int modCount;
+	private final BitSet retired = new BitSet();
+	private int retiredCount;
+
+	/**
+	 * Replaces the whole index with {@code products}.
+	 */
+	public void rebuild(Iterable<Product> products) {
+		lock.writeLock().lock();
+		try {
+			terms.clear();
+			docByProduct.clear();
+			docs = new Doc[64];
+			norms = new float[64];
+			maxDoc = 0;
+			modCount++;
+			retired.clear();
+			retiredCount = 0;
+			for (Product product : products) {
+				add(product);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a product, or replaces its entry if it is already indexed.
+	 */
+	public void index(Product product) {
+		if (product == null || product.getId() == null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			retire(product.getId());
+			add(product);
+			if (retiredCount > 1024 && retiredCount * 4 > maxDoc) {
+				purgeRetired();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void remove(Long productId) {
+		lock.writeLock().lock();
+		try {
+			retire(productId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return docByProduct.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return up to {@code limit} best matches for {@code query}, best first
+	 */
+	public List<SearchHit> search(String query, int limit) {
+		List<String> tokens = Tokenizer.tokenize(query);
+		if (tokens.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		String prefix = tokens.get(tokens.size() - 1);
+		Set<String> queryTerms = new LinkedHashSet<String>(tokens);
+		lock.readLock().lock();
+		try {
+			int liveDocs = maxDoc - retiredCount;
+			ScoreMap scores = new ScoreMap();
+			for (String term : queryTerms) {
+				Postings exact = terms.get(term);
+				if (exact != null) {
+					exact.score(scores, liveDocs, 1f, CHAMPIONS);
+				}
+			}
+			if (prefix.length() >= MIN_PREFIX_LENGTH) {
+				// All expansions together get the budget of a single term
+				List<Postings> expansions = expansions(prefix);
+				for (Postings expansion : expansions) {
+					expansion.score(scores, liveDocs, PREFIX_WEIGHT, Math.max(1, CHAMPIONS / expansions.size()));
+				}
+			}
+			return topHits(scores, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private List<Postings> expansions(String prefix) {
+		List<Postings> expansions = new ArrayList<Postings>(
+				terms.subMap(prefix, false, prefix + Character.MAX_VALUE, false).values());
+		if (expansions.size() > MAX_EXPANSIONS) {
+			Collections.sort(expansions, BY_SIZE_DESCENDING);
+			expansions = expansions.subList(0, MAX_EXPANSIONS);
+		}
+		return expansions;
+	}
+
+	private List<SearchHit> topHits(ScoreMap scores, int limit) {
+		PriorityQueue<SearchHit> top = new PriorityQueue<SearchHit>(Math.min(limit, 64) + 1, BY_SCORE);
+		for (int i = 0; i < scores.keys.length; i++) {
+			int doc = scores.keys[i];
+			if (doc == ScoreMap.EMPTY) {
+				continue;
+			}
+			Doc d = docs[doc];
+			float score = scores.values[i];
+			if (top.size() < limit || score > top.peek().getScore()) {
+				top.add(new SearchHit(d.productId, d.name, d.price, score));
+				if (top.size() > limit) {
+					top.poll();
+				}
+			}
+		}
+		List<SearchHit> hits = new ArrayList<SearchHit>(top);
+		Collections.sort(hits, Collections.reverseOrder(BY_SCORE));
+		return hits;
+	}
+
+	private void add(Product product) {
+		Map<String, Integer> frequencies = new HashMap<String, Integer>();
+		int length = 0;
+		for (String token : Tokenizer.tokenize(product.getName())) {
+			increment(frequencies, token, NAME_BOOST);
+			length += NAME_BOOST;
+		}
+		for (String token : Tokenizer.tokenize(product.getDesc())) {
+			increment(frequencies, token, 1);
+			length++;
+		}
+
+		int doc = maxDoc++;
+		modCount++;
+		if (doc == docs.length) {
+			docs = Arrays.copyOf(docs, docs.length * 2);
+			norms = Arrays.copyOf(norms, norms.length * 2);
+		}
+		docs[doc] = new Doc(product.getId(), product.getName(), product.getPrice());
+		norms[doc] = length == 0 ? 0f : (float) (1 / Math.sqrt(length));
+		docByProduct.put(product.getId(), doc);
+
+		for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+			Postings postings = terms.get(entry.getKey());
+			if (postings == null) {
+				postings = new Postings();
+				terms.put(entry.getKey(), postings);
+			}
+			postings.add(doc, entry.getValue());
+		}
+	}
+
+	private static void increment(Map<String, Integer> frequencies, String token, int by) {
+		Integer current = frequencies.get(token);
+		frequencies.put(token, current == null ? by : current + by);
+	}
+
+	private void retire(Long productId) {
+		Integer doc = docByProduct.remove(productId);
+		if (doc != null) {
+			retired.set(doc);
+			retiredCount++;
+			modCount++;
+		}
+	}
+
+	/**
+	 * Renumbers the live products densely and drops retired ones from every
+	 * posting list, keeping relative order so the lists stay sorted.
+	 */
+	private void purgeRetired() {
+		int[] renumbered = new int[maxDoc];
+		Doc[] live = new Doc[Math.max(64, maxDoc - retiredCount)];
+		float[] liveNorms = new float[live.length];
+		int next = 0;
+		for (int doc = 0; doc < maxDoc; doc++) {
+			if (retired.get(doc)) {
+				renumbered[doc] = -1;
+			} else {
+				renumbered[doc] = next;
+				live[next] = docs[doc];
+				liveNorms[next] = norms[doc];
+				docByProduct.put(docs[doc].productId, next);
+				next++;
+			}
+		}
+		Iterator<Postings> it = terms.values().iterator();
+		while (it.hasNext()) {
+			Postings postings = it.next();
+			postings.renumber(renumbered);
+			if (postings.size == 0) {
+				it.remove();
+			}
+		}
+		docs = live;
+		norms = liveNorms;
+		maxDoc = next;
+		retired.clear();
+		retiredCount = 0;
+		modCount++;
+	}
+
+	private static final class Doc {
+		final Long productId;
+		final String name;
+		final BigDecimal price;
+
+		Doc(Long productId, String name, BigDecimal price) {
+			this.productId = productId;
+			this.name = name;
+			this.price = price;
+		}
+	}
+
+	private final class Postings {
+		int[] docs = new int[2];
+		int[] frequencies = new int[2];
+		int size;
+		volatile Champions champions;
+
+		void add(int doc, int frequency) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size * 2);
+				frequencies = Arrays.copyOf(frequencies, size * 2);
+			}
+			docs[size] = doc;
+			frequencies[size] = frequency;
+			size++;
+		}
+
+		/**
+		 * Adds sqrt(tf) * norm * idf^2 * weight for every live product in the
+		 * list, or only for the best {@code budget} of them when the list is
+		 * longer. Retired entries still count towards the document frequency
+		 * until they are purged.
+		 */
+		void score(ScoreMap scores, int liveDocs, float weight, int budget) {
+			double idf = 1 + Math.log((double) liveDocs / (size + 1));
+			float termWeight = (float) (idf * idf) * weight;
+			if (size > budget) {
+				Champions top = champions();
+				int n = Math.min(budget, top.size);
+				for (int i = 0; i < n; i++) {
+					scores.add(top.docs[i], top.impacts[i] * termWeight);
+				}
+				return;
+			}
+			for (int i = 0; i < size; i++) {
+				int doc = docs[i];
+				if (!retired.get(doc)) {
+					scores.add(doc, impact(i) * termWeight);
+				}
+			}
+		}
+
+		private float impact(int i) {
+			return (float) Math.sqrt(frequencies[i]) * norms[docs[i]];
+		}
+
+		/**
+		 * The live entries with the highest impact, best first. Called under the
+		 * read lock, so several searches may build the same list at once; they
+		 * produce equal results and the last one wins.
+		 */
+		private Champions champions() {
+			Champions current = champions;
+			if (current != null && current.modCount == modCount) {
+				return current;
+			}
+			// Min-heap on impact holding the best entries seen so far
+			int capacity = Math.min(CHAMPIONS, size);
+			int[] heapDocs = new int[capacity];
+			float[] heapImpacts = new float[capacity];
+			int heapSize = 0;
+			for (int i = 0; i < size; i++) {
+				if (retired.get(docs[i])) {
+					continue;
+				}
+				float impact = impact(i);
+				if (heapSize < capacity) {
+					heapDocs[heapSize] = docs[i];
+					heapImpacts[heapSize] = impact;
+					siftUp(heapDocs, heapImpacts, heapSize++);
+				} else if (impact > heapImpacts[0]) {
+					heapDocs[0] = docs[i];
+					heapImpacts[0] = impact;
+					siftDown(heapDocs, heapImpacts, heapSize);
+				}
+			}
+			// Popping the minimum to the back repeatedly leaves the array sorted best first
+			for (int end = heapSize - 1; end > 0; end--) {
+				swap(heapDocs, heapImpacts, 0, end);
+				siftDown(heapDocs, heapImpacts, end);
+			}
+			current = new Champions(modCount, heapDocs, heapImpacts, heapSize);
+			champions = current;
+			return current;
+		}
+
+		void renumber(int[] renumbered) {
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				int doc = renumbered[docs[i]];
+				if (doc >= 0) {
+					docs[kept] = doc;
+					frequencies[kept] = frequencies[i];
+					kept++;
+				}
+			}
+			size = kept;
+		}
+	}
+
+	private static final class Champions {
+		final int modCount;
+		final int[] docs;
+		final float[] impacts;
+		final int size;
+
+		Champions(int modCount, int[] docs, float[] impacts, int size) {
+			this.modCount = modCount;
+			this.docs = docs;
+			this.impacts = impacts;
+			this.size = size;
+		}
+	}
+
+	private static void siftUp(int[] docs, float[] impacts, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (impacts[parent] <= impacts[i]) {
+				return;
+			}
+			swap(docs, impacts, i, parent);
+			i = parent;
+		}
+	}
+
+	private static void siftDown(int[] docs, float[] impacts, int size) {
+		int i = 0;
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < size && impacts[left] < impacts[smallest]) {
+				smallest = left;
+			}
+			if (right < size && impacts[right] < impacts[smallest]) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			swap(docs, impacts, i, smallest);
+			i = smallest;
+		}
+	}
+
+	private static void swap(int[] docs, float[] impacts, int a, int b) {
+		int doc = docs[a];
+		docs[a] = docs[b];
+		docs[b] = doc;
+		float impact = impacts[a];
+		impacts[a] = impacts[b];
+		impacts[b] = impact;
+	}
+
+	/**
+	 * Open-addressing map from internal product number to accumulated score,
+	 * avoiding a boxed entry per matching product.
+	 */
+	private static final class ScoreMap {
+		static final int EMPTY = -1;
+
+		int[] keys = newKeys(64);
+		float[] values = new float[64];
+		int size;
+
+		void add(int doc, float score) {
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int i = mix(doc) & mask;
+			while (keys[i] != EMPTY && keys[i] != doc) {
+				i = (i + 1) & mask;
+			}
+			if (keys[i] == EMPTY) {
+				keys[i] = doc;
+				size++;
+			}
+			values[i] += score;
+		}
+
+		private void grow() {
+			int[] oldKeys = keys;
+			float[] oldValues = values;
+			keys = newKeys(oldKeys.length * 2);
+			values = new float[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] != EMPTY) {
+					int i = mix(oldKeys[j]) & mask;
+					while (keys[i] != EMPTY) {
+						i = (i + 1) & mask;
+					}
+					keys[i] = oldKeys[j];
+					values[i] = oldValues[j];
+				}
+			}
+		}
+
+		private static int mix(int doc) {
+			int h = doc * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		private static int[] newKeys(int capacity) {
+			int[] keys = new int[capacity];
+			Arrays.fill(keys, EMPTY);
+			return keys;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.acme.ecommerce.search;
+
+import java.math.BigDecimal;
+
+/**
+ * A ranked search result, carrying enough of the product to render a result
+ * list without loading it.
+ */
+public class SearchHit {
+
+	private final Long id;
+	private final String name;
+	private final BigDecimal price;
+	private final float score;
+
+	public SearchHit(Long id, String name, BigDecimal price, float score) {
+		this.id = id;
+		this.name = name;
+		this.price = price;
+		this.score = score;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public float getScore() {
+		return score;
+	}
+}
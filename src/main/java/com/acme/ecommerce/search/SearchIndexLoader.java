@@ -0,0 +1,35 @@
+package com.acme.ecommerce.search;
+
+import com.acme.ecommerce.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the {@link ProductSearchIndex} from the catalog once the application
+ * context is up; from then on it is kept current by ProductService.save.
+ */
+@Component
+public class SearchIndexLoader implements ApplicationListener<ContextRefreshedEvent> {
+
+	final Logger logger = LoggerFactory.getLogger(SearchIndexLoader.class);
+
+	private final ProductRepository repository;
+	private final ProductSearchIndex index;
+
+	@Autowired
+	public SearchIndexLoader(ProductRepository repository, ProductSearchIndex index) {
+		this.repository = repository;
+		this.index = index;
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		long start = System.currentTimeMillis();
+		index.rebuild(repository.findAll());
+		logger.info("Indexed {} products for search in {} ms", index.size(), System.currentTimeMillis() - start);
+	}
+}
@@ -0,0 +1,21 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.CartBatchResult;
+import com.acme.ecommerce.domain.CartOperation;
+import com.acme.ecommerce.domain.ShoppingCart;
+
+import java.util.List;
+
+public interface CartService {
+
+	/**
+	 * Applies the operations to the cart in order. The operations on each
+	 * product are netted out first, so each product costs one stock update
+	 * however often it appears; when there is not enough stock for the net
+	 * increase, none of that product's operations apply. The stock updates
+	 * share one transaction, and the cart is only written once it committed.
+	 * @throws com.acme.ecommerce.cart.CartFullException before any stock is
+	 * taken, if the cart would end up with more lines than it can hold
+	 */
+	public CartBatchResult applyBatch(ShoppingCart cart, List<CartOperation> operations);
+}
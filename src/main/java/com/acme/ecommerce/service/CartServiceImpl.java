@@ -0,0 +1,173 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.cart.CartFullException;
+import com.acme.ecommerce.domain.CartBatchResult;
+import com.acme.ecommerce.domain.CartLineResult;
+import com.acme.ecommerce.domain.CartOperation;
+import com.acme.ecommerce.domain.PriceCalculator;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.domain.ShoppingCart;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+@Service
+public class CartServiceImpl implements CartService {
+
+	private final ProductService productService;
+
+	@Autowired
+	public CartServiceImpl(ProductService productService) {
+		this.productService = productService;
+	}
+
+	@Override
+	public CartBatchResult applyBatch(ShoppingCart cart, List<CartOperation> operations) {
+		Set<Long> productIds = new LinkedHashSet<Long>();
+		for (CartOperation operation : operations) {
+			if (operation.getProductId() != null) {
+				productIds.add(operation.getProductId());
+			}
+		}
+		Map<Long, Product> products = productService.findByIds(productIds);
+
+		Purchase purchase = cart.getPurchase();
+		Map<Long, Integer> current = new HashMap<Long, Integer>();
+		if (purchase != null) {
+			for (ProductPurchase line : purchase.getProductPurchases()) {
+				current.put(line.getProduct().getId(), line.getQuantity());
+			}
+		}
+
+		// Net quantity of every product touched, sorted so stock rows are updated in id order
+		Map<Long, Integer> target = new TreeMap<Long, Integer>();
+		CartLineResult.Status[] statuses = new CartLineResult.Status[operations.size()];
+		for (int i = 0; i < operations.size(); i++) {
+			CartOperation operation = operations.get(i);
+			Long productId = operation.getProductId();
+			if (operation.getAction() == null || productId == null) {
+				statuses[i] = CartLineResult.Status.INVALID;
+				continue;
+			}
+			if (!products.containsKey(productId)) {
+				statuses[i] = CartLineResult.Status.UNKNOWN_PRODUCT;
+				continue;
+			}
+			int quantity = target.containsKey(productId) ? target.get(productId) : quantityOf(current, productId);
+			statuses[i] = CartLineResult.Status.APPLIED;
+			switch (operation.getAction()) {
+				case ADD:
+					if (operation.getQuantity() <= 0) {
+						statuses[i] = CartLineResult.Status.INVALID;
+					} else {
+						quantity += operation.getQuantity();
+					}
+					break;
+				case UPDATE:
+					if (operation.getQuantity() < 0) {
+						statuses[i] = CartLineResult.Status.INVALID;
+					} else if (quantity == 0) {
+						statuses[i] = CartLineResult.Status.NOT_IN_CART;
+					} else {
+						quantity = operation.getQuantity();
+					}
+					break;
+				case REMOVE:
+					if (quantity == 0) {
+						statuses[i] = CartLineResult.Status.NOT_IN_CART;
+					}
+					quantity = 0;
+					break;
+			}
+			if (statuses[i] == CartLineResult.Status.APPLIED) {
+				target.put(productId, quantity);
+			}
+		}
+
+		int lines = 0;
+		for (Long productId : current.keySet()) {
+			if (!target.containsKey(productId) || target.get(productId) > 0) {
+				lines++;
+			}
+		}
+		for (Map.Entry<Long, Integer> entry : target.entrySet()) {
+			if (!current.containsKey(entry.getKey()) && entry.getValue() > 0) {
+				lines++;
+			}
+		}
+		if (lines > cart.getMaxLines()) {
+			throw new CartFullException(lines, cart.getMaxLines());
+		}
+
+		// One stock update per product, committed before the cart records the result
+		Map<Long, Integer> changes = new HashMap<Long, Integer>();
+		for (Map.Entry<Long, Integer> entry : target.entrySet()) {
+			int delta = entry.getValue() - quantityOf(current, entry.getKey());
+			if (delta != 0) {
+				changes.put(entry.getKey(), delta);
+			}
+		}
+		Set<Long> outOfStock = changes.isEmpty() ? Collections.<Long>emptySet() : productService.adjustStock(changes);
+
+		boolean changed = false;
+		if (purchase == null) {
+			purchase = new Purchase();
+		}
+		for (Map.Entry<Long, Integer> entry : target.entrySet()) {
+			Long productId = entry.getKey();
+			int quantity = entry.getValue();
+			int oldQuantity = quantityOf(current, productId);
+			if (outOfStock.contains(productId) || quantity == oldQuantity) {
+				continue;
+			}
+			ProductPurchase line = PriceCalculator.findLine(purchase, productId);
+			if (line == null) {
+				line = new ProductPurchase();
+				line.setProduct(products.get(productId));
+				line.setQuantity(quantity);
+				line.setPurchase(purchase);
+				purchase.getProductPurchases().add(line);
+			} else if (quantity == 0) {
+				purchase.getProductPurchases().remove(line);
+			} else {
+				line.setQuantity(quantity);
+			}
+			changed = true;
+		}
+		if (changed) {
+			cart.update(purchase);
+		}
+
+		List<CartLineResult> results = new ArrayList<CartLineResult>(operations.size());
+		for (int i = 0; i < operations.size(); i++) {
+			CartOperation operation = operations.get(i);
+			Long productId = operation.getProductId();
+			CartLineResult.Status status = statuses[i];
+			if (status == CartLineResult.Status.APPLIED && outOfStock.contains(productId)) {
+				status = CartLineResult.Status.INSUFFICIENT_STOCK;
+			}
+			int quantity = 0;
+			if (productId != null) {
+				quantity = target.containsKey(productId) && !outOfStock.contains(productId)
+						? target.get(productId) : quantityOf(current, productId);
+			}
+			results.add(new CartLineResult(productId, operation.getAction(), status, quantity));
+		}
+		return new CartBatchResult(results, cart.getTotals(), cart.getCouponCode());
+	}
+
+	private static int quantityOf(Map<Long, Integer> quantities, Long productId) {
+		Integer quantity = quantities.get(productId);
+		return quantity != null ? quantity : 0;
+	}
+}
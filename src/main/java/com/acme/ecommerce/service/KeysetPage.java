@@ -0,0 +1,72 @@
+package com.acme.ecommerce.service;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing. Navigation is by the opaque cursors
+ * rather than page numbers; {@link #getNumber()} and {@link #getTotalPages()}
+ * are for display and the total may be slightly stale, as it comes from a
+ * cached count.
+ */
+public class KeysetPage<T> implements Iterable<T> {
+
+	private final List<T> content;
+	private final int number;
+	private final int totalPages;
+	private final String previousCursor;
+	private final String nextCursor;
+	private final String lastCursor;
+
+	public KeysetPage(List<T> content, int number, int totalPages,
+					  String previousCursor, String nextCursor, String lastCursor) {
+		this.content = Collections.unmodifiableList(content);
+		this.number = number;
+		this.totalPages = totalPages;
+		this.previousCursor = previousCursor;
+		this.nextCursor = nextCursor;
+		this.lastCursor = lastCursor;
+	}
+
+	public List<T> getContent() {
+		return content;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return content.iterator();
+	}
+
+	/** Zero-based, like {@link org.springframework.data.domain.Page#getNumber()}. */
+	public int getNumber() {
+		return number;
+	}
+
+	public int getTotalPages() {
+		return totalPages;
+	}
+
+	public boolean hasPrevious() {
+		return previousCursor != null;
+	}
+
+	public boolean hasNext() {
+		return nextCursor != null;
+	}
+
+	/** Cursor of the page before this one, null on the first page. */
+	public String getPreviousCursor() {
+		return previousCursor;
+	}
+
+	/** Cursor of the page after this one, null on the last page. */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	/** Cursor of the last page, null on the last page. */
+	public String getLastCursor() {
+		return lastCursor;
+	}
+}
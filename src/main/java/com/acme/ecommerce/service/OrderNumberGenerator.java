@@ -0,0 +1,83 @@
+package com.acme.ecommerce.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out unique, roughly time-ordered order numbers without touching the
+ * database. Each number packs milliseconds since {@link #EPOCH} (41 bits), the
+ * node id of this instance (10 bits) and a per-millisecond sequence (12 bits).
+ * <p>
+ * The last timestamp and sequence live in a single {@link AtomicLong} updated by
+ * CAS, so concurrent callers never block. When a millisecond's 4096 numbers run
+ * out, or the wall clock steps backwards, the generator simply carries on from
+ * its last value instead of waiting for the clock: numbers stay unique and
+ * increasing, and briefly run ahead of real time.
+ * <p>
+ * Numbers are only unique across instances if every instance runs with its own
+ * {@code orderNumber.nodeId}, so there is no default: the application refuses
+ * to start without one.
+ */
+@Component
+public class OrderNumberGenerator {
+
+	/** 2016-01-01T00:00:00Z */
+	public static final long EPOCH = 1451606400000L;
+
+	static final int NODE_BITS = 10;
+	static final int SEQUENCE_BITS = 12;
+	static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+	private final long nodeId;
+	// (millis since EPOCH << SEQUENCE_BITS) | sequence of the last number handed out
+	private final AtomicLong last = new AtomicLong();
+
+	@Autowired
+	public OrderNumberGenerator(@Value("${orderNumber.nodeId:}") String nodeId) {
+		this(parseNodeId(nodeId));
+	}
+
+	public OrderNumberGenerator(long nodeId) {
+		if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+			throw new IllegalArgumentException("orderNumber.nodeId must be between 0 and " + MAX_NODE_ID + ", was " + nodeId);
+		}
+		this.nodeId = nodeId;
+	}
+
+	private static long parseNodeId(String nodeId) {
+		if (nodeId == null || nodeId.trim().isEmpty()) {
+			throw new IllegalStateException("orderNumber.nodeId is not set; give every instance its own id between 0 and "
+					+ MAX_NODE_ID);
+		}
+		try {
+			return Long.parseLong(nodeId.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("orderNumber.nodeId must be a number, was " + nodeId, e);
+		}
+	}
+
+	public long nextId() {
+		long now = (currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+		long prev;
+		long next;
+		do {
+			prev = last.get();
+			next = now > prev ? now : prev + 1;
+		} while (!last.compareAndSet(prev, next));
+
+		long timestamp = next >>> SEQUENCE_BITS;
+		long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+		return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+	}
+
+	public String next() {
+		return Long.toString(nextId());
+	}
+
+	protected long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
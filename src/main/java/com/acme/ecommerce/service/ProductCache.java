@@ -0,0 +1,259 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.cache.BoundedCache;
+import com.acme.ecommerce.domain.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read-through cache for catalog reads made by {@link ProductServiceImpl}.
+ * Products and listing pages are stored and handed out as copies so callers
+ * can never change the cached state; every write goes through
+ * {@link #put(Product)} or one of the invalidate methods so stock quantities
+ * are never served stale by {@link #get(Long)}. Listing pages show how many
+ * of each product are available, so they are dropped on every write as well;
+ * the product count only on catalog changes.
+ * <p>
+ * A read-through fill can race with a write: the row is read, the write
+ * drops the entry, and the row read before it is put back. Every drop bumps a
+ * stamp, so a fill taken with {@link #stamp(Long)} or {@link #pageStamp()}
+ * before the read is thrown away if the stamp moved in the meantime. Drops
+ * made inside a transaction are repeated once it completes, as readers
+ * only see the write from then on.
+ * <p>
+ * A read-only transaction may be served by a replica that has not caught up
+ * with a write yet, so for {@code productCache.replicaLagMillis} after this
+ * node writes a product, {@link #isRecentlyWritten(Long)} tells callers to
+ * read it on the primary instead.
+ */
+@Component
+public class ProductCache implements PublicMetrics {
+
+	private final BoundedCache<Long, Product> products;
+	private final BoundedCache<Pageable, Page<Product>> pages;
+	private final BoundedCache<String, Long> counts;
+	private final long replicaLagMillis;
+	/** When this node last wrote each product; entries past the replica lag go when next looked up. */
+	private final ConcurrentMap<Long, Long> writtenAt = new ConcurrentHashMap<Long, Long>();
+	/** Drop stamps of products, striped by id so they take fixed space. */
+	private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+	private final AtomicLong pageStamp = new AtomicLong();
+
+	private static final int STAMP_STRIPES = 64;
+
+	@Autowired
+	public ProductCache(@Value("${productCache.maxEntries:1000}") int maxEntries,
+						@Value("${productCache.maxPages:100}") int maxPages,
+						@Value("${productCache.ttlSeconds:300}") long ttlSeconds,
+						@Value("${productCache.replicaLagMillis:2000}") long replicaLagMillis) {
+		this.products = new BoundedCache<Long, Product>("product", maxEntries, ttlSeconds * 1000);
+		this.pages = new BoundedCache<Pageable, Page<Product>>("productPage", maxPages, ttlSeconds * 1000);
+		this.counts = new BoundedCache<String, Long>("productCount", 1, ttlSeconds * 1000);
+		this.replicaLagMillis = replicaLagMillis;
+	}
+
+	public Product get(Long id) {
+		Product product = products.get(id);
+		return product != null ? copyOf(product) : null;
+	}
+
+	public void put(Product product) {
+		if (product != null && product.getId() != null) {
+			products.put(product.getId(), copyOf(product));
+		}
+	}
+
+	/**
+	 * Puts a product read from the database, unless it was dropped since
+	 * {@code stamp} was taken.
+	 */
+	public void put(Product product, long stamp) {
+		if (product == null || product.getId() == null) {
+			return;
+		}
+		products.put(product.getId(), copyOf(product));
+		// Checked after the put: a drop either moved the stamp already or removes the entry itself
+		if (stamp(product.getId()) != stamp) {
+			products.invalidate(product.getId());
+		}
+	}
+
+	/**
+	 * Take before reading a product to {@link #put(Product, long)}.
+	 */
+	public long stamp(Long id) {
+		return stamps.get(stripe(id));
+	}
+
+	public Page<Product> getPage(Pageable pageable) {
+		Page<Product> page = pages.get(pageable);
+		return page != null ? copyOf(page, pageable) : null;
+	}
+
+	/**
+	 * Puts a listing page unless the catalog changed since {@code stamp}
+	 * was taken with {@link #pageStamp()}.
+	 */
+	public void putPage(Pageable pageable, Page<Product> page, long stamp) {
+		pages.put(pageable, copyOf(page, pageable));
+		if (pageStamp.get() != stamp) {
+			pages.invalidate(pageable);
+		}
+	}
+
+	public long pageStamp() {
+		return pageStamp.get();
+	}
+
+	/**
+	 * Number of products in the catalog, null if not cached.
+	 */
+	public Long getCount() {
+		return counts.get("product");
+	}
+
+	/**
+	 * @param stamp {@link #pageStamp()} taken before counting
+	 */
+	public void putCount(long count, long stamp) {
+		counts.put("product", count);
+		if (pageStamp.get() != stamp) {
+			counts.invalidateAll();
+		}
+	}
+
+	/**
+	 * Drops a product and the listing pages, which show its stock, but keeps
+	 * the product count. Used for stock changes.
+	 */
+	public void evict(final Long id) {
+		drop(id);
+		dropListing();
+		afterTransaction(new Runnable() {
+			@Override
+			public void run() {
+				drop(id);
+				dropListing();
+			}
+		});
+	}
+
+	public void invalidate(final Long id) {
+		drop(id);
+		dropPages();
+		afterTransaction(new Runnable() {
+			@Override
+			public void run() {
+				drop(id);
+				dropPages();
+			}
+		});
+	}
+
+	public void invalidateAll() {
+		for (int i = 0; i < STAMP_STRIPES; i++) {
+			stamps.incrementAndGet(i);
+		}
+		products.invalidateAll();
+		dropPages();
+	}
+
+	private void drop(Long id) {
+		stamps.incrementAndGet(stripe(id));
+		products.invalidate(id);
+		written(id);
+	}
+
+	private void dropPages() {
+		dropListing();
+		counts.invalidateAll();
+	}
+
+	private void dropListing() {
+		pageStamp.incrementAndGet();
+		pages.invalidateAll();
+	}
+
+	private static void afterTransaction(final Runnable drop) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					drop.run();
+				}
+			});
+		}
+	}
+
+	private static int stripe(Long id) {
+		return (int) (id ^ (id >>> 32)) & (STAMP_STRIPES - 1);
+	}
+
+	/**
+	 * True while a replica may not have this node's last write of the product yet.
+	 */
+	public boolean isRecentlyWritten(Long id) {
+		Long at = writtenAt.get(id);
+		if (at == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - at < replicaLagMillis) {
+			return true;
+		}
+		writtenAt.remove(id, at);
+		return false;
+	}
+
+	private void written(Long id) {
+		if (replicaLagMillis > 0) {
+			writtenAt.put(id, System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		addMetrics(metrics, products);
+		addMetrics(metrics, pages);
+		addMetrics(metrics, counts);
+		return metrics;
+	}
+
+	private static void addMetrics(List<Metric<?>> metrics, BoundedCache<?, ?> cache) {
+		String prefix = "cache." + cache.getName() + ".";
+		metrics.add(new Metric<Integer>(prefix + "size", cache.size()));
+		metrics.add(new Metric<Long>(prefix + "hits", cache.getHits()));
+		metrics.add(new Metric<Long>(prefix + "misses", cache.getMisses()));
+		metrics.add(new Metric<Long>(prefix + "evictions", cache.getEvictions()));
+	}
+
+	private static Product copyOf(Product source) {
+		Product copy = source.copy();
+		copy.setLoaded(source.copy());
+		return copy;
+	}
+
+	private static Page<Product> copyOf(Page<Product> source, Pageable pageable) {
+		List<Product> content = new ArrayList<Product>(source.getNumberOfElements());
+		for (Product product : source.getContent()) {
+			content.add(copyOf(product));
+		}
+		return new PageImpl<Product>(content, pageable, source.getTotalElements());
+	}
+}
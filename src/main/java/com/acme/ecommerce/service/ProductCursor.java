@@ -0,0 +1,132 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in the product listing for keyset pagination: the sort key of the
+ * row to continue after (or before, going back) plus the page number it leads
+ * to, so the listing can still show "Page N of M". Handed to clients only in
+ * its {@link #encode() encoded} form.
+ */
+public final class ProductCursor {
+
+	public enum Order {
+		ID, PRICE;
+
+		/** Unknown or missing values fall back to {@link #ID}. */
+		public static Order fromParam(String value) {
+			return "price".equalsIgnoreCase(value) ? PRICE : ID;
+		}
+	}
+
+	private final Order order;
+	private final boolean backward;
+	private final int page;
+	private final Long id;
+	private final BigDecimal price;
+
+	private ProductCursor(Order order, boolean backward, int page, Long id, BigDecimal price) {
+		this.order = order;
+		this.backward = backward;
+		this.page = page;
+		this.id = id;
+		this.price = price;
+	}
+
+	/** Page {@code page}, starting right after {@code product}. */
+	public static ProductCursor after(Order order, int page, Product product) {
+		return new ProductCursor(order, false, page, product.getId(), product.getPrice());
+	}
+
+	/** Page {@code page}, ending right before {@code product}. */
+	public static ProductCursor before(Order order, int page, Product product) {
+		return new ProductCursor(order, true, page, product.getId(), product.getPrice());
+	}
+
+	/** The last page, read backwards from the end of the listing. Its number comes from the product count. */
+	public static ProductCursor last(Order order) {
+		return new ProductCursor(order, true, 0, null, null);
+	}
+
+	public Order getOrder() {
+		return order;
+	}
+
+	public boolean isBackward() {
+		return backward;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public boolean isLast() {
+		return id == null;
+	}
+
+	public String encode() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(order.name()).append(':').append(backward ? 'b' : 'a').append(':').append(page);
+		if (id != null) {
+			sb.append(':').append(id);
+			if (order == Order.PRICE) {
+				sb.append(':').append(price.toPlainString());
+			}
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the decoded cursor, or null if {@code value} is missing or not a
+	 * cursor produced by {@link #encode()}
+	 */
+	public static ProductCursor decode(String value) {
+		if (value == null || value.isEmpty()) {
+			return null;
+		}
+		try {
+			String[] parts = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8).split(":");
+			if (parts.length < 3) {
+				return null;
+			}
+			Order order = Order.valueOf(parts[0]);
+			boolean backward = "b".equals(parts[1]);
+			if (!backward && !"a".equals(parts[1])) {
+				return null;
+			}
+			int page = Integer.parseInt(parts[2]);
+			if (page < 0) {
+				return null;
+			}
+			if (parts.length == 3) {
+				return backward ? last(order) : null;
+			}
+			Long id = Long.valueOf(parts[3]);
+			BigDecimal price = null;
+			if (order == Order.PRICE) {
+				if (parts.length != 5) {
+					return null;
+				}
+				price = new BigDecimal(parts[4]);
+			} else if (parts.length != 4) {
+				return null;
+			}
+			return new ProductCursor(order, backward, page, id, price);
+		} catch (IllegalArgumentException e) {
+			// Covers bad base64, unknown order names and malformed numbers
+			return null;
+		}
+	}
+}
@@ -1,16 +1,74 @@
 package com.acme.ecommerce.service;
 
 import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.search.SearchHit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public interface ProductService {
 
 	public Iterable<Product> findAll();
 	
 	public Page<Product> findAll(Pageable pageable);
+
+	/**
+	 * Keyset pagination: seeks straight to the page a cursor points at instead of
+	 * skipping rows with OFFSET, and takes the page total from a cached count.
+	 * @param cursor cursor from a previous {@link KeysetPage}, null for the first page
+	 * @param order ordering of the first page; cursors carry their own
+	 */
+	public KeysetPage<Product> findPage(ProductCursor cursor, ProductCursor.Order order, int size);
+
+	/**
+	 * Offset lookup of a page by number, for links that predate cursors. The
+	 * returned page carries cursors so navigation continues by keyset.
+	 */
+	public KeysetPage<Product> findPage(int pageNumber, ProductCursor.Order order, int size);
 	
 	public Product findById(Long id);
 
+	/**
+	 * Looks up several products at once, answering what it can from the cache
+	 * and the rest with a single query. Unknown ids are left out of the map.
+	 */
+	public Map<Long, Product> findByIds(Collection<Long> ids);
+
+	/**
+	 * Saves a product read through this service, or a new one. A save that
+	 * loses to a concurrent write is retried with the caller's changes
+	 * replayed onto the current row.
+	 * @throws org.springframework.dao.ConcurrencyFailureException if a field
+	 * other than stock was changed both by the caller and concurrently
+	 */
 	public void save(Product product);
+
+	/**
+	 * Full-text search over product names and descriptions, answered from the
+	 * in-memory index.
+	 */
+	public List<SearchHit> search(String query, int limit);
+
+	/**
+	 * Atomically takes {@code quantity} units of a product out of stock.
+	 * @return false if the product is unknown or fewer than {@code quantity} units are left
+	 */
+	public boolean tryReserve(Long productId, int quantity);
+
+	/**
+	 * Puts {@code quantity} previously reserved units of a product back into stock.
+	 */
+	public void release(Long productId, int quantity);
+
+	/**
+	 * Takes or returns stock for several products in one transaction, one
+	 * update per product in id order: a positive change is reserved with
+	 * {@link #tryReserve}, a negative one released.
+	 * @return ids of the products that had too little stock, whose changes were skipped
+	 */
+	public Set<Long> adjustStock(Map<Long, Integer> changes);
 }
@@ -2,42 +2,321 @@ package com.acme.ecommerce.service;
 
 import com.acme.ecommerce.domain.Product;
 import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.search.ProductSearchIndex;
+import com.acme.ecommerce.search.SearchHit;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.ObjectUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @Service
 public class ProductServiceImpl implements ProductService {
 	
 	private final ProductRepository repository;
+
+	private final ProductCache cache;
+
+	private final ProductSearchIndex searchIndex;
+
+	private final StockWriteRetry stockWriteRetry;
 	
 	@Autowired
-    public ProductServiceImpl(ProductRepository repository) {
+    public ProductServiceImpl(ProductRepository repository, ProductCache cache, ProductSearchIndex searchIndex,
+							  StockWriteRetry stockWriteRetry) {
         this.repository = repository;
+        this.cache = cache;
+        this.searchIndex = searchIndex;
+        this.stockWriteRetry = stockWriteRetry;
     }
 
-	@Transactional
+	@Transactional(readOnly = true)
 	@Override
 	public Iterable<Product> findAll() {
 		return repository.findAll();
 	}
 	
+	@Transactional(readOnly = true)
 	@Override
 	public Page<Product> findAll(Pageable pageable) {
-		return repository.findAll(pageable);
+		Page<Product> result = cache.getPage(pageable);
+		if (result == null) {
+			long stamp = cache.pageStamp();
+			result = repository.findAll(pageable);
+			cache.putPage(pageable, result, stamp);
+		}
+		return result;
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public KeysetPage<Product> findPage(ProductCursor cursor, ProductCursor.Order order, int size) {
+		if (cursor != null) {
+			order = cursor.getOrder();
+		}
+		boolean backward = cursor != null && cursor.isBackward();
+		long count = count();
+		// The last page only holds the remainder, so pages line up with the ones reached going forward
+		int fetch = cursor != null && cursor.isLast() && count % size != 0 ? (int) (count % size) : size;
+		Pageable limit = new PageRequest(0, fetch + 1, sort(order, backward ? Sort.Direction.DESC : Sort.Direction.ASC));
+
+		List<Product> rows;
+		if (cursor == null || cursor.isLast()) {
+			rows = repository.findSlice(limit);
+		} else if (order == ProductCursor.Order.PRICE) {
+			rows = backward
+					? repository.findSliceBeforePrice(cursor.getPrice(), cursor.getId(), limit)
+					: repository.findSliceAfterPrice(cursor.getPrice(), cursor.getId(), limit);
+		} else {
+			rows = backward
+					? repository.findSliceBeforeId(cursor.getId(), limit)
+					: repository.findSliceAfterId(cursor.getId(), limit);
+		}
+
+		boolean more = rows.size() > fetch;
+		rows = new ArrayList<Product>(more ? rows.subList(0, fetch) : rows);
+		if (rows.isEmpty() && cursor != null) {
+			// The rows around the cursor are gone; start over rather than show an empty page
+			return findPage(null, order, size);
+		}
+		if (backward) {
+			Collections.reverse(rows);
+		}
+
+		int totalPages = (int) Math.max(1, (count + size - 1) / size);
+		int number;
+		boolean hasPrevious;
+		boolean hasNext;
+		if (backward) {
+			hasPrevious = more;
+			hasNext = !cursor.isLast();
+			number = !more ? 0 : Math.max(1, cursor.isLast() ? totalPages - 1 : cursor.getPage());
+		} else {
+			hasPrevious = cursor != null;
+			hasNext = more;
+			number = cursor == null ? 0 : cursor.getPage();
+		}
+		// The count may be stale; never contradict what the seek itself found
+		totalPages = hasNext ? Math.max(totalPages, number + 2) : number + 1;
+
+		return toKeysetPage(rows, order, number, totalPages, hasPrevious, hasNext);
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public KeysetPage<Product> findPage(int pageNumber, ProductCursor.Order order, int size) {
+		Page<Product> page = findAll(new PageRequest(pageNumber, size, sort(order, Sort.Direction.ASC)));
+		if (!page.hasContent()) {
+			return findPage(null, order, size);
+		}
+		return toKeysetPage(page.getContent(), order, page.getNumber(), page.getTotalPages(),
+				page.hasPrevious(), page.hasNext());
+	}
+
+	private static KeysetPage<Product> toKeysetPage(List<Product> rows, ProductCursor.Order order, int number,
+													int totalPages, boolean hasPrevious, boolean hasNext) {
+		String previous = hasPrevious ? ProductCursor.before(order, number - 1, rows.get(0)).encode() : null;
+		String next = hasNext ? ProductCursor.after(order, number + 1, rows.get(rows.size() - 1)).encode() : null;
+		String last = hasNext ? ProductCursor.last(order).encode() : null;
+		return new KeysetPage<Product>(rows, number, totalPages, previous, next, last);
 	}
 
+	/**
+	 * Listing order; product id breaks ties so every row has a unique position.
+	 */
+	private static Sort sort(ProductCursor.Order order, Sort.Direction direction) {
+		Sort byId = new Sort(direction, "productId");
+		return order == ProductCursor.Order.PRICE ? new Sort(direction, "price").and(byId) : byId;
+	}
+
+	private long count() {
+		Long count = cache.getCount();
+		if (count == null) {
+			long stamp = cache.pageStamp();
+			count = repository.count();
+			cache.putCount(count, stamp);
+		}
+		return count;
+	}
+
+	/**
+	 * Not in a read-only transaction itself, so a product this node wrote
+	 * moments ago can still be read on the primary.
+	 */
 	@Override
 	public Product findById(Long id) {
-		Product result = repository.findOne(id);
+		Product result = cache.get(id);
+		if (result == null) {
+			long stamp = cache.stamp(id);
+			result = cache.isRecentlyWritten(id) ? repository.findCurrent(id) : repository.findOne(id);
+			cache.put(result, stamp);
+		}
 		
 		return result;
 	}
 
 	@Override
-	public void save(Product product) {
-		repository.save(product);
+	public Map<Long, Product> findByIds(Collection<Long> ids) {
+		Map<Long, Product> result = new HashMap<Long, Product>();
+		List<Long> misses = new ArrayList<Long>();
+		List<Long> written = new ArrayList<Long>();
+		Map<Long, Long> stamps = new HashMap<Long, Long>();
+		for (Long id : ids) {
+			Product product = cache.get(id);
+			if (product != null) {
+				result.put(id, product);
+				continue;
+			}
+			stamps.put(id, cache.stamp(id));
+			if (cache.isRecentlyWritten(id)) {
+				written.add(id);
+			} else {
+				misses.add(id);
+			}
+		}
+		List<Product> loaded = new ArrayList<Product>();
+		if (!misses.isEmpty()) {
+			for (Product product : repository.findAll(misses)) {
+				loaded.add(product);
+			}
+		}
+		if (!written.isEmpty()) {
+			loaded.addAll(repository.findAllCurrent(written));
+		}
+		for (Product product : loaded) {
+			cache.put(product, stamps.get(product.getId()));
+			result.put(product.getId(), product);
+		}
+		return result;
+	}
+
+	/**
+	 * Not transactional itself: each attempt commits on its own so a lost
+	 * optimistic lock can be retried. A retry replays the caller's changes onto
+	 * the current row: stock as a difference from the level it read, so units
+	 * reserved in the meantime are kept, and other fields only where the
+	 * caller changed them.
+	 */
+	@Override
+	public void save(final Product product) {
+		Product saved = stockWriteRetry.execute(new StockWriteRetry.Attempt<Product>() {
+			@Override
+			public Product run(int attempt) {
+				return repository.save(attempt == 1 || product.getId() == null ? product : rebase(product));
+			}
+		});
+		cache.invalidate(saved.getId());
+		cache.put(saved);
+		searchIndex.index(saved);
+	}
+
+	/**
+	 * @throws ConcurrencyFailureException if a field the caller changed was
+	 * also changed by someone else, or the caller's copy does not say what it
+	 * was read with
+	 */
+	private Product rebase(Product change) {
+		// On the primary: the replica may not have the write that won yet
+		Product current = repository.findCurrent(change.getId());
+		if (current == null) {
+			throw new ObjectOptimisticLockingFailureException(Product.class, change.getId());
+		}
+		Product loaded = change.getLoaded();
+		if (loaded == null) {
+			throw new ConcurrencyFailureException("Product " + change.getId()
+					+ " was changed concurrently and the change cannot be replayed, it was not read through ProductService");
+		}
+		current.setName(merge(change, "name", loaded.getName(), change.getName(), current.getName()));
+		current.setDesc(merge(change, "desc", loaded.getDesc(), change.getDesc(), current.getDesc()));
+		current.setThumbImageName(merge(change, "thumbImageName",
+				loaded.getThumbImageName(), change.getThumbImageName(), current.getThumbImageName()));
+		current.setFullImageName(merge(change, "fullImageName",
+				loaded.getFullImageName(), change.getFullImageName(), current.getFullImageName()));
+		current.setPrice(merge(change, "price", loaded.getPrice(), change.getPrice(), current.getPrice()));
+		if (change.getQuantity() != null && loaded.getQuantity() != null) {
+			int delta = change.getQuantity() - loaded.getQuantity();
+			current.setQuantity(Math.max(0, current.getQuantity() + delta));
+		}
+		return current;
+	}
+
+	/**
+	 * Three-way merge of one field: the caller's value if only the caller
+	 * changed it, the current one otherwise.
+	 */
+	private static <T> T merge(Product change, String field, T loaded, T changed, T current) {
+		if (same(changed, loaded) || same(changed, current)) {
+			return current;
+		}
+		if (same(current, loaded)) {
+			return changed;
+		}
+		throw new ConcurrencyFailureException("Product " + change.getId() + " " + field
+				+ " was changed concurrently to '" + current + "', not replaying '" + changed + "'");
+	}
+
+	private static boolean same(Object a, Object b) {
+		if (a instanceof BigDecimal && b instanceof BigDecimal) {
+			return ((BigDecimal) a).compareTo((BigDecimal) b) == 0;
+		}
+		return ObjectUtils.nullSafeEquals(a, b);
+	}
+
+	@Override
+	public List<SearchHit> search(String query, int limit) {
+		return searchIndex.search(query, limit);
+	}
+
+	@Transactional
+	@Override
+	public boolean tryReserve(Long productId, int quantity) {
+		if (quantity <= 0) {
+			return false;
+		}
+		boolean reserved = repository.decrementQuantity(productId, quantity) == 1;
+		if (reserved) {
+			cache.evict(productId);
+		}
+		return reserved;
+	}
+
+	@Transactional
+	@Override
+	public void release(Long productId, int quantity) {
+		if (quantity > 0 && repository.incrementQuantity(productId, quantity) == 1) {
+			cache.evict(productId);
+		}
+	}
+
+	@Transactional
+	@Override
+	public Set<Long> adjustStock(Map<Long, Integer> changes) {
+		Set<Long> outOfStock = new HashSet<Long>();
+		for (Map.Entry<Long, Integer> change : new TreeMap<Long, Integer>(changes).entrySet()) {
+			if (change.getValue() > 0) {
+				if (!tryReserve(change.getKey(), change.getValue())) {
+					outOfStock.add(change.getKey());
+				}
+			} else {
+				release(change.getKey(), -change.getValue());
+			}
+		}
+		return outOfStock;
 	}
 }
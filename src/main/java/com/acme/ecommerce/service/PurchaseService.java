@@ -6,6 +6,21 @@ public interface PurchaseService {
 	public Iterable<Purchase> findAll();
 	
 	public Purchase findById(Long id);
+
+	/**
+	 * The purchase with its lines and products loaded, so walking the cart
+	 * issues no further queries. Always read on the primary, so a purchase
+	 * saved moments ago is found even while the replica lags.
+	 */
+	public Purchase findWithLinesAndProducts(Long id);
+
+	/**
+	 * Like {@link #findWithLinesAndProducts(Long)}, with the shipping and
+	 * billing addresses fetched in the same query.
+	 */
+	public Purchase findForConfirmation(Long id);
+
+	public Purchase findByOrderNumber(String orderNumber);
 	
 	public Purchase save(Purchase purchase);
 }
@@ -17,11 +17,13 @@ public class PurchaseServiceImpl implements PurchaseService {
         this.repository = repository;
     }
 	
+	@Transactional(readOnly = true)
 	@Override
 	public Iterable<Purchase> findAll() {
 		return repository.findAll();
 	}
 
+	@Transactional(readOnly = true)
 	@Override
 	public Purchase findById(Long id) {
 		Purchase result = repository.findOne(id);
@@ -29,6 +31,29 @@ public class PurchaseServiceImpl implements PurchaseService {
 		return result;
 	}
 
+	/**
+	 * Read-write, so it runs on the primary: the cart's purchase may have been
+	 * saved by the previous request, and a lagging replica would report it gone.
+	 */
+	@Override
+	public Purchase findWithLinesAndProducts(Long id) {
+		return repository.findWithLinesAndProducts(id);
+	}
+
+	/**
+	 * On the primary, like {@link #findWithLinesAndProducts(Long)}.
+	 */
+	@Override
+	public Purchase findForConfirmation(Long id) {
+		return repository.findForConfirmation(id);
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public Purchase findByOrderNumber(String orderNumber) {
+		return repository.findByOrderNumber(orderNumber);
+	}
+
 	@Override
 	public Purchase save(Purchase purchase) {
 		Purchase result = repository.save(purchase);
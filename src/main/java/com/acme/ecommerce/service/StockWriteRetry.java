@@ -0,0 +1,105 @@
+package com.acme.ecommerce.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs product writes that are checked against the entity version, retrying
+ * up to {@code productStock.maxAttempts} times when another writer got there
+ * first. Between attempts it sleeps a random time of up to
+ * {@code productStock.backoffMillis} doubled per attempt, capped at
+ * {@code productStock.maxBackoffMillis}, so writers colliding on a hot
+ * product do not collide again in lockstep.
+ * <p>
+ * Each attempt must run in its own transaction, as a transaction that lost
+ * an optimistic lock is marked for rollback.
+ * <p>
+ * Only {@link ProductService#save(com.acme.ecommerce.domain.Product)} writes
+ * through here, and the storefront itself never calls it; it is there for
+ * catalog maintenance and imports. The stock changes made while shopping,
+ * {@code tryReserve} and {@code release}, are single conditional updates
+ * that cannot lose a write and need no retry.
+ */
+@Component
+public class StockWriteRetry implements PublicMetrics {
+
+	final Logger logger = LoggerFactory.getLogger(StockWriteRetry.class);
+
+	public interface Attempt<T> {
+		/**
+		 * @param attempt 1 for the first attempt
+		 */
+		T run(int attempt);
+	}
+
+	private final int maxAttempts;
+	private final long backoffMillis;
+	private final long maxBackoffMillis;
+
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong conflicts = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong exhausted = new AtomicLong();
+
+	@Autowired
+	public StockWriteRetry(@Value("${productStock.maxAttempts:4}") int maxAttempts,
+						   @Value("${productStock.backoffMillis:10}") long backoffMillis,
+						   @Value("${productStock.maxBackoffMillis:200}") long maxBackoffMillis) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public <T> T execute(Attempt<T> attempt) {
+		writes.incrementAndGet();
+		for (int i = 1; ; i++) {
+			try {
+				return attempt.run(i);
+			} catch (OptimisticLockingFailureException e) {
+				conflicts.incrementAndGet();
+				if (i >= maxAttempts) {
+					exhausted.incrementAndGet();
+					logger.warn("Giving up product write after {} conflicting attempts", i);
+					throw e;
+				}
+				logger.debug("Product write conflicted on attempt {}, retrying", i);
+				retries.incrementAndGet();
+				backoff(i);
+			}
+		}
+	}
+
+	private void backoff(int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+		if (ceiling <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+		metrics.add(new Metric<Long>("productStock.writes", writes.get()));
+		metrics.add(new Metric<Long>("productStock.conflicts", conflicts.get()));
+		metrics.add(new Metric<Long>("productStock.retries", retries.get()));
+		metrics.add(new Metric<Long>("productStock.retriesExhausted", exhausted.get()));
+		return metrics;
+	}
+}
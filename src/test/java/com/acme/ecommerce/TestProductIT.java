@@ -3,22 +3,48 @@ package com.acme.ecommerce;
 import com.acme.ecommerce.config.PersistenceConfig;
 import com.acme.ecommerce.domain.Product;
 import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.search.ProductSearchIndex;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCache;
+import com.acme.ecommerce.service.ProductCursor;
+import com.acme.ecommerce.service.ProductService;
+import com.acme.ecommerce.service.ProductServiceImpl;
+import com.acme.ecommerce.service.StockWriteRetry;
 import com.github.springtestdbunit.DbUnitTestExecutionListener;
 import com.github.springtestdbunit.annotation.DatabaseSetup;
 import com.github.springtestdbunit.annotation.ExpectedDatabase;
 import com.github.springtestdbunit.assertion.DatabaseAssertionMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
  
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = {PersistenceConfig.class})
@@ -30,6 +56,23 @@ public class TestProductIT {
  
     @Autowired
     private ProductRepository repository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Statistics statistics;
+
+    @Before
+    public void clearSecondLevelCache() {
+        // DBUnit reloads the tables behind Hibernate's back
+        entityManagerFactory.getCache().evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+    }
      
     @Test
     public void findAll_ShouldReturnFourProductEntry() {
@@ -60,4 +103,203 @@ public class TestProductIT {
     	
     	assertThat(savedProduct.getId()).isNotNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void decrementQuantity_ShouldOnlyReserveAvailableStock() {
+        assertThat(repository.decrementQuantity(1L, 3)).isEqualTo(1);
+        assertThat(repository.decrementQuantity(1L, 3)).isEqualTo(0);
+        assertThat(repository.findOne(1L).getQuantity()).isEqualTo(2);
+    }
+
+    @Test
+    public void incrementQuantity_ShouldReturnStock() {
+        assertThat(repository.incrementQuantity(1L, 2)).isEqualTo(1);
+        assertThat(repository.findOne(1L).getQuantity()).isEqualTo(7);
+    }
+
+    @Test
+    public void stockUpdates_ShouldBumpVersion() {
+        assertThat(repository.findOne(1L).getVersion()).isEqualTo(0L);
+
+        repository.decrementQuantity(1L, 1);
+        repository.decrementQuantity(1L, 100);
+        repository.incrementQuantity(1L, 1);
+
+        assertThat(repository.findOne(1L).getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    public void save_ShouldReplayStaleStockChangeOntoCurrentRow() {
+        StockWriteRetry retry = new StockWriteRetry(4, 0, 0);
+        ProductService service = new ProductServiceImpl(repository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                retry);
+        Product stale = service.findById(1L);
+        // Reserved by a shopper after the copy was read
+        assertThat(service.tryReserve(1L, 2)).isTrue();
+
+        stale.setQuantity(stale.getQuantity() + 10);
+        stale.setPrice(new BigDecimal("9.99"));
+        service.save(stale);
+
+        Product saved = repository.findOne(1L);
+        assertThat(saved.getQuantity()).isEqualTo(13);
+        assertThat(saved.getPrice()).isEqualByComparingTo("9.99");
+        assertThat(saved.getVersion()).isEqualTo(2L);
+        assertThat(retry.metrics()).extracting("name", "value")
+                .contains(tuple("productStock.conflicts", 1L), tuple("productStock.retries", 1L));
+    }
+
+    @Test
+    public void save_ShouldMergeConcurrentEditsOfDifferentFields() {
+        ProductService service = new ProductServiceImpl(repository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                new StockWriteRetry(4, 0, 0));
+        Product first = service.findById(1L);
+        Product second = service.findById(1L);
+
+        first.setName("Renamed");
+        service.save(first);
+        second.setPrice(new BigDecimal("9.99"));
+        service.save(second);
+
+        Product saved = repository.findOne(1L);
+        assertThat(saved.getName()).isEqualTo("Renamed");
+        assertThat(saved.getPrice()).isEqualByComparingTo("9.99");
+    }
+
+    @Test
+    public void save_ShouldRefuseToOverwriteConcurrentEditOfSameField() {
+        ProductService service = new ProductServiceImpl(repository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                new StockWriteRetry(4, 0, 0));
+        Product first = service.findById(1L);
+        Product second = service.findById(1L);
+
+        first.setDesc("First description");
+        service.save(first);
+        second.setDesc("Second description");
+        try {
+            service.save(second);
+            fail("Expected ConcurrencyFailureException");
+        } catch (ConcurrencyFailureException e) {
+            assertThat(e).isNotInstanceOf(OptimisticLockingFailureException.class);
+        }
+
+        assertThat(repository.findOne(1L).getDesc()).isEqualTo("First description");
+    }
+
+    @Test
+    public void adjustStock_ShouldSkipProductsOutOfStock() {
+        ProductService service = new ProductServiceImpl(repository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                new StockWriteRetry(4, 0, 0));
+        Map<Long, Integer> changes = new HashMap<Long, Integer>();
+        changes.put(1L, 2);
+        changes.put(2L, 100);
+        changes.put(3L, -1);
+
+        assertThat(service.adjustStock(changes)).containsOnly(2L);
+
+        assertThat(repository.findOne(1L).getQuantity()).isEqualTo(3);
+        assertThat(repository.findOne(2L).getQuantity()).isEqualTo(5);
+        assertThat(repository.findOne(3L).getQuantity()).isEqualTo(6);
+    }
+
+    @Test
+    public void readOnlyTransaction_ShouldNotFlushChanges() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                repository.findOne(1L).setName("Renamed");
+                return null;
+            }
+        });
+
+        entityManagerFactory.getCache().evictAll();
+        assertThat(repository.findOne(1L).getName()).isNotEqualTo("Renamed");
+    }
+
+    @Test
+    public void findSliceAfterPrice_ShouldSeekPastCursorRow() {
+        List<Product> slice = repository.findSliceAfterPrice(new BigDecimal("2.22"), 2L,
+                new PageRequest(0, 5, new Sort("price").and(new Sort("productId"))));
+
+        assertThat(slice).extracting("id").containsExactly(3L, 4L);
+    }
+
+    @Test
+    public void findSliceBeforeId_ShouldReturnClosestRowsFirst() {
+        List<Product> slice = repository.findSliceBeforeId(4L, new PageRequest(0, 2, new Sort(Sort.Direction.DESC, "productId")));
+
+        assertThat(slice).extracting("id").containsExactly(3L, 2L);
+    }
+
+    @Test
+    public void findPage_ShouldWalkKeysetPagesBothWays() {
+        ProductService service = new ProductServiceImpl(repository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                new StockWriteRetry(4, 0, 0));
+
+        KeysetPage<Product> first = service.findPage(null, ProductCursor.Order.PRICE, 3);
+        assertThat(first.getContent()).extracting("id").containsExactly(1L, 2L, 3L);
+        assertThat(first.getNumber()).isEqualTo(0);
+        assertThat(first.getTotalPages()).isEqualTo(2);
+        assertThat(first.hasPrevious()).isFalse();
+
+        KeysetPage<Product> second = service.findPage(ProductCursor.decode(first.getNextCursor()), null, 3);
+        assertThat(second.getContent()).extracting("id").containsExactly(4L);
+        assertThat(second.getNumber()).isEqualTo(1);
+        assertThat(second.hasNext()).isFalse();
+
+        KeysetPage<Product> back = service.findPage(ProductCursor.decode(second.getPreviousCursor()), null, 3);
+        assertThat(back.getContent()).extracting("id").containsExactly(1L, 2L, 3L);
+        assertThat(back.getNumber()).isEqualTo(0);
+        assertThat(back.hasPrevious()).isFalse();
+
+        KeysetPage<Product> last = service.findPage(ProductCursor.decode(first.getLastCursor()), null, 3);
+        assertThat(last.getContent()).extracting("id").containsExactly(4L);
+        assertThat(last.getNumber()).isEqualTo(1);
+        assertThat(last.hasPrevious()).isTrue();
+    }
+
+    @Test
+    public void findByIds_ShouldFillCacheMissesWithOneQuery() {
+        ProductCache cache = new ProductCache(10, 10, 60, 0);
+        ProductService service = new ProductServiceImpl(repository, cache, new ProductSearchIndex(), new StockWriteRetry(4, 0, 0));
+        service.findById(2L);
+
+        Map<Long, Product> products = service.findByIds(Arrays.asList(1L, 2L, 3L, 99L));
+
+        assertThat(products.keySet()).containsOnly(1L, 2L, 3L);
+        assertThat(products.get(3L).getId()).isEqualTo(3L);
+        assertThat(cache.get(1L)).isNotNull();
+        assertThat(cache.get(3L)).isNotNull();
+    }
+
+    @Test
+    public void find_ShouldServeProductFromSecondLevelCache() {
+        EntityManager first = entityManagerFactory.createEntityManager();
+        first.find(Product.class, 2L);
+        first.close();
+        long statements = statistics.getPrepareStatementCount();
+
+        EntityManager second = entityManagerFactory.createEntityManager();
+        Product product = second.find(Product.class, 2L);
+        second.close();
+
+        assertThat(product.getName()).isEqualTo("Item 2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+        assertThat(statistics.getSecondLevelCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void findSlice_ShouldShowStockTakenSinceLastListing() {
+        PageRequest page = new PageRequest(0, 3, new Sort("productId"));
+        repository.findSlice(page);
+        repository.decrementQuantity(1L, 1);
+
+        List<Product> second = repository.findSlice(page);
+
+        assertThat(second).extracting("id").containsExactly(1L, 2L, 3L);
+        assertThat(second.get(0).getQuantity()).isEqualTo(4);
+        assertThat(statistics.getQueryCachePutCount()).isZero();
+    }
+}
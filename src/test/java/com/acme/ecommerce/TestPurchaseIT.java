@@ -8,15 +8,21 @@ import com.github.springtestdbunit.annotation.DatabaseSetup;
 import com.github.springtestdbunit.annotation.ExpectedDatabase;
 import com.github.springtestdbunit.assertion.DatabaseAssertionMode;
 import org.hibernate.LazyInitializationException;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
 
+import javax.persistence.EntityManagerFactory;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
@@ -30,6 +36,18 @@ public class TestPurchaseIT {
  
     @Autowired
     private PurchaseRepository repository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @Before
+    public void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+    }
     
     @Test
     public void findAll_ShouldReturnThreePurchaseEntry() {
@@ -51,6 +69,54 @@ public class TestPurchaseIT {
         }
     }
     
+    @Test
+    public void findWithLinesAndProducts_ShouldLoadCartWithoutPerLineQueries() {
+        Purchase purchase = repository.findWithLinesAndProducts(2L);
+
+        // Walked outside any session, so anything not fetched would throw
+        assertThat(purchase.getProductPurchases()).hasSize(2);
+        assertThat(purchase.getProductPurchases().get(0).getProduct().getName()).isNotNull();
+        assertThat(purchase.getProductPurchases().get(1).getProduct().getName()).isNotNull();
+        // One statement for purchase, lines and products, one per eager address
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void findForConfirmation_ShouldLoadCheckoutGraphInOneQuery() {
+        Purchase purchase = repository.findForConfirmation(2L);
+
+        assertThat(purchase.getProductPurchases()).hasSize(2);
+        assertThat(purchase.getProductPurchases().get(1).getProduct().getName()).isNotNull();
+        assertThat(purchase.getShippingAddress().getFirstName()).isEqualTo("first name 1");
+        assertThat(purchase.getBillingAddress().getFirstName()).isEqualTo("first name 2");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void findForConfirmation_ShouldLoadPurchaseWithoutLines() {
+        Purchase purchase = repository.findForConfirmation(1L);
+
+        assertThat(purchase.getProductPurchases()).isEmpty();
+        assertThat(purchase.getShippingAddress()).isNull();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void findByOrderNumber_ShouldReturnSecondPurchaseEntry() {
+        Purchase searchResult = repository.findByOrderNumber("123456");
+
+        assertThat(searchResult.getId()).isEqualTo(2L);
+        assertThat(repository.findByOrderNumber("000000")).isNull();
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void save_ShouldRejectDuplicateOrderNumber() {
+        Purchase duplicate = repository.findOne(1L);
+        duplicate.setOrderNumber("123456");
+
+        repository.save(duplicate);
+    }
+
     @Test
     @ExpectedDatabase(value="/save-purchase.xml", assertionMode=DatabaseAssertionMode.NON_STRICT)
     public void saveOne_ShouldAddAfterInitialRows() {
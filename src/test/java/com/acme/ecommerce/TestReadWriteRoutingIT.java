@@ -0,0 +1,138 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.config.PersistenceConfig;
+import com.acme.ecommerce.config.ReadWriteRoutingDataSource;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.repository.PurchaseRepository;
+import com.acme.ecommerce.search.ProductSearchIndex;
+import com.acme.ecommerce.service.ProductCache;
+import com.acme.ecommerce.service.ProductService;
+import com.acme.ecommerce.service.ProductServiceImpl;
+import com.acme.ecommerce.service.PurchaseService;
+import com.acme.ecommerce.service.PurchaseServiceImpl;
+import com.acme.ecommerce.service.StockWriteRetry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing through the application's own JpaTransactionManager, which binds
+ * a connection handle when the transaction begins.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {PersistenceConfig.class})
+@TestPropertySource(properties = {
+        "dataSource.url=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1",
+        // The same database through a second pool, so the schema is there and the routes can be told apart
+        "dataSource.replica.url=jdbc:h2:mem:routing;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE"})
+public class TestReadWriteRoutingIT {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ProductRepository repository;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    private Map<String, Number> baseline;
+
+    @Before
+    public void setup() {
+        assertThat(dataSource).isInstanceOf(ReadWriteRoutingDataSource.class);
+        baseline = metrics();
+    }
+
+    @Test
+    public void readOnlyTransaction_ShouldUseReplica() {
+        countInTransaction(true);
+
+        assertThat(routed("datasource.routes.replica")).isEqualTo(1);
+        assertThat(routed("datasource.routes.primary")).isEqualTo(0);
+    }
+
+    @Test
+    public void readWriteTransaction_ShouldUsePrimary() {
+        countInTransaction(false);
+
+        assertThat(routed("datasource.routes.primary")).isEqualTo(1);
+        assertThat(routed("datasource.routes.replica")).isEqualTo(0);
+    }
+
+    @Test
+    public void findById_ShouldReadProductJustWrittenOnPrimary() {
+        ProductService service = new ProductServiceImpl(repository, new ProductCache(10, 10, 60, 60000),
+                new ProductSearchIndex(), new StockWriteRetry(4, 0, 0));
+        service.findById(1L);
+        assertThat(routed("datasource.routes.replica")).isEqualTo(1);
+
+        assertThat(service.tryReserve(1L, 1)).isTrue();
+        baseline = metrics();
+        service.findById(1L);
+
+        assertThat(routed("datasource.routes.primary")).isEqualTo(1);
+        assertThat(routed("datasource.routes.replica")).isEqualTo(0);
+    }
+
+    @Test
+    public void findWithLinesAndProducts_ShouldReadCartPurchaseOnPrimary() {
+        // Proxied with the service's own @Transactional attributes, as in the application
+        ProxyFactory proxy = new ProxyFactory(new PurchaseServiceImpl(purchaseRepository));
+        proxy.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+        PurchaseService service = (PurchaseService) proxy.getProxy();
+        Purchase saved = service.save(new Purchase());
+        baseline = metrics();
+
+        assertThat(service.findWithLinesAndProducts(saved.getId())).isNotNull();
+        assertThat(service.findForConfirmation(saved.getId())).isNotNull();
+
+        assertThat(routed("datasource.routes.replica")).isEqualTo(0);
+        assertThat(routed("datasource.routes.primary")).isEqualTo(2);
+    }
+
+    private long countInTransaction(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(new TransactionCallback<Long>() {
+            @Override
+            public Long doInTransaction(TransactionStatus status) {
+                return repository.count();
+            }
+        });
+    }
+
+    private long routed(String metric) {
+        return metrics().get(metric).longValue() - baseline.get(metric).longValue();
+    }
+
+    private Map<String, Number> metrics() {
+        Map<String, Number> values = new HashMap<String, Number>();
+        for (Metric<?> metric : ((ReadWriteRoutingDataSource) dataSource).metrics()) {
+            values.put(metric.getName(), metric.getValue());
+        }
+        return values;
+    }
+}
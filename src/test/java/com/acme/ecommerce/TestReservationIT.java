@@ -0,0 +1,241 @@
+package com.acme.ecommerce;
+
+import com.acme.ecommerce.config.PersistenceConfig;
+import com.acme.ecommerce.domain.Reservation;
+import com.acme.ecommerce.repository.AddressRepository;
+import com.acme.ecommerce.repository.ProductPurchaseRepository;
+import com.acme.ecommerce.repository.ProductRepository;
+import com.acme.ecommerce.repository.PurchaseRepository;
+import com.acme.ecommerce.repository.ReservationRepository;
+import com.acme.ecommerce.reservation.HashedTimingWheel;
+import com.acme.ecommerce.reservation.ReclaimResult;
+import com.acme.ecommerce.reservation.ReservationService;
+import com.acme.ecommerce.reservation.ReservationServiceImpl;
+import com.acme.ecommerce.search.ProductSearchIndex;
+import com.acme.ecommerce.service.ProductCache;
+import com.acme.ecommerce.service.ProductServiceImpl;
+import com.acme.ecommerce.service.StockWriteRetry;
+import com.github.springtestdbunit.DbUnitTestExecutionListener;
+import com.github.springtestdbunit.annotation.DatabaseSetup;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.support.DependencyInjectionTestExecutionListener;
+import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = {PersistenceConfig.class})
+@TestExecutionListeners({DependencyInjectionTestExecutionListener.class,
+        TransactionalTestExecutionListener.class,
+        DbUnitTestExecutionListener.class})
+@DatabaseSetup("/it-reservations.xml")
+public class TestReservationIT {
+
+    private static final long TTL_MILLIS = 1800 * 1000L;
+
+    @Autowired
+    private ReservationRepository repository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PurchaseRepository purchaseRepository;
+
+    @Autowired
+    private ProductPurchaseRepository productPurchaseRepository;
+
+    @Autowired
+    private AddressRepository addressRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private HashedTimingWheel<Long> wheel;
+    private ReservationService service;
+
+    @Before
+    public void setup() {
+        // Not part of the DBUnit data set, so left over from other tests
+        repository.deleteAll();
+        entityManagerFactory.getCache().evictAll();
+        wheel = new HashedTimingWheel<Long>(1000, 512, System.currentTimeMillis());
+        service = new ReservationServiceImpl(repository, purchaseRepository, productPurchaseRepository,
+                addressRepository,
+                new ProductServiceImpl(productRepository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                new StockWriteRetry(4, 0, 0)),
+                wheel, TTL_MILLIS / 1000);
+    }
+
+    @Test
+    public void hold_ShouldKeepFirstReservationTimeOfChangedLines() {
+        hold(11L, null, quantities(1L, 2, 2L, 1));
+        long reservedAt = repository.findByCartId(11L).get(0).getReservedAt();
+
+        hold(11L, null, quantities(1L, 1, 2L, -1));
+
+        List<Reservation> lines = repository.findByCartId(11L);
+        assertThat(lines).hasSize(1);
+        assertThat(lines.get(0).getQuantity()).isEqualTo(3);
+        assertThat(lines.get(0).getReservedAt()).isEqualTo(reservedAt);
+        assertThat(wheel.deadlineOf(11L)).isEqualTo(lines.get(0).getTouchedAt() + TTL_MILLIS);
+    }
+
+    @Test
+    public void hold_ShouldReleaseEmptiedCart() {
+        hold(11L, null, quantities(1L, 2));
+
+        hold(11L, null, quantities(1L, -2));
+
+        assertThat(repository.findByCartId(11L)).isEmpty();
+        assertThat(wheel.deadlineOf(11L)).isEqualTo(-1);
+    }
+
+    @Test
+    public void reconcile_ShouldBackEveryHeldUnitWithStock() {
+        assertThat(reconcile(11L, quantities(1L, 3))).isEqualTo(quantities(1L, 3));
+        assertThat(productRepository.findOne(1L).getQuantity()).isEqualTo(2);
+
+        // The record after the visitor put two units back
+        assertThat(reconcile(11L, quantities(1L, 1))).isEqualTo(quantities(1L, 1));
+        assertThat(productRepository.findOne(1L).getQuantity()).isEqualTo(4);
+
+        // The older record replayed: its units are only held once taken again
+        assertThat(reconcile(11L, quantities(1L, 3))).isEqualTo(quantities(1L, 3));
+        assertThat(reconcile(12L, quantities(1L, 1, 2L, 6))).isEqualTo(quantities(1L, 1));
+
+        assertThat(productRepository.findOne(1L).getQuantity()).isEqualTo(1);
+        assertThat(productRepository.findOne(2L).getQuantity()).isEqualTo(5);
+        assertThat(repository.findByCartId(11L)).extracting("productId", "quantity").containsExactly(tuple(1L, 3));
+        assertThat(repository.findByCartId(12L)).extracting("productId", "quantity").containsExactly(tuple(1L, 1));
+        assertThat(wheel.deadlineOf(12L)).isEqualTo(repository.findByCartId(12L).get(0).getTouchedAt() + TTL_MILLIS);
+    }
+
+    @Test
+    public void reconcile_ShouldReturnStockOfLinesLeftOutOfRecord() {
+        reconcile(11L, quantities(1L, 2, 2L, 1));
+
+        assertThat(reconcile(11L, Collections.<Long, Integer>emptyMap())).isEmpty();
+
+        assertThat(repository.findByCartId(11L)).isEmpty();
+        assertThat(wheel.deadlineOf(11L)).isEqualTo(-1);
+        assertThat(productRepository.findOne(1L).getQuantity()).isEqualTo(5);
+        assertThat(productRepository.findOne(2L).getQuantity()).isEqualTo(5);
+    }
+
+    @Test
+    public void reclaim_ShouldReturnStockAndPurgeUnorderedPurchases() {
+        // Purchase 4 has a shipping address and a line, and no order number
+        hold(11L, 4L, quantities(1L, 2));
+        hold(12L, 2L, quantities(1L, 1, 3L, 1));
+        hold(13L, null, quantities(3L, 4));
+        long cutoff = System.currentTimeMillis() + 1;
+        // Used on another node after this one scheduled it
+        repository.touch(13L, cutoff + 1000);
+
+        ReclaimResult result = reclaim(Arrays.asList(11L, 12L, 13L), cutoff);
+
+        assertThat(result.getCarts()).isEqualTo(2);
+        assertThat(result.getUnits()).isEqualTo(4);
+        assertThat(result.getPurchases()).isEqualTo(1);
+        assertThat(productRepository.findOne(1L).getQuantity()).isEqualTo(8);
+        assertThat(productRepository.findOne(3L).getQuantity()).isEqualTo(6);
+        assertThat(purchaseRepository.findOne(4L)).isNull();
+        assertThat(addressRepository.findOne(3L)).isNull();
+        assertThat(productPurchaseRepository.findOne(3L)).isNull();
+        // Placed orders are never purged
+        assertThat(purchaseRepository.findOne(2L)).isNotNull();
+        assertThat(repository.findByCartId(13L)).hasSize(1);
+        assertThat(wheel.deadlineOf(13L)).isEqualTo(cutoff + 1000 + TTL_MILLIS);
+        assertThat(repository.findByCartId(11L)).isEmpty();
+    }
+
+    @Test
+    public void abandon_ShouldExpireCartOnNextTick() {
+        hold(11L, null, quantities(2L, 2));
+
+        service.abandon(11L);
+
+        long now = System.currentTimeMillis();
+        assertThat(wheel.deadlineOf(11L)).isLessThanOrEqualTo(now);
+        List<HashedTimingWheel.Timeout<Long>> due = wheel.advance(now + 1000);
+        assertThat(due).hasSize(1);
+        ReclaimResult result = reclaim(Collections.singletonList(due.get(0).getKey()), now - TTL_MILLIS);
+        assertThat(result.getUnits()).isEqualTo(2);
+        assertThat(productRepository.findOne(2L).getQuantity()).isEqualTo(7);
+    }
+
+    @Test
+    public void recover_ShouldScheduleEveryCartHoldingStock() {
+        hold(11L, null, quantities(1L, 1));
+        hold(12L, null, quantities(2L, 1));
+        HashedTimingWheel<Long> restarted = new HashedTimingWheel<Long>(1000, 512, System.currentTimeMillis());
+        ReservationService recovered = new ReservationServiceImpl(repository, purchaseRepository,
+                productPurchaseRepository, addressRepository,
+                new ProductServiceImpl(productRepository, new ProductCache(10, 10, 60, 0), new ProductSearchIndex(),
+                new StockWriteRetry(4, 0, 0)),
+                restarted, TTL_MILLIS / 1000);
+
+        assertThat(recovered.recover()).isEqualTo(2);
+        assertThat(restarted.deadlineOf(11L)).isEqualTo(repository.findByCartId(11L).get(0).getTouchedAt() + TTL_MILLIS);
+        assertThat(restarted.size()).isEqualTo(2);
+    }
+
+    private void hold(final long cartId, final Long purchaseId, final Map<Long, Integer> quantities) {
+        new TransactionTemplate(transactionManager).execute(new TransactionCallback<Object>() {
+            @Override
+            public Object doInTransaction(TransactionStatus status) {
+                service.hold(cartId, purchaseId, quantities);
+                return null;
+            }
+        });
+    }
+
+    private Map<Long, Integer> reconcile(final long cartId, final Map<Long, Integer> quantities) {
+        return new TransactionTemplate(transactionManager).execute(new TransactionCallback<Map<Long, Integer>>() {
+            @Override
+            public Map<Long, Integer> doInTransaction(TransactionStatus status) {
+                return service.reconcile(cartId, null, quantities);
+            }
+        });
+    }
+
+    private ReclaimResult reclaim(final Collection<Long> cartIds, final long cutoff) {
+        return new TransactionTemplate(transactionManager).execute(new TransactionCallback<ReclaimResult>() {
+            @Override
+            public ReclaimResult doInTransaction(TransactionStatus status) {
+                return service.reclaim(cartIds, cutoff);
+            }
+        });
+    }
+
+    private static Map<Long, Integer> quantities(Object... productIdsAndQuantities) {
+        Map<Long, Integer> quantities = new HashMap<Long, Integer>();
+        for (int i = 0; i < productIdsAndQuantities.length; i += 2) {
+            quantities.put((Long) productIdsAndQuantities[i], (Integer) productIdsAndQuantities[i + 1]);
+        }
+        return quantities;
+    }
+}
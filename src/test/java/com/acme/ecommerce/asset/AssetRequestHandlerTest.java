@@ -0,0 +1,93 @@
+package com.acme.ecommerce.asset;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AssetRequestHandlerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private AssetRequestHandler handler;
+
+	@Before
+	public void setup() throws Exception {
+		FileCopyUtils.copy("body {}".getBytes(StandardCharsets.UTF_8), new File(folder.getRoot(), "site.css"));
+		FileCopyUtils.copy("gzipped".getBytes(StandardCharsets.UTF_8), new File(folder.getRoot(), "site.css.gz"));
+		handler = new AssetRequestHandler(3600);
+		handler.setServletContext(new MockServletContext() {
+			@Override
+			public String getMimeType(String filePath) {
+				// Known to servlet containers, not to the mock
+				return filePath.endsWith(".css") ? "text/css" : super.getMimeType(filePath);
+			}
+		});
+		handler.setLocations(Collections.<Resource>singletonList(new FileSystemResource(folder.getRoot().getPath() + "/")));
+		handler.setResourceResolvers(Arrays.<ResourceResolver>asList(
+				new AssetCachingResourceResolver("test"),
+				new PrecompressedResourceResolver(),
+				new VersionResourceResolver().addContentVersionStrategy("/**"),
+				new PathResourceResolver()));
+		handler.afterPropertiesSet();
+	}
+
+	@Test
+	public void fingerprintedAsset_ShouldBeCachedAsImmutable() throws Exception {
+		String hash = DigestUtils.md5DigestAsHex("body {}".getBytes(StandardCharsets.UTF_8));
+
+		MockHttpServletResponse response = get("site-" + hash + ".css", "gzip");
+
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(response.getHeader("Cache-Control")).isEqualTo("public, max-age=3600, immutable");
+		assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+		assertThat(response.getHeader("Vary")).isEqualTo("Accept-Encoding");
+		assertThat(response.getContentType()).isEqualTo("text/css");
+		assertThat(response.getContentAsString()).isEqualTo("gzipped");
+	}
+
+	@Test
+	public void plainAsset_ShouldBeRevalidated() throws Exception {
+		MockHttpServletResponse response = get("site.css", null);
+
+		assertThat(response.getHeader("Cache-Control")).isEqualTo("no-cache");
+		assertThat(response.getHeader("Content-Encoding")).isNull();
+		assertThat(response.getContentAsString()).isEqualTo("body {}");
+	}
+
+	@Test
+	public void cachedResolution_ShouldFollowAcceptEncoding() throws Exception {
+		assertThat(get("site.css", "gzip").getContentAsString()).isEqualTo("gzipped");
+		assertThat(get("site.css", null).getContentAsString()).isEqualTo("body {}");
+	}
+
+	private MockHttpServletResponse get(String path, String acceptEncoding) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/css/" + path);
+		request.setAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE, path);
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		handler.handleRequest(request, response);
+		return response;
+	}
+}
@@ -0,0 +1,137 @@
+package com.acme.ecommerce.asset;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.servlet.resource.EncodedResource;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+import org.springframework.web.servlet.resource.VersionedResource;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrecompressedResourceResolverTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ResourceResolverChain chain;
+	private List<Resource> locations;
+
+	@Before
+	public void setup() throws IOException {
+		write("site.css", "body {}");
+		write("site.css.gz", "gzipped");
+		write("site.css.br", "brotli");
+		write("site.js", "var a;");
+		write("site.js.gz", "gzipped");
+		chain = new Chain(Arrays.<ResourceResolver>asList(
+				new PrecompressedResourceResolver(),
+				new VersionResourceResolver().addContentVersionStrategy("/**"),
+				new PathResourceResolver()));
+		locations = Collections.<Resource>singletonList(new FileSystemResource(folder.getRoot().getPath() + "/"));
+	}
+
+	@Test
+	public void resolveResource_ShouldPreferBrotli() throws IOException {
+		Resource resource = chain.resolveResource(request("gzip, deflate, br"), "site.css", locations);
+
+		assertThat(((EncodedResource) resource).getContentEncoding()).isEqualTo("br");
+		assertThat(read(resource)).isEqualTo("brotli");
+		assertThat(resource.getFilename()).isEqualTo("site.css");
+	}
+
+	@Test
+	public void resolveResource_ShouldFallBackToGzip() throws IOException {
+		Resource brRefused = chain.resolveResource(request("br;q=0, gzip"), "site.css", locations);
+		Resource noBrotliCopy = chain.resolveResource(request("br, gzip"), "site.js", locations);
+
+		assertThat(((EncodedResource) brRefused).getContentEncoding()).isEqualTo("gzip");
+		assertThat(((EncodedResource) noBrotliCopy).getContentEncoding()).isEqualTo("gzip");
+	}
+
+	@Test
+	public void resolveResource_ShouldServePlainAssetWithoutAcceptedEncoding() throws IOException {
+		Resource resource = chain.resolveResource(request(null), "site.css", locations);
+
+		assertThat(resource).isNotInstanceOf(EncodedResource.class);
+		assertThat(read(resource)).isEqualTo("body {}");
+	}
+
+	@Test
+	public void resolveResource_ShouldKeepVersionOfFingerprintedAsset() throws IOException {
+		String url = chain.resolveUrlPath("site.css", locations);
+		assertThat(url).matches("site-[0-9a-f]{32}\\.css");
+
+		Resource resource = chain.resolveResource(request("gzip"), url, locations);
+
+		assertThat(((EncodedResource) resource).getContentEncoding()).isEqualTo("gzip");
+		assertThat(url).contains(((VersionedResource) resource).getVersion());
+	}
+
+	@Test
+	public void acceptedEncodings_ShouldListSupportedCodingsByPreference() {
+		assertThat(PrecompressedResourceResolver.acceptedEncodings(request("GZIP;q=0.5, deflate, BR;q=0.1")))
+				.containsExactly("br", "gzip");
+		assertThat(PrecompressedResourceResolver.acceptedEncodings(request("identity"))).isEmpty();
+	}
+
+	/**
+	 * Spring's own chain is package-private.
+	 */
+	private static class Chain implements ResourceResolverChain {
+
+		private final List<ResourceResolver> resolvers;
+
+		Chain(List<ResourceResolver> resolvers) {
+			this.resolvers = resolvers;
+		}
+
+		@Override
+		public Resource resolveResource(HttpServletRequest request, String requestPath,
+										List<? extends Resource> locations) {
+			return resolvers.isEmpty() ? null
+					: resolvers.get(0).resolveResource(request, requestPath, locations, next());
+		}
+
+		@Override
+		public String resolveUrlPath(String resourcePath, List<? extends Resource> locations) {
+			return resolvers.isEmpty() ? null : resolvers.get(0).resolveUrlPath(resourcePath, locations, next());
+		}
+
+		private Chain next() {
+			return new Chain(resolvers.subList(1, resolvers.size()));
+		}
+	}
+
+	private static MockHttpServletRequest request(String acceptEncoding) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		return request;
+	}
+
+	private void write(String name, String content) throws IOException {
+		FileCopyUtils.copy(content.getBytes(StandardCharsets.UTF_8), new File(folder.getRoot(), name));
+	}
+
+	private static String read(Resource resource) throws IOException {
+		return new String(FileCopyUtils.copyToByteArray(resource.getInputStream()), StandardCharsets.UTF_8);
+	}
+}
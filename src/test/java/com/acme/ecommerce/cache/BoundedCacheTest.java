@@ -0,0 +1,64 @@
+package com.acme.ecommerce.cache;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedCacheTest {
+
+	private long clock = 0;
+
+	private BoundedCache<Long, String> cacheOf(int maxEntries, long ttlMillis) {
+		return new BoundedCache<Long, String>("test", maxEntries, ttlMillis) {
+			@Override
+			protected long now() {
+				return clock;
+			}
+		};
+	}
+
+	@Test
+	public void get_ShouldCountHitsAndMisses() {
+		BoundedCache<Long, String> cache = cacheOf(10, 0);
+		cache.put(1L, "one");
+
+		assertThat(cache.get(1L)).isEqualTo("one");
+		assertThat(cache.get(2L)).isNull();
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void put_ShouldEvictLeastRecentlyUsedEntry() {
+		BoundedCache<Long, String> cache = cacheOf(2, 0);
+		cache.put(1L, "one");
+		cache.put(2L, "two");
+		cache.get(1L);
+		cache.put(3L, "three");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.get(2L)).isNull();
+		assertThat(cache.get(1L)).isEqualTo("one");
+		assertThat(cache.getEvictions()).isEqualTo(1);
+	}
+
+	@Test
+	public void get_ShouldDropExpiredEntries() {
+		BoundedCache<Long, String> cache = cacheOf(10, 100);
+		cache.put(1L, "one");
+		clock = 100;
+
+		assertThat(cache.get(1L)).isNull();
+		assertThat(cache.size()).isEqualTo(0);
+		assertThat(cache.getEvictions()).isEqualTo(1);
+	}
+
+	@Test
+	public void invalidate_ShouldRemoveEntry() {
+		BoundedCache<Long, String> cache = cacheOf(10, 0);
+		cache.put(1L, "one");
+		cache.invalidate(1L);
+
+		assertThat(cache.get(1L)).isNull();
+	}
+}
@@ -0,0 +1,133 @@
+package com.acme.ecommerce.cart;
+
+import com.acme.ecommerce.domain.CouponCode;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CartStoreTest {
+
+	@Test
+	public void record_ShouldRoundTripThroughEncoding() {
+		Purchase purchase = new Purchase();
+		purchase.setId(42L);
+		List<ProductPurchase> lines = new ArrayList<ProductPurchase>();
+		for (long id = 1; id <= 3; id++) {
+			Product product = new Product();
+			product.setId(id);
+			ProductPurchase line = new ProductPurchase();
+			line.setProduct(product);
+			line.setQuantity((int) id * 2);
+			lines.add(line);
+		}
+		purchase.setProductPurchases(lines);
+		CouponCode coupon = new CouponCode();
+		coupon.setCode("SAVEÉ10");
+
+		CartRecord record = CartRecord.of(7L, purchase, coupon);
+		byte[] data = record.encode();
+		CartRecord decoded = CartRecord.decode(data);
+
+		assertThat(data.length).isEqualTo(8 + 8 + 2 + 8 + 2 + 3 * 12);
+		assertThat(decoded.getCartId()).isEqualTo(7L);
+		assertThat(decoded).isEqualTo(record);
+		assertThat(decoded.getPurchaseId()).isEqualTo(42L);
+		assertThat(decoded.getCouponCode()).isEqualTo("SAVEÉ10");
+		assertThat(decoded.getProductId(2)).isEqualTo(3L);
+		assertThat(decoded.getQuantity(2)).isEqualTo(6);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void decode_ShouldRejectTruncatedRecord() {
+		byte[] data = record(7, 2).encode();
+		byte[] truncated = new byte[data.length - 1];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		CartRecord.decode(truncated);
+	}
+
+	@Test
+	public void offHeapStore_ShouldChainRecordsAcrossSlots() {
+		OffHeapCartStore store = OffHeapCartStore.allocate(32 * 64, 64, 0);
+		CartRecord small = record(1, 0);
+		CartRecord large = record(2, 40);
+
+		store.put("a", small);
+		store.put("b", large);
+
+		assertThat(store.get("a")).isEqualTo(small);
+		assertThat(store.get("b")).isEqualTo(large);
+		// 20 bytes fit one slot, 500 bytes need nine of 60 payload bytes each
+		assertThat(store.bytesUsed()).isEqualTo(10 * 64);
+
+		store.put("b", record(2, 1));
+		assertThat(store.bytesUsed()).isEqualTo(2 * 64);
+		store.remove("a");
+		store.remove("b");
+		assertThat(store.bytesUsed()).isEqualTo(0);
+		assertThat(store.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void offHeapStore_ShouldEvictLeastRecentlyUsedWhenFull() {
+		OffHeapCartStore store = OffHeapCartStore.allocate(3 * 64, 64, 0);
+		store.put("a", record(1, 1));
+		store.put("b", record(2, 1));
+		store.put("c", record(3, 1));
+		store.get("a");
+
+		store.put("d", record(4, 1));
+
+		assertThat(store.get("b")).isNull();
+		assertThat(store.get("a")).isEqualTo(record(1, 1));
+		assertThat(store.get("c")).isEqualTo(record(3, 1));
+		assertThat(store.get("d")).isEqualTo(record(4, 1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void offHeapStore_ShouldRejectRecordLargerThanRegion() {
+		OffHeapCartStore store = new OffHeapCartStore("test", ByteBuffer.allocate(2 * 64), 64, 0);
+		store.put("a", record(1, 20));
+	}
+
+	@Test
+	public void heapStore_ShouldExpireUntouchedRecords() {
+		final long[] now = {0};
+		HeapCartStore store = new HeapCartStore(1024, 1000) {
+			@Override
+			protected long now() {
+				return now[0];
+			}
+		};
+		store.put("a", record(1, 1));
+		store.put("b", record(2, 1));
+		now[0] = 800;
+		store.get("b");
+
+		now[0] = 1500;
+		assertThat(store.evictExpired()).isEqualTo(1);
+		assertThat(store.get("a")).isNull();
+		assertThat(store.get("b")).isEqualTo(record(2, 1));
+
+		now[0] = 3000;
+		assertThat(store.get("b")).isNull();
+		assertThat(store.size()).isEqualTo(0);
+		assertThat(store.bytesUsed()).isEqualTo(0);
+	}
+
+	private static CartRecord record(long purchaseId, int lines) {
+		long[] productIds = new long[lines];
+		int[] quantities = new int[lines];
+		for (int i = 0; i < lines; i++) {
+			productIds[i] = i + 1;
+			quantities[i] = i + 2;
+		}
+		return new CartRecord(purchaseId + 100, purchaseId, null, productIds, quantities);
+	}
+}
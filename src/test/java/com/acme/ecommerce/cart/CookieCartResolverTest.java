@@ -0,0 +1,119 @@
+package com.acme.ecommerce.cart;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CookieCartResolverTest {
+
+	private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+	private static final long NOW = 1475000000000L;
+
+	private final CookieCartResolver resolver = new CookieCartResolver(SECRET, "CART", 3600, false);
+
+	@After
+	public void resetRequest() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	public void decode_ShouldReturnSignedRecord() {
+		CartRecord record = record(3);
+
+		assertThat(resolver.decode(resolver.encode(record, NOW), NOW + 1000)).isEqualTo(record);
+	}
+
+	@Test
+	public void decode_ShouldRejectTamperedValue() {
+		String value = resolver.encode(record(3), NOW);
+		char[] chars = value.toCharArray();
+		// Change a quantity byte inside the signed part
+		int i = chars.length - 30;
+		chars[i] = chars[i] == 'A' ? 'B' : 'A';
+
+		assertThat(resolver.decode(new String(chars), NOW)).isNull();
+	}
+
+	@Test
+	public void decode_ShouldRejectValueSignedWithAnotherKey() {
+		byte[] otherSecret = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+		String value = new CookieCartResolver(otherSecret, "CART", 3600, false).encode(record(1), NOW);
+
+		assertThat(resolver.decode(value, NOW)).isNull();
+	}
+
+	@Test
+	public void decode_ShouldRejectExpiredValue() {
+		String value = resolver.encode(record(1), NOW);
+
+		assertThat(resolver.decode(value, NOW + 3600 * 1000)).isNotNull();
+		assertThat(resolver.decode(value, NOW + 3601 * 1000)).isNull();
+	}
+
+	@Test
+	public void decode_ShouldIgnoreGarbage() {
+		assertThat(resolver.decode("not a cart!", NOW)).isNull();
+		assertThat(resolver.decode("AAAA", NOW)).isNull();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void encode_ShouldRefuseRecordTooLargeForCookie() {
+		resolver.encode(record(300), NOW);
+	}
+
+	@Test
+	public void getMaxLines_ShouldLeaveRoomForLongestCoupon() {
+		int lines = resolver.getMaxLines();
+		CartRecord full = record(lines, "\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac\u20ac");
+
+		assertThat(resolver.encode(full, NOW).length()).isLessThanOrEqualTo(CookieCartResolver.MAX_VALUE_LENGTH);
+		assertThat(lines).isGreaterThan(200);
+	}
+
+	@Test
+	public void save_ShouldRoundTripThroughResponseCookie() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+		resolver.save(record(2));
+
+		Cookie cookie = response.getCookie("CART");
+		assertThat(cookie.isHttpOnly()).isTrue();
+		assertThat(cookie.getMaxAge()).isEqualTo(3600);
+
+		MockHttpServletRequest next = new MockHttpServletRequest();
+		next.setCookies(cookie);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(next, new MockHttpServletResponse()));
+		assertThat(resolver.load()).isEqualTo(record(2));
+	}
+
+	@Test
+	public void save_ShouldExpireCookieWhenCartIsDropped() {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+		resolver.save(null);
+
+		assertThat(response.getCookie("CART").getMaxAge()).isEqualTo(0);
+	}
+
+	private static CartRecord record(int lines) {
+		return record(lines, "SAVE10");
+	}
+
+	private static CartRecord record(int lines, String couponCode) {
+		long[] productIds = new long[lines];
+		int[] quantities = new int[lines];
+		for (int i = 0; i < lines; i++) {
+			productIds[i] = i + 1;
+			quantities[i] = i + 2;
+		}
+		return new CartRecord(42L, 0, couponCode, productIds, quantities);
+	}
+}
@@ -0,0 +1,104 @@
+package com.acme.ecommerce.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReadWriteRoutingDataSourceTest {
+
+	private ReadWriteRoutingDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private DataSourceTransactionManager transactionManager;
+	private Map<String, Number> baseline;
+
+	@Before
+	public void setup() {
+		dataSource = new ReadWriteRoutingDataSource(new InstrumentedDataSource("primary", database("primary")),
+				new InstrumentedDataSource("replica", database("replica")));
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+		// The proxy reads the connection defaults from the primary when it starts
+		baseline = metrics();
+	}
+
+	@After
+	public void tearDown() {
+		dataSource.close();
+	}
+
+	@Test
+	public void readOnlyTransaction_ShouldUseReplica() {
+		assertThat(nameInTransaction(true)).isEqualTo("replica");
+		assertThat(nameInTransaction(false)).isEqualTo("primary");
+		assertThat(nameInTransaction(true)).isEqualTo("replica");
+
+		assertThat(routed("datasource.routes.primary")).isEqualTo(1);
+		assertThat(routed("datasource.routes.replica")).isEqualTo(2);
+		assertThat(routed("datasource.primary.connections.acquired")).isEqualTo(1);
+		assertThat(routed("datasource.replica.connections.acquired")).isEqualTo(2);
+	}
+
+	@Test
+	public void noTransaction_ShouldUsePrimary() {
+		assertThat(jdbcTemplate.queryForObject("select name from instance", String.class)).isEqualTo("primary");
+	}
+
+	@Test
+	public void transactionWithoutStatements_ShouldNotTakeConnection() {
+		new TransactionTemplate(transactionManager).execute(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				return null;
+			}
+		});
+
+		assertThat(routed("datasource.routes.primary")).isEqualTo(0);
+		assertThat(routed("datasource.routes.replica")).isEqualTo(0);
+	}
+
+	private String nameInTransaction(boolean readOnly) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(readOnly);
+		return template.execute(new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status) {
+				return jdbcTemplate.queryForObject("select name from instance", String.class);
+			}
+		});
+	}
+
+	private long routed(String metric) {
+		return metrics().get(metric).longValue() - baseline.get(metric).longValue();
+	}
+
+	private Map<String, Number> metrics() {
+		Map<String, Number> values = new HashMap<String, Number>();
+		for (Metric<?> metric : dataSource.metrics()) {
+			values.put(metric.getName(), metric.getValue());
+		}
+		return values;
+	}
+
+	private static EmbeddedDatabase database(String name) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+				.setName("routing-" + name).build();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("create table instance (name varchar(16))");
+		jdbcTemplate.update("insert into instance values (?)", name);
+		return database;
+	}
+}
@@ -2,17 +2,18 @@ package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.Application;
 import com.acme.ecommerce.domain.*;
+import com.acme.ecommerce.service.CartService;
 import com.acme.ecommerce.service.ProductService;
-import com.acme.ecommerce.service.PurchaseService;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.SpringApplicationConfiguration;
-import org.springframework.mock.web.MockHttpSession;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
@@ -23,9 +24,14 @@ import org.springframework.web.servlet.view.InternalResourceViewResolver;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -37,15 +43,12 @@ public class CartControllerTest {
 
 	final String BASE_URL = "http://localhost:8080/";
 
-	@Mock
-	private MockHttpSession session;
-
 	@Mock
 	private ProductService productService;
 	@Mock
-	private PurchaseService purchaseService;
-	@Mock
 	private ShoppingCart sCart;
+	@Mock
+	private CartService cartService;
 	@InjectMocks
 	private CartController cartController;
 
@@ -53,6 +56,7 @@ public class CartControllerTest {
 
 	static {
 		System.setProperty("properties.home", "properties");
+		System.setProperty("orderNumber.nodeId", "0");
 	}
 
 	@Before
@@ -62,6 +66,8 @@ public class CartControllerTest {
 		viewResolver.setSuffix(".html");
 
 		MockitoAnnotations.initMocks(this);
+		when(sCart.getTotals()).thenReturn(new CartTotals());
+		when(sCart.getMaxLines()).thenReturn(100);
 		mockMvc = MockMvcBuilders.standaloneSetup(cartController).setViewResolvers(viewResolver).build();
 	}
 
@@ -74,6 +80,7 @@ public class CartControllerTest {
 		Purchase purchase = purchaseBuilder(product);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 		mockMvc.perform(MockMvcRequestBuilders.get("/cart")).andDo(print())
 				.andExpect(status().isOk())
 				.andExpect(view().name("cart"));
@@ -88,6 +95,7 @@ public class CartControllerTest {
 		Purchase purchase = purchaseBuilder(product);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 		mockMvc.perform(MockMvcRequestBuilders.get("/cart")).andDo(print())
 				.andExpect(status().isOk())
 				.andExpect(view().name("cart"))
@@ -108,11 +116,38 @@ public class CartControllerTest {
 		Product product = productBuilder();
 
 		when(productService.findById(1L)).thenReturn(product);
+		when(productService.tryReserve(1L, 1)).thenReturn(true);
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/add").param("quantity", "1").param("productId", "1"))
 				.andDo(print())
 				.andExpect(status().is3xxRedirection())
 				.andExpect(redirectedUrl("/product/"));
+
+		ArgumentCaptor<Purchase> updated = ArgumentCaptor.forClass(Purchase.class);
+		verify(productService).tryReserve(1L, 1);
+		verify(productService, never()).save(any(Product.class));
+		verify(sCart).update(updated.capture());
+		assertThat(CartTotals.of(updated.getValue()).getItemCount()).isEqualTo(1);
+		assertThat(CartTotals.of(updated.getValue()).getSubtotal()).isEqualByComparingTo(product.getPrice());
+	}
+
+	@Test
+	public void addToFullCartTest() throws Exception {
+		Product product = productBuilder();
+		Purchase purchase = purchaseBuilder(product);
+		Product other = productBuilder();
+		other.setId(2L);
+
+		when(productService.findById(2L)).thenReturn(other);
+		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getMaxLines()).thenReturn(1);
+
+		mockMvc.perform(MockMvcRequestBuilders.post("/cart/add").param("quantity", "1").param("productId", "2"))
+				.andDo(print())
+				.andExpect(status().isConflict());
+
+		verify(productService, never()).tryReserve(2L, 1);
+		verify(sCart, never()).update(any(Purchase.class));
 	}
 
 	@Test
@@ -130,6 +165,7 @@ public class CartControllerTest {
 		Product product = productBuilder();
 
 		when(productService.findById(1L)).thenReturn(product);
+		when(productService.tryReserve(1L, 1)).thenReturn(true);
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/add").param("quantity", "1").param("productId", "1"))
 				.andDo(print())
@@ -147,11 +183,17 @@ public class CartControllerTest {
 		Purchase purchase = purchaseBuilder(product);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
+		when(productService.tryReserve(1L, 1)).thenReturn(true);
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/update").param("newQuantity", "2").param("productId", "1"))
 				.andDo(print())
 				.andExpect(status().is3xxRedirection())
-				.andExpect(redirectedUrl("/cart"));
+				.andExpect(redirectedUrl("/cart"))
+				.andExpect(flash().attribute("flash", Matchers.hasProperty("status",
+						Matchers.equalTo(FlashMessage.Status.SUCCESS))));
+
+		verify(productService).tryReserve(1L, 1);
 	}
 
 	@Test
@@ -203,12 +245,13 @@ public class CartControllerTest {
 		purchase.setProductPurchases(ppList);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
-
-		when(purchaseService.save(purchase)).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1")).andDo(print())
 				.andExpect(status().is3xxRedirection())
 				.andExpect(redirectedUrl("/cart"));
+
+		verify(productService).release(1L, 1);
 	}
 
 	@Test
@@ -239,8 +282,7 @@ public class CartControllerTest {
 		Purchase purchase = purchaseBuilder(product);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
-
-		when(purchaseService.save(purchase)).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/remove").param("productId", "1")).andDo(print())
 				.andExpect(status().is3xxRedirection())
@@ -275,12 +317,14 @@ public class CartControllerTest {
 		purchase.setProductPurchases(ppList);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
-
-		when(purchaseService.save(purchase)).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/empty")).andDo(print())
 				.andExpect(status().is3xxRedirection())
 				.andExpect(redirectedUrl("/product/"));
+
+		verify(productService).release(1L, 1);
+		verify(productService).release(2L, 2);
 	}
 
 	@Test
@@ -320,6 +364,7 @@ public class CartControllerTest {
 		Purchase purchase = purchaseBuilder(product);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/cart/update").param("newQuantity", QUANTITY_HIGHER_THAN_AVAILABLE)
 				.param("productId", "1"))
@@ -329,6 +374,38 @@ public class CartControllerTest {
         .andExpect(flash().attribute("error", Matchers.equalTo("quantity")));
 	}
 
+	@Test
+	public void batchUpdateTest() throws Exception {
+		List<CartLineResult> lines = Collections.singletonList(
+				new CartLineResult(1L, CartOperation.Action.ADD, CartLineResult.Status.APPLIED, 2));
+		Product product = productBuilder();
+		product.setPrice(new BigDecimal("1.50"));
+		Purchase purchase = purchaseBuilder(product);
+		purchase.getProductPurchases().get(0).setQuantity(2);
+		CartTotals totals = CartTotals.of(purchase);
+		when(cartService.applyBatch(any(ShoppingCart.class), anyListOf(CartOperation.class)))
+				.thenReturn(new CartBatchResult(lines, totals, null));
+
+		mockMvc.perform(MockMvcRequestBuilders.post("/cart/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"action\":\"add\",\"productId\":1,\"quantity\":2}]"))
+				.andDo(print())
+				.andExpect(status().isOk())
+				.andExpect(content().string(Matchers.containsString(
+						"\"lines\":[{\"productId\":1,\"action\":\"ADD\",\"status\":\"APPLIED\",\"quantity\":2}]")))
+				.andExpect(content().string(Matchers.containsString("\"itemCount\":2")))
+				.andExpect(content().string(Matchers.containsString("\"subtotal\":3.00")));
+	}
+
+	@Test
+	public void batchUpdateRejectsEmptyBatchTest() throws Exception {
+		mockMvc.perform(MockMvcRequestBuilders.post("/cart/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[]"))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string(Matchers.containsString("between 1 and 500 operations")));
+
+		verify(cartService, never()).applyBatch(any(ShoppingCart.class), anyListOf(CartOperation.class));
+	}
+
 	private Product productBuilder() {
 		Product product = new Product();
 		product.setId(1L);
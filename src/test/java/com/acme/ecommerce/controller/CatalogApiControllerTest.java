@@ -0,0 +1,143 @@
+package com.acme.ecommerce.controller;
+
+import com.acme.ecommerce.Application;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCursor;
+import com.acme.ecommerce.service.ProductService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = Application.class)
+@WebAppConfiguration
+public class CatalogApiControllerTest {
+
+	static {
+		System.setProperty("properties.home", "properties");
+		System.setProperty("orderNumber.nodeId", "0");
+	}
+
+	@Mock
+	private ProductService productService;
+	@InjectMocks
+	private CatalogApiController catalogApiController;
+
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		catalogApiController.maxAgeSeconds = 60;
+		mockMvc = MockMvcBuilders.standaloneSetup(catalogApiController).build();
+	}
+
+	@Test
+	public void productTest() throws Exception {
+		when(productService.findById(1L)).thenReturn(productBuilder(1L, 3L));
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/api/products/1"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"p1v3\""))
+				.andExpect(header().string("Cache-Control", "max-age=60, public"))
+				.andExpect(content().string(containsString("\"name\":\"Test Product\"")))
+				.andExpect(content().string(containsString("\"imageUrl\":\"/product/1/image\"")));
+	}
+
+	@Test
+	public void productNotModifiedTest() throws Exception {
+		when(productService.findById(1L)).thenReturn(productBuilder(1L, 3L));
+
+		MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/products/1")
+				.header("If-None-Match", "\"p1v3\""))
+				.andExpect(status().isNotModified())
+				.andReturn();
+		assertThat(result.getResponse().getContentAsString()).isEmpty();
+	}
+
+	@Test
+	public void productChangedTest() throws Exception {
+		when(productService.findById(1L)).thenReturn(productBuilder(1L, 4L));
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/api/products/1")
+				.header("If-None-Match", "\"p1v3\""))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"p1v4\""));
+	}
+
+	@Test
+	public void productNotFoundTest() throws Exception {
+		mockMvc.perform(MockMvcRequestBuilders.get("/api/products/9"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void listTest() throws Exception {
+		List<Product> pList = new ArrayList<Product>();
+		pList.add(productBuilder(1L, 0L));
+		pList.add(productBuilder(2L, 5L));
+		KeysetPage<Product> products = new KeysetPage<Product>(pList, 0, 2, null, "next", null);
+		when(productService.findPage(null, ProductCursor.Order.ID, 20)).thenReturn(products);
+
+		MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/products"))
+				.andExpect(status().isOk())
+				.andExpect(header().string("ETag", CatalogApiController.listETag(products)))
+				.andExpect(content().string(containsString("\"nextCursor\":\"next\"")))
+				.andExpect(content().string(containsString("\"totalPages\":2")))
+				.andReturn();
+		String etag = result.getResponse().getHeader("ETag");
+		assertThat(etag).startsWith("W/");
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/api/products").header("If-None-Match", etag))
+				.andExpect(status().isNotModified());
+
+		// Stock changed on one product of the page
+		pList.set(1, productBuilder(2L, 6L));
+		products = new KeysetPage<Product>(pList, 0, 2, null, "next", null);
+		when(productService.findPage(null, ProductCursor.Order.ID, 20)).thenReturn(products);
+		mockMvc.perform(MockMvcRequestBuilders.get("/api/products").header("If-None-Match", etag))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	public void listSizeCappedTest() throws Exception {
+		KeysetPage<Product> products = new KeysetPage<Product>(new ArrayList<Product>(), 0, 0, null, null, null);
+		when(productService.findPage(null, ProductCursor.Order.PRICE, 100)).thenReturn(products);
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/api/products").param("sort", "price").param("size", "5000"))
+				.andExpect(status().isOk());
+	}
+
+	private Product productBuilder(Long id, Long version) {
+		Product product = new Product();
+		product.setId(id);
+		product.setDesc("TestDesc");
+		product.setName("Test Product");
+		product.setPrice(new BigDecimal(1.99));
+		product.setQuantity(3);
+		product.setFullImageName("imagename");
+		product.setThumbImageName("imagename");
+		product.setVersion(version);
+		return product;
+	}
+}
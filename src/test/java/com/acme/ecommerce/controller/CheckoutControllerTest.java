@@ -2,6 +2,7 @@ package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.Application;
 import com.acme.ecommerce.domain.*;
+import com.acme.ecommerce.service.OrderNumberGenerator;
 import com.acme.ecommerce.service.ProductService;
 import com.acme.ecommerce.service.PurchaseService;
 import org.junit.Before;
@@ -10,20 +11,28 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.thymeleaf.TemplateEngine;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -44,18 +53,25 @@ public class CheckoutControllerTest {
 	private PurchaseService purchaseService;
 	@Mock
 	private ShoppingCart sCart;
+	@Mock
+	private OrderNumberGenerator orderNumberGenerator;
 	@InjectMocks
 	private CheckoutController checkoutController;
 
+	@Autowired
+	private TemplateEngine templateEngine;
+
 	private MockMvc mockMvc;
 
 	static {
 		System.setProperty("properties.home", "properties");
+		System.setProperty("orderNumber.nodeId", "0");
 	}
 
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
+		when(sCart.getTotals()).thenReturn(new CartTotals());
 		mockMvc = MockMvcBuilders.standaloneSetup(checkoutController).build();
 	}
 
@@ -68,6 +84,7 @@ public class CheckoutControllerTest {
 		Purchase purchase = purchaseBuilder(product);
 
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 		mockMvc.perform(MockMvcRequestBuilders.get("/checkout/coupon")).andDo(print()).andExpect(status().isOk())
 				.andExpect(view().name("checkout_1"));
 	}
@@ -106,6 +123,7 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
@@ -133,6 +151,7 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
@@ -156,6 +175,7 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
@@ -188,6 +208,7 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
@@ -216,12 +237,14 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
 		when(sCart.getCouponCode()).thenReturn(coupon);
 
 		when(purchaseService.save(purchase)).thenReturn(purchase);
+		when(orderNumberGenerator.next()).thenReturn("7012345678901234567");
 
 		mockMvc.perform(MockMvcRequestBuilders.post("/checkout/billing").param("firstName", "john")
 				.param("lastName", "smith").param("streetAddress", "123 main st.").param("city", "centerville")
@@ -232,6 +255,8 @@ public class CheckoutControllerTest {
 				.param("billingAddressSame", "false")).andDo(print())
 			.andExpect(status().is3xxRedirection())
 			.andExpect(redirectedUrl("confirmation"));
+
+		assertThat(purchase.getOrderNumber()).isEqualTo("7012345678901234567");
 	}
 
 	@Test
@@ -242,6 +267,7 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
@@ -277,6 +303,7 @@ public class CheckoutControllerTest {
 
 		Purchase purchase = purchaseBuilder(product);
 		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
 
 		CouponCode coupon = new CouponCode();
 		coupon.setCode("abcd");
@@ -304,6 +331,43 @@ public class CheckoutControllerTest {
 		mockMvc.perform(MockMvcRequestBuilders.get("/checkout/email")).andDo(print()).andExpect(status().isOk());
 	}
 
+	@Test
+	public void emailReceiptStreamsUtf8Test() throws Exception {
+		ReflectionTestUtils.setField(checkoutController, "templateEngine", templateEngine);
+		Product product = productBuilder();
+		product.setName("Cr\u00e8me br\u00fbl\u00e9e torch");
+		Purchase purchase = purchaseBuilder(product);
+		purchase.setOrderNumber("42");
+		purchase.setShippingAddress(new Address());
+		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
+
+		MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/checkout/email")).andDo(print())
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Disposition", "attachment; filename=email_receipt.html"))
+				.andExpect(content().contentType("text/html;charset=UTF-8"))
+				.andReturn();
+
+		String body = new String(result.getResponse().getContentAsByteArray(), "UTF-8");
+		assertThat(body).contains("Your order number is 42.");
+		assertThat(body).contains("Cr\u00e8me br\u00fbl\u00e9e torch");
+		verify(sCart).setPurchase(null);
+	}
+
+	@Test
+	public void emailKeepsCartNotOrderedYetTest() throws Exception {
+		ReflectionTestUtils.setField(checkoutController, "templateEngine", templateEngine);
+		Purchase purchase = purchaseBuilder(productBuilder());
+		purchase.setShippingAddress(new Address());
+		when(sCart.getPurchase()).thenReturn(purchase);
+		when(sCart.getTotals()).thenReturn(CartTotals.of(purchase));
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/checkout/email")).andExpect(status().isOk());
+
+		verify(sCart, never()).setPurchase(any(Purchase.class));
+		verify(sCart, never()).setCouponCode(any(CouponCode.class));
+	}
+
 	private Product productBuilder() {
 		Product product = new Product();
 		product.setId(1L);
@@ -30,6 +30,7 @@ public class IndexRedirectControllerTest {
 
 	 static {
 		 System.setProperty("properties.home", "properties");
+		 System.setProperty("orderNumber.nodeId", "0");
 	 }
 	 
 	 @Before
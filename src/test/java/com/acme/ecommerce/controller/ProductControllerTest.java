@@ -2,29 +2,47 @@ package com.acme.ecommerce.controller;
 
 import com.acme.ecommerce.Application;
 import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.image.ImageServer;
+import com.acme.ecommerce.image.ThumbnailService;
+import org.junit.After;
+import com.acme.ecommerce.search.SearchHit;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCursor;
 import com.acme.ecommerce.service.ProductService;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.boot.test.SpringApplicationConfiguration;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.mock.web.MockHttpSession;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
-import java.io.FileNotFoundException;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -38,23 +56,33 @@ public class ProductControllerTest {
 	
 	 static {
 		 System.setProperty("properties.home", "properties");
+		 System.setProperty("orderNumber.nodeId", "0");
 	 }
 	
-	@Mock
-	private MockHttpSession session;
-
 	@Mock
 	private ProductService productService;
+	@Spy
+	private ImageServer imageServer = new ImageServer();
 	@InjectMocks
 	private ProductController productController;
 
 	private MockMvc mockMvc;
 
+	@Rule
+	public TemporaryFolder thumbnailFolder = new TemporaryFolder();
+
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
 		mockMvc = MockMvcBuilders.standaloneSetup(productController).build();
 		productController.imagePath = "src/test/resources/"; // properties hack because @Value wouldn't resolve
+		productController.thumbnailService = new ThumbnailService(imageServer, productService, "src/test/resources/",
+				thumbnailFolder.getRoot().getPath(), new int[]{80, 160}, 1, 8, 5000);
+	}
+
+	@After
+	public void tearDown() {
+		productController.thumbnailService.shutdown();
 	}
 
 	@Test
@@ -69,13 +97,58 @@ public class ProductControllerTest {
 		pList.add(product);
 		pList.add(product2);
 		
-		Page<Product> products = new PageImpl<Product>(pList);
+		KeysetPage<Product> products = new KeysetPage<Product>(pList, 0, 1, null, null, null);
 		
-		when(productService.findAll(new PageRequest(1, 2))).thenReturn(products);
+		when(productService.findPage(null, ProductCursor.Order.ID, 5)).thenReturn(products);
 		
 		mockMvc.perform(MockMvcRequestBuilders.get("/product/"))
 			.andExpect(status().isOk())
-			.andExpect(view().name("index"));
+			.andExpect(view().name("index"))
+			.andExpect(model().attribute("products", products));
+	}
+
+	@Test
+	public void getIndexByCursor() throws Exception {
+		Product product = productBuilder();
+		product.setId(6L);
+		String cursor = ProductCursor.after(ProductCursor.Order.PRICE, 1, product).encode();
+
+		List<Product> pList = new ArrayList<Product>();
+		pList.add(productBuilder());
+		KeysetPage<Product> products = new KeysetPage<Product>(pList, 1, 2, "prev", null, null);
+
+		when(productService.findPage(any(ProductCursor.class), eq(ProductCursor.Order.ID), eq(5))).thenReturn(products);
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/").param("cursor", cursor))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("products", products));
+
+		ArgumentCaptor<ProductCursor> captor = ArgumentCaptor.forClass(ProductCursor.class);
+		verify(productService).findPage(captor.capture(), eq(ProductCursor.Order.ID), eq(5));
+		assertThat(captor.getValue().getOrder()).isEqualTo(ProductCursor.Order.PRICE);
+		assertThat(captor.getValue().getId()).isEqualTo(6L);
+	}
+
+	@Test
+	public void getIndexByLegacyPageNumber() throws Exception {
+		KeysetPage<Product> products = new KeysetPage<Product>(new ArrayList<Product>(), 2, 3, null, null, null);
+		when(productService.findPage(2, ProductCursor.Order.ID, 5)).thenReturn(products);
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/").param("page", "3"))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("products", products));
+	}
+
+	@Test
+	public void searchProducts() throws Exception {
+		List<SearchHit> hits = new ArrayList<SearchHit>();
+		hits.add(new SearchHit(3L, "Frog", new BigDecimal("134.79"), 2.5f));
+		when(productService.search("fro", 50)).thenReturn(hits);
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/search").param("q", "fro").param("limit", "500"))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+			.andExpect(content().string(startsWith("[{\"id\":3,\"name\":\"Frog\",\"price\":134.79,")));
 	}
 
 	@Test
@@ -110,7 +183,74 @@ public class ProductControllerTest {
 			.andExpect(content().contentType("image/jpeg"));
 	}
 	
-	@Test(expected = FileNotFoundException.class)
+	@Test
+	public void getProductImageCacheHeaders() throws Exception {
+		Product product = productBuilder();
+		product.setFullImageName("fork.jpg");
+
+		when(productService.findById(1L)).thenReturn(product);
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image"))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.ETAG, notNullValue()))
+			.andExpect(header().string(HttpHeaders.CACHE_CONTROL, startsWith("public")))
+			.andExpect(header().string(HttpHeaders.CONTENT_LENGTH,
+					String.valueOf(new File("src/test/resources/fork.jpg").length())));
+	}
+
+	@Test
+	public void getProductImageNotModified() throws Exception {
+		Product product = productBuilder();
+		product.setFullImageName("fork.jpg");
+
+		when(productService.findById(1L)).thenReturn(product);
+		String eTag = imageServer.resolve(new File("src/test/resources/fork.jpg")).getETag();
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").header(HttpHeaders.IF_NONE_MATCH, eTag))
+			.andExpect(status().isNotModified())
+			.andExpect(content().bytes(new byte[0]));
+	}
+
+	@Test
+	public void getProductImageRange() throws Exception {
+		Product product = productBuilder();
+		product.setFullImageName("fork.jpg");
+
+		when(productService.findById(1L)).thenReturn(product);
+		long length = new File("src/test/resources/fork.jpg").length();
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").header(HttpHeaders.RANGE, "bytes=0-9"))
+			.andExpect(status().isPartialContent())
+			.andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/" + length))
+			.andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "10"));
+
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image").header(HttpHeaders.RANGE, "bytes=" + length + "-"))
+			.andExpect(status().isRequestedRangeNotSatisfiable());
+	}
+
+	@Test
+	public void getProductImageUnknownProduct() throws Exception {
+		when(productService.findById(1L)).thenReturn(null);
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image"))
+			.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void getProductThumbnail() throws Exception {
+		Product product = productBuilder();
+		product.setThumbImageName("fork.jpg");
+
+		when(productService.findById(1L)).thenReturn(product);
+		MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/product/1/thumb").param("w", "100"))
+			.andExpect(status().isOk())
+			.andExpect(content().contentType("image/jpeg"))
+			.andExpect(header().string(HttpHeaders.CACHE_CONTROL, startsWith("public")))
+			.andReturn();
+
+		BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+		assertThat(thumbnail.getWidth()).isEqualTo(160);
+	}
+
+	@Test
 	public void getProductImageFail() throws Exception {
 		
 		Product product = productBuilder();
@@ -118,8 +258,17 @@ public class ProductControllerTest {
 			
 		when(productService.findById(1L)).thenReturn(product);
 		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/image")).andDo(print())
-			.andExpect(status().isOk())
-			.andExpect(content().contentType("image/jpeg"));
+			.andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void getProductThumbnailMissingSource() throws Exception {
+		Product product = productBuilder();
+		product.setThumbImageName("a.jpg");
+
+		when(productService.findById(1L)).thenReturn(product);
+		mockMvc.perform(MockMvcRequestBuilders.get("/product/1/thumb"))
+			.andExpect(status().isNotFound());
 	}
 	
 	private Product productBuilder() {
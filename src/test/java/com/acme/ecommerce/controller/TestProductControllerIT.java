@@ -41,6 +41,7 @@ public class TestProductControllerIT {
 	
 	 static {
 		 System.setProperty("properties.home", "properties");
+		 System.setProperty("orderNumber.nodeId", "0");
 	 }
 
 	@Before
@@ -0,0 +1,59 @@
+package com.acme.ecommerce.domain;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CartTotalsTest {
+
+	@Test
+	public void of_ShouldMatchPriceCalculator() {
+		Purchase purchase = new Purchase();
+		List<ProductPurchase> lines = new ArrayList<ProductPurchase>();
+		for (int i = 1; i <= 5; i++) {
+			lines.add(line(i, new BigDecimal("1" + i + ".99"), i));
+		}
+		purchase.setProductPurchases(lines);
+
+		CartTotals totals = CartTotals.of(purchase);
+
+		assertThat(totals.getSubtotal()).isEqualByComparingTo(PriceCalculator.computeSubtotal(purchase));
+		assertThat(totals.getShippingCost()).isEqualByComparingTo(PriceCalculator.computeShippingCost(purchase));
+		assertThat(totals.getItemCount()).isEqualTo(15);
+	}
+
+	@Test
+	public void getSubtotal_ShouldApplyCoupon() {
+		Purchase purchase = new Purchase();
+		purchase.getProductPurchases().add(line(1, new BigDecimal("10.00"), 2));
+		CartTotals totals = CartTotals.of(purchase);
+		CouponCode coupon = new CouponCode();
+		coupon.setCode("SPRING");
+
+		assertThat(totals.getSubtotal(coupon)).isEqualByComparingTo(new BigDecimal("20.00").multiply(PriceCalculator.COUPON_DISCOUNT));
+		assertThat(totals.getSubtotal(new CouponCode())).isEqualByComparingTo("20.00");
+	}
+
+	@Test
+	public void of_ShouldBeEmptyWithoutPurchase() {
+		CartTotals totals = CartTotals.of(null);
+
+		assertThat(totals.isEmpty()).isTrue();
+		assertThat(totals.getSubtotal()).isEqualByComparingTo(BigDecimal.ZERO);
+		assertThat(totals.getShippingCost()).isEqualByComparingTo(PriceCalculator.computeShippingCost(0));
+	}
+
+	private static ProductPurchase line(long productId, BigDecimal price, int quantity) {
+		Product product = new Product();
+		product.setId(productId);
+		product.setPrice(price);
+		ProductPurchase pp = new ProductPurchase();
+		pp.setProduct(product);
+		pp.setQuantity(quantity);
+		return pp;
+	}
+}
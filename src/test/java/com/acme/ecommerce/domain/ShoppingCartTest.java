@@ -0,0 +1,282 @@
+package com.acme.ecommerce.domain;
+
+import com.acme.ecommerce.cart.CartRecord;
+import com.acme.ecommerce.cart.CartResolver;
+import com.acme.ecommerce.reservation.ReservationService;
+import com.acme.ecommerce.service.ProductService;
+import com.acme.ecommerce.service.PurchaseService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShoppingCartTest {
+
+	@Mock
+	private CartResolver resolver;
+	@Mock
+	private PurchaseService purchaseService;
+	@Mock
+	private ProductService productService;
+	@Mock
+	private ReservationService reservations;
+
+	private ShoppingCart cart;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		cart = new ShoppingCart(resolver, purchaseService, productService, reservations);
+		Map<Long, Product> products = new HashMap<Long, Product>();
+		products.put(1L, product(1L, "2.50"));
+		products.put(2L, product(2L, "10.00"));
+		when(productService.findByIds(Arrays.asList(1L, 2L))).thenReturn(products);
+		// Holds whatever the record claims unless a test says otherwise
+		when(reservations.reconcile(anyLong(), any(Long.class), anyMapOf(Long.class, Integer.class)))
+				.thenAnswer(new Answer<Map<Long, Integer>>() {
+					@SuppressWarnings("unchecked")
+					@Override
+					public Map<Long, Integer> answer(InvocationOnMock invocation) {
+						return (Map<Long, Integer>) invocation.getArguments()[2];
+					}
+				});
+	}
+
+	@Test
+	public void getPurchase_ShouldRebuildUnsavedPurchaseFromRecord() {
+		when(resolver.load()).thenReturn(new CartRecord(5L, 0, "SAVE10", new long[]{1L, 2L}, new int[]{4, 1}));
+
+		Purchase purchase = cart.getPurchase();
+
+		assertThat(purchase.getId()).isNull();
+		assertThat(purchase.getProductPurchases()).hasSize(2);
+		assertThat(purchase.getProductPurchases().get(0).getQuantity()).isEqualTo(4);
+		assertThat(cart.getTotals().getSubtotal()).isEqualByComparingTo("20.00");
+		assertThat(cart.getCouponCode().getCode()).isEqualTo("SAVE10");
+		verify(purchaseService, never()).findById(any(Long.class));
+		verify(reservations).reconcile(5L, null, quantities(1L, 4, 2L, 1));
+		verify(reservations, never()).hold(anyLong(), any(Long.class), anyMapOf(Long.class, Integer.class));
+		verify(resolver, never()).save(any(CartRecord.class));
+	}
+
+	@Test
+	public void getPurchase_ShouldDropLinesNoLongerHeld() {
+		when(resolver.load()).thenReturn(new CartRecord(5L, 0, null, new long[]{1L, 2L}, new int[]{4, 1}));
+		when(reservations.reconcile(5L, null, quantities(1L, 4, 2L, 1))).thenReturn(quantities(2L, 1));
+
+		Purchase purchase = cart.getPurchase();
+
+		assertThat(purchase.getProductPurchases()).hasSize(1);
+		assertThat(purchase.getProductPurchases().get(0).getProduct().getId()).isEqualTo(2L);
+		assertThat(cart.getTotals().getSubtotal()).isEqualByComparingTo("10.00");
+		verify(reservations).hold(5L, null, Collections.<Long, Integer>emptyMap());
+		verify(resolver).save(new CartRecord(5L, 0, null, new long[]{2L}, new int[]{1}));
+	}
+
+	@Test
+	public void getPurchase_ShouldCutReplayedRecordDownToHeldUnits() {
+		// An older record, from before the visitor took four units out again
+		when(resolver.load()).thenReturn(new CartRecord(5L, 0, null, new long[]{1L}, new int[]{5}));
+		when(reservations.reconcile(5L, null, quantities(1L, 5))).thenReturn(quantities(1L, 1));
+		Map<Long, Product> products = new HashMap<Long, Product>();
+		products.put(1L, product(1L, "2.50"));
+		when(productService.findByIds(Arrays.asList(1L))).thenReturn(products);
+
+		Purchase purchase = cart.getPurchase();
+
+		assertThat(purchase.getProductPurchases().get(0).getQuantity()).isEqualTo(1);
+		assertThat(cart.getTotals().getSubtotal()).isEqualByComparingTo("2.50");
+		verify(resolver).save(new CartRecord(5L, 0, null, new long[]{1L}, new int[]{1}));
+
+		ProductPurchase line = purchase.getProductPurchases().get(0);
+		line.setQuantity(3);
+		cart.update(purchase);
+
+		// Only the two units the caller reserved are added to the reservations
+		verify(reservations).hold(5L, null, quantities(1L, 2));
+	}
+
+	@Test
+	public void getPurchase_ShouldRebuildSavedPurchaseDeletedOnExpiry() {
+		when(resolver.load()).thenReturn(new CartRecord(5L, 7L, null, new long[]{1L}, new int[]{2}));
+		Map<Long, Product> products = new HashMap<Long, Product>();
+		products.put(1L, product(1L, "2.50"));
+		when(productService.findByIds(Arrays.asList(1L))).thenReturn(products);
+
+		Purchase purchase = cart.getPurchase();
+
+		assertThat(purchase.getId()).isNull();
+		assertThat(purchase.getProductPurchases()).hasSize(1);
+		verify(resolver).save(new CartRecord(5L, 0, null, new long[]{1L}, new int[]{2}));
+	}
+
+	@Test
+	public void getPurchase_ShouldLoadSavedPurchase() {
+		Purchase saved = new Purchase();
+		saved.setId(7L);
+		when(resolver.load()).thenReturn(new CartRecord(5L, 7L, null, new long[0], new int[0]));
+		when(purchaseService.findWithLinesAndProducts(7L)).thenReturn(saved);
+
+		assertThat(cart.getPurchase()).isSameAs(saved);
+		assertThat(cart.getCouponCode()).isNull();
+	}
+
+	@Test
+	public void getPurchase_ShouldFetchAddressesWhenAsked() {
+		Purchase saved = new Purchase();
+		saved.setId(7L);
+		when(resolver.load()).thenReturn(new CartRecord(5L, 7L, null, new long[0], new int[0]));
+		when(purchaseService.findForConfirmation(7L)).thenReturn(saved);
+
+		cart.fetchAddresses();
+
+		assertThat(cart.getPurchase()).isSameAs(saved);
+		verify(purchaseService, never()).findWithLinesAndProducts(any(Long.class));
+	}
+
+	@Test
+	public void update_ShouldKeepUnsavedPurchaseOutOfDatabase() {
+		Purchase purchase = new Purchase();
+		ProductPurchase line = new ProductPurchase();
+		line.setProduct(product(2L, "10.00"));
+		line.setQuantity(3);
+		purchase.getProductPurchases().add(line);
+
+		cart.update(purchase);
+
+		verify(purchaseService, never()).save(any(Purchase.class));
+		ArgumentCaptor<CartRecord> saved = ArgumentCaptor.forClass(CartRecord.class);
+		verify(resolver).save(saved.capture());
+		long cartId = saved.getValue().getCartId();
+		assertThat(cartId).isPositive();
+		assertThat(saved.getValue()).isEqualTo(new CartRecord(cartId, 0, null, new long[]{2L}, new int[]{3}));
+		verify(reservations).hold(cartId, null, Collections.singletonMap(2L, 3));
+	}
+
+	@Test
+	public void update_ShouldSaveCheckedOutPurchase() {
+		Purchase purchase = new Purchase();
+		purchase.setId(7L);
+		when(purchaseService.save(purchase)).thenReturn(purchase);
+
+		cart.update(purchase);
+
+		verify(purchaseService).save(purchase);
+		verify(resolver).save(new CartRecord(0, 7L, null, new long[0], new int[0]));
+	}
+
+	@Test
+	public void setPurchase_ShouldConfirmReservationsOfPlacedOrder() {
+		when(resolver.load()).thenReturn(new CartRecord(5L, 7L, null, new long[0], new int[0]));
+		Purchase saved = new Purchase();
+		saved.setId(7L);
+		when(purchaseService.findWithLinesAndProducts(7L)).thenReturn(saved);
+		Purchase purchase = new Purchase();
+		purchase.setId(7L);
+		purchase.setOrderNumber("ABC123");
+
+		cart.setPurchase(purchase);
+
+		verify(reservations).confirm(5L);
+		verify(reservations, never()).hold(anyLong(), any(Long.class), anyMapOf(Long.class, Integer.class));
+		verify(resolver).save(new CartRecord(0, 7L, null, new long[0], new int[0]));
+	}
+
+	@Test
+	public void getPurchase_ShouldNotReconcileOnPageView() {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("GET", "/product/")));
+		try {
+			when(resolver.load()).thenReturn(new CartRecord(5L, 0, null, new long[]{1L, 2L}, new int[]{4, 1}));
+
+			assertThat(cart.getPurchase().getProductPurchases()).hasSize(2);
+			assertThat(cart.getTotals().getItemCount()).isEqualTo(5);
+			verify(reservations, never()).reconcile(anyLong(), any(Long.class), anyMapOf(Long.class, Integer.class));
+			verify(resolver, never()).save(any(CartRecord.class));
+
+			// A write in the same request only takes the difference to the record
+			CouponCode coupon = new CouponCode();
+			coupon.setCode("SAVE10");
+			cart.setCouponCode(coupon);
+			verify(reservations).hold(5L, null, Collections.<Long, Integer>emptyMap());
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+		}
+	}
+
+	@Test
+	public void getPurchase_ShouldReconcileWhenRequestMayChangeCart() {
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("POST", "/cart/add")));
+		try {
+			when(resolver.load()).thenReturn(new CartRecord(5L, 0, null, new long[]{1L, 2L}, new int[]{4, 1}));
+
+			cart.getPurchase();
+
+			verify(reservations).reconcile(5L, null, quantities(1L, 4, 2L, 1));
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+		}
+	}
+
+	@Test
+	public void getTotals_ShouldFollowChangedLines() {
+		when(resolver.load()).thenReturn(new CartRecord(5L, 0, null, new long[]{1L, 2L}, new int[]{4, 1}));
+		Purchase purchase = cart.getPurchase();
+		assertThat(cart.getTotals().getItemCount()).isEqualTo(5);
+
+		purchase.getProductPurchases().remove(1);
+		purchase.getProductPurchases().get(0).setQuantity(2);
+		cart.update(purchase);
+
+		assertThat(cart.getTotals().getItemCount()).isEqualTo(2);
+		assertThat(cart.getTotals().getSubtotal()).isEqualByComparingTo("5.00");
+	}
+
+	@Test
+	public void setPurchase_ShouldDropRecordOfEmptiedCart() {
+		when(resolver.load()).thenReturn(new CartRecord(5L, 0, null, new long[]{1L}, new int[]{1}));
+		Map<Long, Product> products = new HashMap<Long, Product>();
+		products.put(1L, product(1L, "2.50"));
+		when(productService.findByIds(Arrays.asList(1L))).thenReturn(products);
+
+		cart.setPurchase(null);
+
+		verify(resolver).save(null);
+		verify(reservations).hold(5L, null, quantities(1L, -1));
+		assertThat(cart.getTotals().isEmpty()).isTrue();
+	}
+
+	private static Map<Long, Integer> quantities(Object... productIdsAndQuantities) {
+		Map<Long, Integer> quantities = new HashMap<Long, Integer>();
+		for (int i = 0; i < productIdsAndQuantities.length; i += 2) {
+			quantities.put((Long) productIdsAndQuantities[i], (Integer) productIdsAndQuantities[i + 1]);
+		}
+		return quantities;
+	}
+
+	private static Product product(Long id, String price) {
+		Product product = new Product();
+		product.setId(id);
+		product.setPrice(new BigDecimal(price));
+		return product;
+	}
+}
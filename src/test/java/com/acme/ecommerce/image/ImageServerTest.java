@@ -0,0 +1,61 @@
+package com.acme.ecommerce.image;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ImageServerTest {
+
+	private final File fork = new File("src/test/resources/fork.jpg");
+
+	private ImageServer imageServer;
+	private MockHttpServletRequest request;
+	private MockHttpServletResponse response;
+
+	@Before
+	public void setup() {
+		imageServer = new ImageServer();
+		imageServer.sendfileMinBytes = 1024;
+		request = new MockHttpServletRequest("GET", "/product/1/image");
+		response = new MockHttpServletResponse();
+	}
+
+	@Test
+	public void serve_ShouldHandFileToContainerWhenSendfileIsSupported() throws Exception {
+		request.setAttribute(ImageServer.SENDFILE_SUPPORTED, Boolean.TRUE);
+		request.addHeader(HttpHeaders.RANGE, "bytes=100-");
+
+		imageServer.serve(fork, request, response);
+
+		assertThat(request.getAttribute(ImageServer.SENDFILE_FILENAME)).isEqualTo(fork.getCanonicalPath());
+		assertThat(request.getAttribute(ImageServer.SENDFILE_START)).isEqualTo(100L);
+		assertThat(request.getAttribute(ImageServer.SENDFILE_END)).isEqualTo(fork.length());
+		assertThat(response.getHeader(HttpHeaders.CONTENT_LENGTH)).isEqualTo(String.valueOf(fork.length() - 100));
+		assertThat(response.getContentAsByteArray()).isEmpty();
+	}
+
+	@Test
+	public void serve_ShouldCopySmallFilesEvenWithSendfile() throws Exception {
+		request.setAttribute(ImageServer.SENDFILE_SUPPORTED, Boolean.TRUE);
+		imageServer.sendfileMinBytes = fork.length() + 1;
+
+		imageServer.serve(fork, request, response);
+
+		assertThat(request.getAttribute(ImageServer.SENDFILE_FILENAME)).isNull();
+		assertThat(response.getContentAsByteArray()).hasSize((int) fork.length());
+	}
+
+	@Test
+	public void serve_ShouldCopyFileWithoutSendfile() throws Exception {
+		imageServer.serve(fork, request, response);
+
+		assertThat(request.getAttribute(ImageServer.SENDFILE_FILENAME)).isNull();
+		assertThat(response.getContentAsByteArray()).hasSize((int) fork.length());
+	}
+}
@@ -0,0 +1,83 @@
+package com.acme.ecommerce.image;
+
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.service.KeysetPage;
+import com.acme.ecommerce.service.ProductCursor;
+import com.acme.ecommerce.service.ProductService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThumbnailServiceTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ProductService productService;
+	private ThumbnailService thumbnailService;
+	private File images;
+	private File thumbnails;
+
+	@Before
+	public void setup() throws Exception {
+		images = folder.newFolder("images");
+		productService = mock(ProductService.class);
+		// One worker and a single queue slot: queueing the whole catalog at once would overflow it
+		thumbnailService = new ThumbnailService(new ImageServer(), productService, images.getPath(),
+				(thumbnails = folder.newFolder("thumbnails")).getPath(), new int[]{80}, 1, 1, 5000);
+	}
+
+	@After
+	public void tearDown() {
+		thumbnailService.shutdown();
+	}
+
+	@Test
+	public void pregenerate_ShouldWaitForQueueInsteadOfSkippingImages() throws Exception {
+		byte[] fork = Files.readAllBytes(new File("src/test/resources/fork.jpg").toPath());
+		List<Product> products = new ArrayList<Product>();
+		for (long id = 1; id <= 4; id++) {
+			// A different trailing byte gives every copy its own hash, and so its own thumbnail
+			byte[] image = Arrays.copyOf(fork, fork.length + 1);
+			image[fork.length] = (byte) id;
+			Files.write(new File(images, id + ".jpg").toPath(), image);
+			Product product = new Product();
+			product.setId(id);
+			product.setThumbImageName(id + ".jpg");
+			products.add(product);
+		}
+		when(productService.findPage((ProductCursor) isNull(), eq(ProductCursor.Order.ID), eq(100)))
+				.thenReturn(new KeysetPage<Product>(products, 0, 1, null, null, null));
+
+		thumbnailService.pregenerate();
+
+		// Only the last image can still be in progress once every other one was waited for
+		long deadline = System.currentTimeMillis() + 5000;
+		while (countFiles(thumbnails) < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(countFiles(thumbnails)).isEqualTo(4);
+	}
+
+	private static int countFiles(File dir) {
+		int count = 0;
+		for (File file : dir.listFiles()) {
+			count += file.isDirectory() ? countFiles(file) : file.getName().endsWith(".jpg") ? 1 : 0;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,82 @@
+package com.acme.ecommerce.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SamplingFilterTest {
+
+	private static final String CART_CONTROLLER = "com.acme.ecommerce.controller.CartController";
+
+	private final SamplingFilter filter = new SamplingFilter();
+
+	@Test
+	public void decide_ShouldKeepOneInEverySampleEvents() {
+		filter.addRule(rule("com.acme.ecommerce.controller", 3, 0));
+
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.DENY);
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.DENY);
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(filter.getRules().get(0).getDropped()).isEqualTo(2);
+	}
+
+	@Test
+	public void accept_ShouldLimitEventsPerSecond() {
+		SamplingRule rule = rule("com.acme.ecommerce", 1, 2);
+
+		assertThat(rule.accept(Level.DEBUG, 1000)).isTrue();
+		assertThat(rule.accept(Level.DEBUG, 1500)).isTrue();
+		assertThat(rule.accept(Level.DEBUG, 1999)).isFalse();
+		assertThat(rule.accept(Level.DEBUG, 2000)).isTrue();
+		assertThat(rule.getDropped()).isEqualTo(1);
+	}
+
+	@Test
+	public void decide_ShouldNeverDropEventsAboveRuleLevel() {
+		filter.addRule(rule("com.acme.ecommerce", 1000, 0));
+		decide(CART_CONTROLLER, Level.DEBUG);
+
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.DENY);
+		assertThat(decide(CART_CONTROLLER, Level.WARN)).isEqualTo(FilterReply.NEUTRAL);
+	}
+
+	@Test
+	public void decide_ShouldPreferMostSpecificRule() {
+		filter.addRule(rule("com.acme.ecommerce", 1000, 0));
+		filter.addRule(rule("com.acme.ecommerce.controller", 1, 0));
+
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.NEUTRAL);
+	}
+
+	@Test
+	public void decide_ShouldIgnoreLoggersOutsideRules() {
+		filter.addRule(rule("com.acme.ecommerce.service", 1000, 0));
+		filter.addRule(rule("com.acme.ecommerce.controller.Cart", 1000, 0));
+
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(decide(CART_CONTROLLER, Level.DEBUG)).isEqualTo(FilterReply.NEUTRAL);
+		assertThat(filter.getRules().get(1).getDropped()).isEqualTo(0);
+	}
+
+	private FilterReply decide(String loggerName, Level level) {
+		LoggingEvent event = new LoggingEvent();
+		event.setLoggerName(loggerName);
+		event.setLevel(level);
+		event.setTimeStamp(System.currentTimeMillis());
+		return filter.decide(event);
+	}
+
+	private static SamplingRule rule(String logger, int sampleEvery, int maxPerSecond) {
+		SamplingRule rule = new SamplingRule();
+		rule.setLogger(logger);
+		rule.setLevel(Level.DEBUG);
+		rule.setSampleEvery(sampleEvery);
+		rule.setMaxPerSecond(maxPerSecond);
+		return rule;
+	}
+}
@@ -0,0 +1,71 @@
+package com.acme.ecommerce.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void bucketOf_ShouldKeepValuesWithinBucketBounds() {
+		for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			assertThat(LatencyHistogram.highestValueIn(bucket)).isGreaterThanOrEqualTo(value);
+			if (bucket > 0) {
+				assertThat(LatencyHistogram.highestValueIn(bucket - 1)).isLessThan(value);
+			}
+		}
+	}
+
+	@Test
+	public void snapshot_ShouldReportPercentilesWithinBucketResolution() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long micros = 1; micros <= 1000; micros++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+		double resolution = 1.0 / LatencyHistogram.SUB_BUCKETS;
+		assertThat(snapshot.getCount()).isEqualTo(1000);
+		assertThat((double) snapshot.getP50Nanos()).isCloseTo(500000, within(500000 * resolution));
+		assertThat((double) snapshot.getP95Nanos()).isCloseTo(950000, within(950000 * resolution));
+		assertThat((double) snapshot.getP99Nanos()).isCloseTo(990000, within(990000 * resolution));
+		assertThat(snapshot.getMaxNanos()).isEqualTo(1000000);
+		assertThat(snapshot.getMeanNanos()).isCloseTo(500500, within(1.0));
+	}
+
+	@Test
+	public void snapshot_ShouldBeEmptyBeforeFirstRecording() {
+		LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+		assertThat(snapshot.getCount()).isEqualTo(0);
+		assertThat(snapshot.getP99Nanos()).isEqualTo(0);
+	}
+
+	@Test
+	public void record_ShouldNotLoseConcurrentRecordings() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 100000; i++) {
+						histogram.record(i);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(histogram.snapshot().getCount()).isEqualTo(400000);
+		assertThat(histogram.snapshot().getMaxNanos()).isEqualTo(99999);
+	}
+}
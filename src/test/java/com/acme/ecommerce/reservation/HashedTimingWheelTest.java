@@ -0,0 +1,81 @@
+package com.acme.ecommerce.reservation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashedTimingWheelTest {
+
+	private final HashedTimingWheel<String> wheel = new HashedTimingWheel<String>(100, 8, 0);
+
+	@Test
+	public void advance_ShouldExpireOnlyTimeoutsPastTheirDeadline() {
+		wheel.schedule("a", 250);
+		wheel.schedule("b", 550);
+
+		assertThat(keys(wheel.advance(200))).isEmpty();
+		assertThat(keys(wheel.advance(300))).containsExactly("a");
+		assertThat(keys(wheel.advance(500))).isEmpty();
+		assertThat(keys(wheel.advance(600))).containsExactly("b");
+		assertThat(wheel.size()).isEqualTo(0);
+	}
+
+	@Test
+	public void advance_ShouldWaitFullTurnsForDistantDeadlines() {
+		// Hashes to the same bucket as 300, three turns of the wheel later
+		wheel.schedule("far", 300 + 3 * 800);
+
+		for (long now = 0; now < 2700; now += 100) {
+			assertThat(keys(wheel.advance(now))).isEmpty();
+		}
+		assertThat(keys(wheel.advance(2700))).containsExactly("far");
+	}
+
+	@Test
+	public void schedule_ShouldReplaceEarlierTimeoutOfSameKey() {
+		wheel.schedule("a", 200);
+		wheel.schedule("a", 700);
+
+		assertThat(wheel.deadlineOf("a")).isEqualTo(700);
+		assertThat(keys(wheel.advance(300))).isEmpty();
+		assertThat(keys(wheel.advance(700))).containsExactly("a");
+	}
+
+	@Test
+	public void cancel_ShouldKeepTimeoutFromExpiring() {
+		wheel.schedule("a", 200);
+		wheel.cancel("a");
+
+		assertThat(wheel.deadlineOf("a")).isEqualTo(-1);
+		assertThat(keys(wheel.advance(1000))).isEmpty();
+	}
+
+	@Test
+	public void advance_ShouldExpireEverythingDueAfterStall() {
+		wheel.schedule("a", 100);
+		wheel.schedule("b", 450);
+		wheel.schedule("c", 5000);
+
+		assertThat(keys(wheel.advance(4000))).containsOnly("a", "b");
+		assertThat(wheel.deadlineOf("c")).isEqualTo(5000);
+	}
+
+	@Test
+	public void advance_ShouldExpireLateScheduledTimeoutOnNextTick() {
+		wheel.advance(1000);
+		wheel.schedule("late", 500);
+
+		assertThat(keys(wheel.advance(1100))).containsExactly("late");
+	}
+
+	private static List<String> keys(List<HashedTimingWheel.Timeout<String>> timeouts) {
+		List<String> keys = new ArrayList<String>();
+		for (HashedTimingWheel.Timeout<String> timeout : timeouts) {
+			keys.add(timeout.getKey());
+		}
+		return keys;
+	}
+}
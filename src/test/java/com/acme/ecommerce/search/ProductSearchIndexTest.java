@@ -0,0 +1,109 @@
+package com.acme.ecommerce.search;
+
+import com.acme.ecommerce.domain.Product;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductSearchIndexTest {
+
+	private ProductSearchIndex index;
+
+	@Before
+	public void setUp() {
+		index = new ProductSearchIndex();
+		index.rebuild(Arrays.asList(
+				product(1L, "Corkscrew", "A screw for corks"),
+				product(2L, "Fork", "A truly magnificent fork"),
+				product(3L, "Frog", "Not a toad. Do you even know the difference?"),
+				product(4L, "Crème brûlée torch", "For caramelising sugar, not for frogs")));
+	}
+
+	@Test
+	public void search_ShouldRankNameMatchesFirst() {
+		List<SearchHit> hits = index.search("frog", 10);
+
+		assertThat(hits).extracting("id").containsExactly(3L, 4L);
+		assertThat(hits.get(0).getScore()).isGreaterThan(hits.get(1).getScore());
+		assertThat(hits.get(0).getName()).isEqualTo("Frog");
+	}
+
+	@Test
+	public void search_ShouldMatchPrefixes() {
+		assertThat(index.search("cork", 10)).extracting("id").containsExactly(1L);
+		assertThat(index.search("magnificent fo", 10)).extracting("id").containsExactly(2L);
+		assertThat(index.search("fo", 10)).isEmpty();
+	}
+
+	@Test
+	public void search_ShouldFoldCaseAndAccents() {
+		assertThat(index.search("CREME Brulee", 10)).extracting("id").containsExactly(4L);
+	}
+
+	@Test
+	public void search_ShouldOrTermsAndHonourLimit() {
+		List<SearchHit> hits = index.search("fork toad", 10);
+		assertThat(hits).extracting("id").contains(2L, 3L);
+
+		assertThat(index.search("fork toad", 1)).hasSize(1);
+		assertThat(index.search("   ", 10)).isEmpty();
+	}
+
+	@Test
+	public void index_ShouldReplacePreviousEntry() {
+		index.index(product(2L, "Spork", "Spoon and fork in one"));
+
+		assertThat(index.search("magnificent", 10)).isEmpty();
+		List<SearchHit> hits = index.search("spork", 10);
+		assertThat(hits).extracting("id").containsExactly(2L);
+		assertThat(index.size()).isEqualTo(4);
+	}
+
+	@Test
+	public void index_ShouldPurgeRetiredEntries() {
+		for (int round = 0; round < 5; round++) {
+			for (long id = 10; id < 1010; id++) {
+				index.index(product(id, "Widget " + id, "round " + round));
+			}
+		}
+
+		assertThat(index.size()).isEqualTo(1004);
+		assertThat(index.search("round", 2000)).hasSize(1000);
+		assertThat(index.search("widget 500", 1).get(0).getId()).isEqualTo(500L);
+		assertThat(index.search("frog", 10)).extracting("id").containsExactly(3L, 4L);
+	}
+
+	@Test
+	public void search_ShouldRankCommonTermsFromChampions() {
+		for (long id = 100; id < 100 + ProductSearchIndex.CHAMPIONS * 2; id++) {
+			index.index(product(id, "Gadget " + id, "A gadget with a rather long description of its many uses"));
+		}
+		index.index(product(50L, "Gadget", "gadget"));
+
+		List<SearchHit> hits = index.search("gadget", 5);
+
+		assertThat(hits).hasSize(5);
+		assertThat(hits.get(0).getId()).isEqualTo(50L);
+	}
+
+	@Test
+	public void remove_ShouldDropProduct() {
+		index.remove(3L);
+
+		assertThat(index.search("frog", 10)).extracting("id").containsExactly(4L);
+	}
+
+	private static Product product(Long id, String name, String desc) {
+		Product product = new Product();
+		product.setId(id);
+		product.setName(name);
+		product.setDesc(desc);
+		product.setPrice(BigDecimal.TEN);
+		return product;
+	}
+}
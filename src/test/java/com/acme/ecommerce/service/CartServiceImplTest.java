@@ -0,0 +1,172 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.cart.CartFullException;
+import com.acme.ecommerce.domain.CartBatchResult;
+import com.acme.ecommerce.domain.CartLineResult;
+import com.acme.ecommerce.domain.CartOperation;
+import com.acme.ecommerce.domain.CartTotals;
+import com.acme.ecommerce.domain.Product;
+import com.acme.ecommerce.domain.ProductPurchase;
+import com.acme.ecommerce.domain.Purchase;
+import com.acme.ecommerce.domain.ShoppingCart;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.acme.ecommerce.domain.CartOperation.Action.ADD;
+import static com.acme.ecommerce.domain.CartOperation.Action.REMOVE;
+import static com.acme.ecommerce.domain.CartOperation.Action.UPDATE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CartServiceImplTest {
+
+	@Mock
+	private ProductService productService;
+	@Mock
+	private ShoppingCart cart;
+
+	private CartService service;
+	private Purchase updated;
+
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		service = new CartServiceImpl(productService);
+		Map<Long, Product> products = new HashMap<Long, Product>();
+		products.put(1L, product(1L, "2.00"));
+		products.put(2L, product(2L, "5.00"));
+		products.put(3L, product(3L, "1.00"));
+		when(productService.findByIds(anyCollectionOf(Long.class))).thenReturn(products);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) {
+				updated = (Purchase) invocation.getArguments()[0];
+				return null;
+			}
+		}).when(cart).update(any(Purchase.class));
+		when(cart.getTotals()).thenAnswer(new Answer<CartTotals>() {
+			@Override
+			public CartTotals answer(InvocationOnMock invocation) {
+				return CartTotals.of(updated != null ? updated : cart.getPurchase());
+			}
+		});
+		when(cart.getMaxLines()).thenReturn(100);
+	}
+
+	@Test
+	public void applyBatch_ShouldRejectBatchOverfillingCartBeforeTakingStock() {
+		Purchase purchase = new Purchase();
+		purchase.getProductPurchases().add(line(purchase, product(2L, "5.00"), 3));
+		when(cart.getPurchase()).thenReturn(purchase);
+		when(cart.getMaxLines()).thenReturn(2);
+
+		try {
+			service.applyBatch(cart, Arrays.asList(
+					new CartOperation(ADD, 1L, 1),
+					new CartOperation(ADD, 3L, 1)));
+			fail("Expected CartFullException");
+		} catch (CartFullException e) {
+			assertThat(e.getMessage()).contains("3 lines");
+		}
+
+		verify(productService, never()).adjustStock(anyMapOf(Long.class, Integer.class));
+		verify(cart, never()).update(any(Purchase.class));
+	}
+
+	@Test
+	public void applyBatch_ShouldReserveNetQuantityOncePerProduct() {
+
+		CartBatchResult result = service.applyBatch(cart, Arrays.asList(
+				new CartOperation(ADD, 1L, 2),
+				new CartOperation(ADD, 1L, 4),
+				new CartOperation(UPDATE, 1L, 5)));
+
+		InOrder inOrder = inOrder(productService, cart);
+		inOrder.verify(productService).adjustStock(changes(1L, 5));
+		inOrder.verify(cart).update(any(Purchase.class));
+		verify(productService).findByIds(anyCollectionOf(Long.class));
+		assertThat(result.getLines()).extracting("status").containsOnly(CartLineResult.Status.APPLIED);
+		assertThat(result.getLines()).extracting("quantity").containsOnly(5);
+		assertThat(result.getItemCount()).isEqualTo(5);
+		assertThat(result.getSubtotal()).isEqualByComparingTo("10.00");
+	}
+
+	@Test
+	public void applyBatch_ShouldReleaseRemovedAndSkipProductsOutOfStock() {
+		Purchase purchase = new Purchase();
+		purchase.getProductPurchases().add(line(purchase, product(2L, "5.00"), 3));
+		when(cart.getPurchase()).thenReturn(purchase);
+		when(productService.adjustStock(changes(1L, 9, 2L, -3))).thenReturn(Collections.singleton(1L));
+
+		CartBatchResult result = service.applyBatch(cart, Arrays.asList(
+				new CartOperation(ADD, 1L, 9),
+				new CartOperation(REMOVE, 2L, 0),
+				new CartOperation(ADD, 99L, 1),
+				new CartOperation(REMOVE, 3L, 0),
+				new CartOperation(ADD, 3L, 0)));
+
+		verify(productService).adjustStock(changes(1L, 9, 2L, -3));
+		assertThat(result.getLines()).extracting("status").containsExactly(
+				CartLineResult.Status.INSUFFICIENT_STOCK,
+				CartLineResult.Status.APPLIED,
+				CartLineResult.Status.UNKNOWN_PRODUCT,
+				CartLineResult.Status.NOT_IN_CART,
+				CartLineResult.Status.INVALID);
+		assertThat(result.getLines()).extracting("quantity").containsExactly(0, 0, 0, 0, 0);
+		assertThat(purchase.getProductPurchases()).isEmpty();
+		assertThat(result.getItemCount()).isEqualTo(0);
+		verify(cart).update(purchase);
+	}
+
+	@Test
+	public void applyBatch_ShouldLeaveCartAloneWhenNothingApplies() {
+		when(productService.adjustStock(changes(1L, 1))).thenReturn(Collections.singleton(1L));
+
+		service.applyBatch(cart, Arrays.asList(new CartOperation(ADD, 1L, 1), new CartOperation(UPDATE, 2L, 4)));
+
+		verify(productService).adjustStock(changes(1L, 1));
+		verify(cart, never()).update(any(Purchase.class));
+	}
+
+	private static Map<Long, Integer> changes(Object... productIdsAndChanges) {
+		Map<Long, Integer> changes = new HashMap<Long, Integer>();
+		for (int i = 0; i < productIdsAndChanges.length; i += 2) {
+			changes.put((Long) productIdsAndChanges[i], (Integer) productIdsAndChanges[i + 1]);
+		}
+		return changes;
+	}
+
+	private static ProductPurchase line(Purchase purchase, Product product, int quantity) {
+		ProductPurchase line = new ProductPurchase();
+		line.setProduct(product);
+		line.setQuantity(quantity);
+		line.setPurchase(purchase);
+		return line;
+	}
+
+	private static Product product(Long id, String price) {
+		Product product = new Product();
+		product.setId(id);
+		product.setPrice(new BigDecimal(price));
+		return product;
+	}
+}
@@ -0,0 +1,99 @@
+package com.acme.ecommerce.service;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OrderNumberGeneratorTest {
+
+	@Test
+	public void nextId_ShouldBeUniqueAcrossThreads() throws Exception {
+		final OrderNumberGenerator generator = new OrderNumberGenerator(1);
+		final Set<Long> ids = ConcurrentHashMap.newKeySet();
+		final int threads = 8;
+		final int perThread = 20000;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int t = 0; t < threads; t++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < perThread; i++) {
+						ids.add(generator.nextId());
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(ids).hasSize(threads * perThread);
+	}
+
+	@Test
+	public void nextId_ShouldIncreaseWhenSequenceOverflowsOrClockGoesBack() {
+		FixedClockGenerator generator = new FixedClockGenerator(3);
+		long previous = generator.nextId();
+		for (int i = 0; i < 10000; i++) {
+			long id = generator.nextId();
+			assertThat(id).isGreaterThan(previous);
+			previous = id;
+		}
+
+		generator.millis -= 1000;
+		assertThat(generator.nextId()).isGreaterThan(previous);
+	}
+
+	@Test
+	public void nextId_ShouldEncodeTimestampAndNode() {
+		FixedClockGenerator generator = new FixedClockGenerator(5);
+		long id = generator.nextId();
+
+		assertThat(id >>> (OrderNumberGenerator.NODE_BITS + OrderNumberGenerator.SEQUENCE_BITS))
+				.isEqualTo(generator.millis - OrderNumberGenerator.EPOCH);
+		assertThat((id >>> OrderNumberGenerator.SEQUENCE_BITS) & OrderNumberGenerator.MAX_NODE_ID).isEqualTo(5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void constructor_ShouldRejectOutOfRangeNodeId() {
+		new OrderNumberGenerator(OrderNumberGenerator.MAX_NODE_ID + 1);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void constructor_ShouldRefuseToStartWithoutNodeId() {
+		new OrderNumberGenerator("");
+	}
+
+	@Test
+	public void constructor_ShouldParseConfiguredNodeId() {
+		long id = new OrderNumberGenerator(" 7 ").nextId();
+
+		assertThat((id >>> OrderNumberGenerator.SEQUENCE_BITS) & OrderNumberGenerator.MAX_NODE_ID).isEqualTo(7);
+	}
+
+	private static class FixedClockGenerator extends OrderNumberGenerator {
+		long millis = OrderNumberGenerator.EPOCH + 123456789L;
+
+		FixedClockGenerator(long nodeId) {
+			super(nodeId);
+		}
+
+		@Override
+		protected long currentTimeMillis() {
+			return millis;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductCacheTest {
+
+	private final ProductCache cache = new ProductCache(10, 10, 60, 0);
+
+	@After
+	public void tearDown() {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void put_ShouldDropRowReadBeforeEviction() {
+		long stamp = cache.stamp(1L);
+		Product stale = product(1L, 5);
+		cache.evict(1L);
+
+		cache.put(stale, stamp);
+		assertThat(cache.get(1L)).isNull();
+
+		cache.put(product(1L, 3), cache.stamp(1L));
+		assertThat(cache.get(1L).getQuantity()).isEqualTo(3);
+	}
+
+	@Test
+	public void evict_ShouldDropAgainWhenTransactionCompletes() {
+		TransactionSynchronizationManager.initSynchronization();
+		cache.evict(1L);
+		// Read before the evicting transaction committed
+		cache.put(product(1L, 5), cache.stamp(1L));
+		assertThat(cache.get(1L)).isNotNull();
+
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+		}
+
+		assertThat(cache.get(1L)).isNull();
+	}
+
+	@Test
+	public void putPage_ShouldDropPageReadBeforeCatalogChange() {
+		PageRequest pageable = new PageRequest(0, 2);
+		long stamp = cache.pageStamp();
+		cache.invalidate(2L);
+
+		cache.putPage(pageable, new PageImpl<Product>(Arrays.asList(product(1L, 5)), pageable, 1), stamp);
+
+		assertThat(cache.getPage(pageable)).isNull();
+	}
+
+	@Test
+	public void evict_ShouldDropPagesShowingStockButKeepCount() {
+		PageRequest pageable = new PageRequest(0, 2);
+		cache.putPage(pageable, new PageImpl<Product>(Arrays.asList(product(1L, 5)), pageable, 1), cache.pageStamp());
+		cache.putCount(1, cache.pageStamp());
+		long stamp = cache.pageStamp();
+
+		cache.evict(1L);
+		cache.putPage(pageable, new PageImpl<Product>(Arrays.asList(product(1L, 5)), pageable, 1), stamp);
+
+		assertThat(cache.getPage(pageable)).isNull();
+		assertThat(cache.getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void getPage_ShouldHandOutCopies() {
+		PageRequest pageable = new PageRequest(0, 2);
+		Product product = product(1L, 5);
+		cache.putPage(pageable, new PageImpl<Product>(Arrays.asList(product), pageable, 1), cache.pageStamp());
+		product.setQuantity(0);
+
+		Page<Product> page = cache.getPage(pageable);
+		page.getContent().get(0).setName("Renamed");
+
+		Product cached = cache.getPage(pageable).getContent().get(0);
+		assertThat(cached.getQuantity()).isEqualTo(5);
+		assertThat(cached.getName()).isEqualTo("Product 1");
+		assertThat(cache.getPage(pageable).getTotalElements()).isEqualTo(1);
+	}
+
+	private static Product product(Long id, int quantity) {
+		Product product = new Product();
+		product.setId(id);
+		product.setName("Product " + id);
+		product.setPrice(new BigDecimal("2.00"));
+		product.setQuantity(quantity);
+		return product;
+	}
+}
@@ -0,0 +1,43 @@
+package com.acme.ecommerce.service;
+
+import com.acme.ecommerce.domain.Product;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProductCursorTest {
+
+	@Test
+	public void decode_ShouldRoundTripPriceCursor() {
+		Product product = new Product();
+		product.setId(42L);
+		product.setPrice(new BigDecimal("19.90"));
+
+		ProductCursor cursor = ProductCursor.decode(ProductCursor.before(ProductCursor.Order.PRICE, 3, product).encode());
+
+		assertThat(cursor.getOrder()).isEqualTo(ProductCursor.Order.PRICE);
+		assertThat(cursor.isBackward()).isTrue();
+		assertThat(cursor.getPage()).isEqualTo(3);
+		assertThat(cursor.getId()).isEqualTo(42L);
+		assertThat(cursor.getPrice()).isEqualByComparingTo("19.90");
+	}
+
+	@Test
+	public void decode_ShouldRoundTripLastPageCursor() {
+		ProductCursor cursor = ProductCursor.decode(ProductCursor.last(ProductCursor.Order.ID).encode());
+
+		assertThat(cursor.isLast()).isTrue();
+		assertThat(cursor.isBackward()).isTrue();
+	}
+
+	@Test
+	public void decode_ShouldRejectTamperedValues() {
+		assertThat(ProductCursor.decode(null)).isNull();
+		assertThat(ProductCursor.decode("")).isNull();
+		assertThat(ProductCursor.decode("not a cursor!")).isNull();
+		assertThat(ProductCursor.decode("SUQ6YTotMTo1")).isNull(); // ID:a:-1:5
+		assertThat(ProductCursor.decode("UFJJQ0U6YToxOjU")).isNull(); // PRICE:a:1:5, price missing
+	}
+}
@@ -0,0 +1,65 @@
+package com.acme.ecommerce.service;
+
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class StockWriteRetryTest {
+
+	private final StockWriteRetry retry = new StockWriteRetry(3, 1, 2);
+
+	@Test
+	public void execute_ShouldRetryConflictsUntilAttemptSucceeds() {
+		Integer result = retry.execute(new StockWriteRetry.Attempt<Integer>() {
+			@Override
+			public Integer run(int attempt) {
+				if (attempt < 3) {
+					throw new ObjectOptimisticLockingFailureException("Product", 1L);
+				}
+				return attempt;
+			}
+		});
+
+		assertThat(result).isEqualTo(3);
+		assertThat(retry.metrics()).extracting("name", "value").containsOnly(
+				tuple("productStock.writes", 1L),
+				tuple("productStock.conflicts", 2L),
+				tuple("productStock.retries", 2L),
+				tuple("productStock.retriesExhausted", 0L));
+	}
+
+	@Test
+	public void execute_ShouldGiveUpAfterMaxAttempts() {
+		try {
+			retry.execute(new StockWriteRetry.Attempt<Object>() {
+				@Override
+				public Object run(int attempt) {
+					throw new ObjectOptimisticLockingFailureException("Product", 1L);
+				}
+			});
+			fail("Expected the last conflict to be rethrown");
+		} catch (ObjectOptimisticLockingFailureException e) {
+			assertThat(retry.metrics()).extracting("name", "value").contains(
+					tuple("productStock.conflicts", 3L),
+					tuple("productStock.retries", 2L),
+					tuple("productStock.retriesExhausted", 1L));
+		}
+	}
+
+	@Test(expected = DataIntegrityViolationException.class)
+	public void execute_ShouldNotRetryOtherFailures() {
+		retry.execute(new StockWriteRetry.Attempt<Object>() {
+			@Override
+			public Object run(int attempt) {
+				if (attempt > 1) {
+					fail("Retried a failure that was not a conflict");
+				}
+				throw new DataIntegrityViolationException("constraint");
+			}
+		});
+	}
+}